@@ -0,0 +1,375 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A calendar queue (see R. Brown: "Calendar queues: a fast O(1) priority queue
+ * implementation for the simulation event set problem", CACM 1988) based event
+ * queue for Timed.
+ * 
+ * The queued objects are distributed in buckets according to their next event.
+ * Each bucket covers a time window of a given width, and the buckets together
+ * cover a year, events further in the future are wrapped around. When the
+ * number of queued objects changes considerably, the number of buckets and their
+ * width is recalculated based on the distances between the earliest events in
+ * the queue. This ensures that offer and poll operations take constant time on
+ * average, independently of the number of queued objects.
+ * 
+ * Within a bucket the objects are kept in the order defined by Timed.compareTo,
+ * events with the same next event and back preference are delivered in the
+ * order they were queued.
+ * 
+ * <i>NOTE:</i> this queue is most beneficial for simulations with many
+ * subscribed timed objects. For small simulations the default HeapEventQueue is
+ * usually faster.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class CalendarEventQueue implements EventQueue {
+	/**
+	 * The smallest number of buckets used by the queue, must be a power of 2.
+	 */
+	private static final int minBuckets = 16;
+	/**
+	 * The number of earliest events used to determine the width of the buckets
+	 */
+	private static final int widthSampleSize = 25;
+
+	/**
+	 * A single day of the calendar, keeps its objects ordered.
+	 */
+	private static final class Bucket implements Serializable {
+		/**
+		 * The objects of the bucket, the valid ones are in [head,tail[
+		 */
+		private Timed[] items = new Timed[4];
+		private int head = 0;
+		private int tail = 0;
+
+		private boolean isEmpty() {
+			return head == tail;
+		}
+
+		private Timed first() {
+			return items[head];
+		}
+
+		private Timed pollFirst() {
+			final Timed t = items[head];
+			items[head++] = null;
+			if (head == tail) {
+				head = tail = 0;
+			}
+			return t;
+		}
+
+		/**
+		 * Puts the new object behind all objects that are not later than it. As
+		 * most new events happen after the already queued ones, the search for the
+		 * position starts at the back.
+		 */
+		private void insert(final Timed t) {
+			if (tail == items.length) {
+				if (head > items.length / 2) {
+					System.arraycopy(items, head, items, 0, tail - head);
+					Arrays.fill(items, tail - head, tail, null);
+				} else {
+					final Timed[] newItems = new Timed[items.length * 2];
+					System.arraycopy(items, head, newItems, 0, tail - head);
+					items = newItems;
+				}
+				tail -= head;
+				head = 0;
+			}
+			int pos = tail;
+			while (pos > head && items[pos - 1].compareTo(t) > 0) {
+				pos--;
+			}
+			System.arraycopy(items, pos, items, pos + 1, tail - pos);
+			items[pos] = t;
+			tail++;
+		}
+
+		private boolean remove(final Timed t) {
+			for (int i = head; i < tail; i++) {
+				if (items[i] == t) {
+					System.arraycopy(items, i + 1, items, i, tail - i - 1);
+					items[--tail] = null;
+					if (head == tail) {
+						head = tail = 0;
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The days of the calendar
+	 */
+	private Bucket[] buckets;
+	/**
+	 * buckets.length-1, used to wrap around the year
+	 */
+	private int mask;
+	/**
+	 * The length of the time window (in ticks) covered by a single bucket
+	 */
+	private long width;
+	/**
+	 * The number of objects in the queue
+	 */
+	private int size;
+	/**
+	 * The bucket where the search for the earliest event starts.
+	 */
+	private int currentBucket;
+	/**
+	 * The end of the time window (exclusive) covered by the current bucket. It is
+	 * guaranteed that there are no queued events before the start of this
+	 * window (i.e., currentTop-width).
+	 */
+	private long currentTop;
+	/**
+	 * The bucket holding the earliest event, -1 if it is not yet known.
+	 */
+	private int minBucket;
+
+	/**
+	 * Constructs an empty calendar with the minimum number of buckets and unit
+	 * bucket width
+	 */
+	public CalendarEventQueue() {
+		setup(minBuckets, 1, 0);
+	}
+
+	/**
+	 * (Re)Initialises the calendar with empty buckets
+	 * 
+	 * @param bucketCount the number of buckets to use, must be a power of 2
+	 * @param newWidth    the width of each bucket in ticks
+	 * @param start       the time before which there are no events to be queued
+	 */
+	private void setup(final int bucketCount, final long newWidth, final long start) {
+		buckets = new Bucket[bucketCount];
+		for (int i = 0; i < bucketCount; i++) {
+			buckets[i] = new Bucket();
+		}
+		mask = bucketCount - 1;
+		width = newWidth;
+		size = 0;
+		moveWindowTo(start);
+	}
+
+	private int bucketOf(final long time) {
+		return (int) ((time / width) & mask);
+	}
+
+	private void moveWindowTo(final long time) {
+		currentBucket = bucketOf(time);
+		currentTop = (time / width + 1) * width;
+		minBucket = -1;
+	}
+
+	@Override
+	public void offer(final Timed t) {
+		insert(t);
+		if (size > 2 * buckets.length) {
+			resize(buckets.length * 2);
+		}
+	}
+
+	private void insert(final Timed t) {
+		final long ev = t.getNextEvent();
+		buckets[bucketOf(ev)].insert(t);
+		size++;
+		if (ev < currentTop - width) {
+			moveWindowTo(ev);
+		} else if (minBucket >= 0 && t.compareTo(buckets[minBucket].first()) < 0) {
+			minBucket = -1;
+		}
+	}
+
+	/**
+	 * Determines the bucket with the earliest event. First it tries to find the
+	 * event in the current year, if there are none, it looks for the earliest
+	 * event amongst all buckets.
+	 * 
+	 * @return the index of the bucket
+	 */
+	private int findMin() {
+		if (minBucket >= 0) {
+			return minBucket;
+		}
+		int i = currentBucket;
+		long top = currentTop;
+		for (int n = 0; n < buckets.length; n++) {
+			final Bucket b = buckets[i];
+			if (!b.isEmpty() && b.first().getNextEvent() < top) {
+				currentBucket = i;
+				currentTop = top;
+				return minBucket = i;
+			}
+			i = (i + 1) & mask;
+			top += width;
+		}
+		// Nothing in this year, direct search
+		Timed earliest = null;
+		for (final Bucket b : buckets) {
+			if (!b.isEmpty() && (earliest == null || b.first().compareTo(earliest) < 0)) {
+				earliest = b.first();
+			}
+		}
+		moveWindowTo(earliest.getNextEvent());
+		return minBucket = currentBucket;
+	}
+
+	@Override
+	public Timed peek() {
+		return size == 0 ? null : buckets[findMin()].first();
+	}
+
+	@Override
+	public Timed poll() {
+		if (size == 0) {
+			return null;
+		}
+		final Timed t = pollEarliest();
+		if (size < buckets.length / 2 && buckets.length > minBuckets) {
+			resize(buckets.length / 2);
+		}
+		return t;
+	}
+
+	private Timed pollEarliest() {
+		final Bucket b = buckets[findMin()];
+		final Timed t = b.pollFirst();
+		size--;
+		if (b.isEmpty() || b.first().getNextEvent() >= currentTop) {
+			minBucket = -1;
+		}
+		return t;
+	}
+
+	@Override
+	public boolean remove(final Timed t) {
+		return remove(t, t.getNextEvent());
+	}
+
+	private boolean remove(final Timed t, final long queuedEvent) {
+		if (size != 0 && buckets[bucketOf(queuedEvent)].remove(t)) {
+			size--;
+			minBucket = -1;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void reschedule(final Timed t, final long previousEvent) {
+		if (remove(t, previousEvent)) {
+			insert(t);
+		}
+	}
+
+	@Override
+	public void collectDue(final long time, final List<Timed> due) {
+		if (size != 0) {
+			final Bucket b = buckets[bucketOf(time)];
+			for (int i = b.head; i < b.tail; i++) {
+				final long ev = b.items[i].getNextEvent();
+				if (ev == time) {
+					due.add(b.items[i]);
+				} else if (ev > time) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		setup(minBuckets, 1, 0);
+	}
+
+	/**
+	 * Rebuilds the calendar with a new number of buckets. The width of the new
+	 * buckets is set to three times the average distance of the earliest events
+	 * (ignoring distances larger than twice the average).
+	 * 
+	 * @param bucketCount the new number of buckets
+	 */
+	private void resize(final int bucketCount) {
+		final Timed[] all = new Timed[size];
+		final int sampleLen = Math.min(size, widthSampleSize);
+		int len = 0;
+		while (len < sampleLen) {
+			all[len++] = pollEarliest();
+		}
+		for (final Bucket b : buckets) {
+			while (!b.isEmpty()) {
+				all[len++] = b.pollFirst();
+			}
+		}
+		long newWidth = width;
+		if (sampleLen > 1) {
+			final long span = all[sampleLen - 1].getNextEvent() - all[0].getNextEvent();
+			if (span > 0) {
+				final double avg = (double) span / (sampleLen - 1);
+				double sum = 0;
+				int count = 0;
+				for (int i = 1; i < sampleLen; i++) {
+					final long gap = all[i].getNextEvent() - all[i - 1].getNextEvent();
+					if (gap <= 2 * avg) {
+						sum += gap;
+						count++;
+					}
+				}
+				newWidth = Math.max(1, Math.round(3 * sum / count));
+			}
+		}
+		setup(bucketCount, newWidth, len == 0 ? 0 : all[0].getNextEvent());
+		for (int i = 0; i < len; i++) {
+			insert(all[i]);
+		}
+	}
+}
@@ -26,8 +26,7 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator;
 
-import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
-
+import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
@@ -46,17 +45,7 @@ import java.util.ArrayList;
  * @author "Gabor Kecskemeti, Distributed and Parallel Systems Group, University
  *         of Innsbruck (c) 2013"
  */
-public abstract class DeferredEvent {
-
-	/**
-	 * All deferred events that are due in the future are listed here.
-	 * 
-	 * The map is indexed by expected event arrivals. The stored objects in the map
-	 * are MutablePairs where the left item of the pair is the length of the right
-	 * item (which is actually the list of events that should be delivered at the
-	 * particular time instance identified by the key of the map).
-	 */
-	private static final LongObjectHashMap<AggregatedEventDispatcher> dispatchers = new LongObjectHashMap<>();
+public abstract class DeferredEvent implements Serializable {
 
 	/**
 	 * handles the event aggregations, actual subscriptions to timed events and
@@ -70,13 +59,26 @@ public abstract class DeferredEvent {
 	 *         MTA SZTAKI (c) 2015"
 	 *
 	 */
-	private static class AggregatedEventDispatcher extends Timed {
+	static class AggregatedEventDispatcher extends Timed {
 		private final ArrayList<DeferredEvent> simultaneouslyOccurringDEs = new ArrayList<>();
-		private final long myEv;
+		private long myEv;
 
-		private AggregatedEventDispatcher(long event) {
-			subscribe(event - Timed.getFireCount());
-			myEv=event;
+		/**
+		 * Offers a dispatcher for a particular time instance. Dispatchers that
+		 * already delivered their events are reused if possible, so in steady
+		 * state no new dispatchers (and event lists) are created.
+		 * 
+		 * @param ctx   the simulation in which the dispatcher will operate
+		 * @param event the time instance at which the events should be delivered
+		 * @return a dispatcher subscribed for the particular time instance
+		 */
+		private static AggregatedEventDispatcher obtain(final SimulationContext ctx, final long event) {
+			final var pool = ctx.dispatcherPool;
+			final var aed = pool.isEmpty() ? new AggregatedEventDispatcher() : pool.remove(pool.size() - 1);
+			aed.myEv = event;
+			aed.subscribe(event - ctx.fireCounter);
+			ctx.dispatchers.put(event, aed);
+			return aed;
 		}
 
 		/**
@@ -88,9 +90,11 @@ public abstract class DeferredEvent {
 		 */
 		@Override
 		public void tick(long fires) {
-			for (DeferredEvent underDelivery : simultaneouslyOccurringDEs) {
-				underDelivery.eventAction();
+			// Indexed loop, so events can cancel their not yet delivered peers
+			for (int i = 0; i < simultaneouslyOccurringDEs.size(); i++) {
+				final DeferredEvent underDelivery = simultaneouslyOccurringDEs.get(i);
 				underDelivery.received = true;
+				underDelivery.eventAction();
 			}
 			terminate();
 		}
@@ -101,7 +105,6 @@ public abstract class DeferredEvent {
 			for (DeferredEvent simultaneouslyOccurringDE : simultaneouslyOccurringDEs) {
 				simultaneouslyOccurringDE.cancelled = true;
 			}
-			simultaneouslyOccurringDEs.clear();
 			terminate();
 		}
 		
@@ -113,9 +116,17 @@ public abstract class DeferredEvent {
 			}
 		}
 		
+		/**
+		 * Cancels the subscription of the dispatcher and puts it back to the pool
+		 * of its context for later reuse.
+		 */
 		private void terminate() {
-			dispatchers.remove(myEv);
-			unsubscribe();
+			if (unsubscribe()) {
+				final SimulationContext ctx = getContext();
+				ctx.dispatchers.remove(myEv);
+				simultaneouslyOccurringDEs.clear();
+				ctx.dispatcherPool.add(this);
+			}
 		}
 				
 	}
@@ -132,6 +143,11 @@ public abstract class DeferredEvent {
 	 * The time instance at which this event should be delivered
 	 */
 	private final long eventArrival;
+	/**
+	 * The dispatcher that is going to deliver this event, null if the event was
+	 * delivered at construction time
+	 */
+	private final AggregatedEventDispatcher myDispatcher;
 
 	/**
 	 * Allows constructing objects that will receive an eventAction() call from
@@ -144,17 +160,19 @@ public abstract class DeferredEvent {
 	public DeferredEvent(final long delay) {
 		if (delay <= 0) {
 			eventArrival = Timed.getFireCount();
+			myDispatcher = null;
 			eventAction();
 			received = true;
 			return;
 		}
+		final SimulationContext ctx = SimulationContext.current();
 		eventArrival = Timed.calcTimeJump(delay);
-		AggregatedEventDispatcher aed=dispatchers.get(eventArrival);
-		if(aed==null) {
-			aed=new AggregatedEventDispatcher(eventArrival);
-			dispatchers.put(eventArrival,aed);
+		AggregatedEventDispatcher aed = ctx.dispatchers.get(eventArrival);
+		if (aed == null) {
+			aed = AggregatedEventDispatcher.obtain(ctx, eventArrival);
 		}
 		aed.simultaneouslyOccurringDEs.add(this);
+		myDispatcher = aed;
 	}
 
 	/**
@@ -169,7 +187,7 @@ public abstract class DeferredEvent {
 		if (received)
 			return;
 		if (!cancelled) {
-			dispatchers.get(eventArrival).remove(this);
+			myDispatcher.remove(this);
 		}
 	}
 
@@ -193,15 +211,6 @@ public abstract class DeferredEvent {
 	 */
 	protected abstract void eventAction();
 
-	/**
-	 * Allows the cleanup of all events registered with the aggregator.
-	 * 
-	 * WARNING: This is not supposed to be called by user code directly.
-	 */
-	static void reset() {
-		dispatchers.clear();
-	}
-
 	/**
 	 * A shortcut to create deferred events in the simulation
 	 * @param distance The number of ticks before the deferred operation below needs to be called
@@ -0,0 +1,110 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The event queue behind Timed. Implementations must deliver the subscribed
+ * timed objects in the order defined by Timed.compareTo (i.e., earliest next
+ * event first, and for events on the same time instance the back preferred
+ * ones last).
+ * 
+ * Implementations can assume that the next event of a timed object does not
+ * change while it is queued, unless it is told so via the reschedule function.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public interface EventQueue extends Serializable {
+	/**
+	 * Adds a new timed object to the queue.
+	 * 
+	 * @param t the object to be queued according to its next event
+	 */
+	void offer(Timed t);
+
+	/**
+	 * Determines the earliest timed object without removing it from the queue.
+	 * 
+	 * @return the earliest object or null if the queue is empty
+	 */
+	Timed peek();
+
+	/**
+	 * Removes the earliest timed object from the queue.
+	 * 
+	 * @return the earliest object or null if the queue is empty
+	 */
+	Timed poll();
+
+	/**
+	 * Drops a timed object from the queue.
+	 * 
+	 * @param t the object to be removed
+	 * @return <i>true</i> if the object was queued before the call
+	 */
+	boolean remove(Timed t);
+
+	/**
+	 * Moves an already queued timed object to the position its new next event
+	 * requires.
+	 * 
+	 * @param t             the object which got a new next event
+	 * @param previousEvent the next event the object had when it was queued
+	 */
+	void reschedule(Timed t, long previousEvent);
+
+	/**
+	 * Lists the queued objects that are due at a particular time instance. The
+	 * queue itself is left intact.
+	 * 
+	 * @param time the time instance to look for
+	 * @param due  the list to which the due objects are appended (in no
+	 *             particular order)
+	 */
+	void collectDue(long time, List<Timed> due);
+
+	/**
+	 * Determines if there are any queued objects.
+	 * 
+	 * @return <i>true</i> if there is nothing in the queue
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Determines the number of queued objects
+	 * 
+	 * @return the queue length
+	 */
+	int size();
+
+	/**
+	 * Drops all objects from the queue.
+	 */
+	void clear();
+}
@@ -0,0 +1,202 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The default event queue of the simulator, it uses a binary heap for ordering
+ * the timed objects. Every queued timed object remembers its position in the
+ * heap, thus not only offer and poll, but removals and reschedules also take
+ * logarithmic time (there is no need to search for the object in the heap).
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class HeapEventQueue implements EventQueue {
+	/**
+	 * The heap holding all the timed objects in [0,size[
+	 */
+	private Timed[] heap = new Timed[64];
+	/**
+	 * The number of queued objects
+	 */
+	private int size = 0;
+
+	@Override
+	public void offer(final Timed t) {
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		siftUp(size++, t);
+	}
+
+	@Override
+	public Timed peek() {
+		return heap[0];
+	}
+
+	@Override
+	public Timed poll() {
+		if (size == 0) {
+			return null;
+		}
+		final Timed result = heap[0];
+		final int last = --size;
+		final Timed moved = heap[last];
+		heap[last] = null;
+		if (last > 0) {
+			siftDown(0, moved);
+		}
+		result.queueIndex = -1;
+		return result;
+	}
+
+	@Override
+	public boolean remove(final Timed t) {
+		final int i = t.queueIndex;
+		if (i < 0 || i >= size || heap[i] != t) {
+			return false;
+		}
+		final int last = --size;
+		if (last == i) {
+			heap[i] = null;
+		} else {
+			final Timed moved = heap[last];
+			heap[last] = null;
+			siftDown(i, moved);
+			if (heap[i] == moved) {
+				siftUp(i, moved);
+			}
+		}
+		t.queueIndex = -1;
+		return true;
+	}
+
+	@Override
+	public void reschedule(final Timed t, final long previousEvent) {
+		final int i = t.queueIndex;
+		if (i < 0 || i >= size || heap[i] != t) {
+			return;
+		}
+		if (t.getNextEvent() < previousEvent) {
+			siftUp(i, t);
+		} else {
+			siftDown(i, t);
+		}
+	}
+
+	/**
+	 * Moves an object towards the root of the heap until its parent is not later
+	 * than it.
+	 * 
+	 * @param k the position to start from
+	 * @param t the object to be placed
+	 */
+	private void siftUp(int k, final Timed t) {
+		while (k > 0) {
+			final int parent = (k - 1) >>> 1;
+			final Timed p = heap[parent];
+			if (t.compareTo(p) >= 0) {
+				break;
+			}
+			heap[k] = p;
+			p.queueIndex = k;
+			k = parent;
+		}
+		heap[k] = t;
+		t.queueIndex = k;
+	}
+
+	/**
+	 * Moves an object towards the leaves of the heap until its children are not
+	 * earlier than it.
+	 * 
+	 * @param k the position to start from
+	 * @param t the object to be placed
+	 */
+	private void siftDown(int k, final Timed t) {
+		final int half = size >>> 1;
+		while (k < half) {
+			int child = 2 * k + 1;
+			Timed c = heap[child];
+			final int right = child + 1;
+			if (right < size && c.compareTo(heap[right]) > 0) {
+				c = heap[child = right];
+			}
+			if (t.compareTo(c) <= 0) {
+				break;
+			}
+			heap[k] = c;
+			c.queueIndex = k;
+			k = child;
+		}
+		heap[k] = t;
+		t.queueIndex = k;
+	}
+
+	@Override
+	public void collectDue(final long time, final List<Timed> due) {
+		collectDue(0, time, due);
+	}
+
+	/**
+	 * Visits the subheap rooted at k, subheaps with a root later than the
+	 * requested time instance are skipped.
+	 */
+	private void collectDue(final int k, final long time, final List<Timed> due) {
+		if (k < size) {
+			final long ev = heap[k].getNextEvent();
+			if (ev <= time) {
+				if (ev == time) {
+					due.add(heap[k]);
+				}
+				collectDue(2 * k + 1, time, due);
+				collectDue(2 * k + 2, time, due);
+			}
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			heap[i].queueIndex = -1;
+			heap[i] = null;
+		}
+		size = 0;
+	}
+}
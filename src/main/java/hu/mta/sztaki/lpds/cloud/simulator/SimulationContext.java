@@ -0,0 +1,448 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import hu.mta.sztaki.lpds.cloud.simulator.util.SeedSyncer;
+import it.unimi.dsi.util.XoShiRo256PlusRandom;
+
+/**
+ * Holds all the state that used to be global to a simulation: the event queue
+ * of Timed, the simulated clock, the aggregated deferred events and the random
+ * sources used by the simulator's components.
+ *
+ * Every Timed object is bound to the context that was current on the thread
+ * creating it. The static functions of Timed (e.g., fire, simulateUntil) and
+ * DeferredEvent always operate on the context current on the calling thread.
+ * If no context is explicitly bound to the thread, then the JVM wide default
+ * context is used. This keeps the behaviour of single simulation applications
+ * unchanged, while independent simulations can be executed in parallel by
+ * running each of them with their own context (see run and call):
+ *
+ * <pre>
+ * pool.submit(() -&gt; new SimulationContext().call(() -&gt; {
+ * 	// set up the scenario here, then
+ * 	Timed.simulateUntilLastEvent();
+ * 	return results;
+ * }));
+ * </pre>
+ *
+ * The event queue implementation of the contexts created without specifying
+ * one (including the default context) can be selected with the system property
+ * "hu.mta.sztaki.lpds.cloud.simulator.SimulationContext.queue". Its value can
+ * be "heap" (the default, see HeapEventQueue) or "calendar" (see
+ * CalendarEventQueue).
+ *
+ * Large simulations can also opt in to use a fork-join pool for the preparation
+ * of the back preferred events that are due at the same time instance (see
+ * setParallelPool and Timed.prepareTick). The event delivery remains
+ * sequential, thus the results are the same as without the pool.
+ *
+ * Simulations with many near-simultaneous consumption completions can trade
+ * accuracy for fewer distinct event instances with setTimingTolerance. The
+ * influence groups then snap their next events onto a coarser time grid (see
+ * quantizeJump). The number of time instances with delivered events can be
+ * followed with getFiredInstants.
+ *
+ * Contexts are serializable so running simulations can be copied (see
+ * SimulationSnapshot). The parallel pool is not part of the serialized state.
+ *
+ * <i>WARNING:</i> a context is not thread safe. It must only be used by a single
+ * thread at a time, and entities created in one context must not be used from
+ * another one.
+ *
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public final class SimulationContext implements Serializable {
+	/**
+	 * The context used by all threads that have not bound a context of their
+	 * own.
+	 */
+	private static final SimulationContext defaultContext = new SimulationContext(configuredQueue(),
+			SeedSyncer.centralRnd);
+	/**
+	 * The context explicitly bound to a particular thread (if there is any).
+	 */
+	private static final ThreadLocal<SimulationContext> bound = new ThreadLocal<>();
+
+	/**
+	 * The main container for all recurring events in the simulation
+	 */
+	final EventQueue timedlist;
+	/**
+	 * The actual time in the simulation. This is maintained in ticks!
+	 */
+	long fireCounter = 0;
+	/**
+	 * Shows if Timed.fire is delivering the events of the current time instance.
+	 */
+	boolean firing = false;
+	/**
+	 * All deferred events that are due in the future are listed here. The map is
+	 * indexed by expected event arrivals.
+	 */
+	final LongObjectHashMap<DeferredEvent.AggregatedEventDispatcher> dispatchers = new LongObjectHashMap<>();
+	/**
+	 * Dispatchers that delivered their events already and can be reused for
+	 * new deferred events.
+	 */
+	final ArrayList<DeferredEvent.AggregatedEventDispatcher> dispatcherPool = new ArrayList<>();
+	/**
+	 * The pool on which the due timed objects are prepared for their ticks, if
+	 * null then there is no preparation.
+	 */
+	transient ForkJoinPool parallelPool;
+	/**
+	 * The timed objects to be prepared for the current time instance.
+	 */
+	final ArrayList<Timed> toPrepare = new ArrayList<>();
+	/**
+	 * The random generator to be used by the system components of this
+	 * simulation, see SeedSyncer.
+	 */
+	private final Random centralRnd;
+	/**
+	 * The random generator of the population based consolidators, it is only
+	 * set up once such a consolidator is configured.
+	 */
+	private XoShiRo256PlusRandom consolidationRnd;
+	/**
+	 * Random bits already drawn from consolidationRnd but not yet used by
+	 * genCachedBoolean.
+	 */
+	private long cachedBits;
+	/**
+	 * The number of bits still usable from cachedBits.
+	 */
+	private int remainingBits = 0;
+	/**
+	 * A continuously increasing simple hash value to be used by the next
+	 * resource spreader created in this simulation.
+	 */
+	private int hashCounter = 0;
+	/**
+	 * The absolute timing tolerance of the simulation in ticks. 0 means exact
+	 * timing.
+	 */
+	private long absoluteTolerance = 0;
+	/**
+	 * The timing tolerance of the simulation relative to the length of the
+	 * jumps quantized. 0 means exact timing.
+	 */
+	private double relativeTolerance = 0;
+	/**
+	 * The number of distinct time instances in which Timed.fire delivered at
+	 * least a single event.
+	 */
+	long firedInstants = 0;
+
+	/**
+	 * Creates a new, empty simulation with its clock set to 0 and its central
+	 * random generator seeded with SeedSyncer.seed. The event queue of the
+	 * simulation is determined by the system property mentioned above.
+	 */
+	public SimulationContext() {
+		this(configuredQueue());
+	}
+
+	/**
+	 * Creates a new, empty simulation that uses a custom event queue.
+	 *
+	 * @param queue the empty event queue to be used by the Timed objects of this
+	 *              simulation
+	 */
+	public SimulationContext(final EventQueue queue) {
+		this(queue, new Random(SeedSyncer.seed));
+	}
+
+	private SimulationContext(final EventQueue queue, final Random rnd) {
+		timedlist = queue;
+		centralRnd = rnd;
+	}
+
+	/**
+	 * Creates the event queue requested by the user via the system property
+	 * "hu.mta.sztaki.lpds.cloud.simulator.SimulationContext.queue".
+	 *
+	 * @return a new and empty event queue
+	 * @throws IllegalArgumentException if an unknown queue kind was requested
+	 */
+	private static EventQueue configuredQueue() {
+		final String kind = System.getProperty("hu.mta.sztaki.lpds.cloud.simulator.SimulationContext.queue", "heap");
+		return switch (kind) {
+		case "heap" -> new HeapEventQueue();
+		case "calendar" -> new CalendarEventQueue();
+		default -> throw new IllegalArgumentException("Unknown event queue kind: " + kind);
+		};
+	}
+
+	/**
+	 * Determines the context on which the calling thread should operate.
+	 *
+	 * @return the context bound to the current thread, or the default context
+	 *         if there was no binding
+	 */
+	public static SimulationContext current() {
+		final SimulationContext ctx = bound.get();
+		return ctx == null ? defaultContext : ctx;
+	}
+
+	/**
+	 * Executes a simulation within this context. During the execution, all
+	 * static Timed and DeferredEvent operations of the current thread are
+	 * directed to this context. Once the simulation returns, the previously used
+	 * context is restored.
+	 *
+	 * @param simulation the code setting up and running the simulation
+	 */
+	public void run(final Runnable simulation) {
+		call(() -> {
+			simulation.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Executes a simulation within this context and returns its results. See
+	 * run for details.
+	 *
+	 * @param simulation the code setting up and running the simulation
+	 * @return the value returned by the simulation
+	 */
+	public <T> T call(final Supplier<T> simulation) {
+		final SimulationContext previous = bound.get();
+		bound.set(this);
+		try {
+			return simulation.get();
+		} finally {
+			if (previous == null) {
+				bound.remove();
+			} else {
+				bound.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Determines the simulated time of this context.
+	 *
+	 * @return the number of ticks passed since the beginning of this simulation
+	 */
+	public long getFireCount() {
+		return fireCounter;
+	}
+
+	/**
+	 * Enables or disables the concurrent preparation of the timed objects that
+	 * are due at the same time instance. The tasks submitted to the pool will
+	 * not use this context as their current one, thus the preparation must not
+	 * depend on the static functions of Timed.
+	 *
+	 * @param pool the pool to run the preparations on, or null if the timed
+	 *             objects should be prepared during their tick functions
+	 */
+	public void setParallelPool(final ForkJoinPool pool) {
+		parallelPool = pool;
+	}
+
+	/**
+	 * Determines the pool used for preparing the due timed objects.
+	 *
+	 * @return the pool or null if the parallel preparation is disabled
+	 */
+	public ForkJoinPool getParallelPool() {
+		return parallelPool;
+	}
+
+	/**
+	 * Determines the number of distinct time instances in which some events were
+	 * delivered since the beginning of this simulation. Comparing this value for
+	 * runs with and without timing tolerance reveals the reduction of event
+	 * instances the tolerance offered.
+	 *
+	 * @return the number of time instances with delivered events
+	 */
+	public long getFiredInstants() {
+		return firedInstants;
+	}
+
+	/**
+	 * Sets the accuracy with which the influence groups of the resource sharing
+	 * model schedule their next events. A jump of <i>j</i> ticks is allowed to
+	 * be extended with at most <i>d=max(absolute, floor(relative*j))</i> ticks
+	 * (see quantizeJump). Thus every completion of a resource consumption is
+	 * observed (and notified) at most <i>d</i> ticks after the consumption
+	 * finished its processing. While a completion is not yet observed, the share
+	 * of the completed consumption is not redistributed amongst the others in
+	 * its influence group. As a result, later completions in the group can be
+	 * delayed by up to <i>d</i> ticks for every earlier completion observed
+	 * late, but they are never observed earlier than in exact mode. The total
+	 * amount of resources processed is not changed by the tolerance.
+	 *
+	 * By default, both tolerances are 0, which results in exact timing.
+	 *
+	 * @param absolute the maximum delay in ticks that is accepted for any event
+	 * @param relative the maximum delay accepted for an event as a fraction of
+	 *                 the time remaining until the event
+	 * @throws IllegalArgumentException if any of the tolerances are negative
+	 */
+	public void setTimingTolerance(final long absolute, final double relative) {
+		if (absolute < 0 || !(relative >= 0)) {
+			throw new IllegalArgumentException("Timing tolerances must be non-negative");
+		}
+		absoluteTolerance = absolute;
+		relativeTolerance = relative;
+	}
+
+	/**
+	 * Determines the absolute timing tolerance of the simulation.
+	 *
+	 * @return the accepted delay in ticks
+	 */
+	public long getAbsoluteTolerance() {
+		return absoluteTolerance;
+	}
+
+	/**
+	 * Determines the relative timing tolerance of the simulation.
+	 *
+	 * @return the accepted delay as a fraction of the jump quantized
+	 */
+	public double getRelativeTolerance() {
+		return relativeTolerance;
+	}
+
+	/**
+	 * Extends a jump from the current time so it ends on the time grid allowed
+	 * by the timing tolerances. The grid's quantum is the largest power of two
+	 * not exceeding <i>d+1</i> (where <i>d</i> is the accepted delay, see
+	 * setTimingTolerance), thus the jumps of independent influence groups with
+	 * similar tolerances meet in the same time instances. The resulting jump is
+	 * never shorter than the requested one, and is at least a single tick long
+	 * unless exact timing is requested.
+	 *
+	 * @param jump the exact jump in ticks
+	 * @return the jump to be used instead, it is the requested jump if the
+	 *         timing is exact or the jump never ends
+	 */
+	public long quantizeJump(final long jump) {
+		if (jump == Long.MAX_VALUE || absoluteTolerance == 0 && relativeTolerance == 0) {
+			return jump;
+		}
+		final long delay = Math.max(absoluteTolerance, (long) (relativeTolerance * jump));
+		final long quantum = Long.highestOneBit(Math.min(delay, Long.MAX_VALUE - 1) + 1);
+		final long target = fireCounter + Math.max(jump, 1);
+		final long snapped = target + quantum - 1;
+		if (target < 0 || snapped < 0) {
+			return jump;
+		}
+		return snapped / quantum * quantum - fireCounter;
+	}
+
+	/**
+	 * The random generator that the components of this simulation should use if
+	 * they need reproducible but random behaviour.
+	 *
+	 * @return the central random generator of the context
+	 */
+	public Random getCentralRnd() {
+		return centralRnd;
+	}
+
+	/**
+	 * Restarts the central random generator of this context with SeedSyncer.seed
+	 */
+	public void resetCentralRnd() {
+		centralRnd.setSeed(SeedSyncer.seed);
+	}
+
+	/**
+	 * The random generator used by the population based consolidators.
+	 *
+	 * @return the generator, or null if no consolidator set it up yet.
+	 */
+	public XoShiRo256PlusRandom getConsolidationRnd() {
+		return consolidationRnd;
+	}
+
+	/**
+	 * Replaces the random generator used by the population based consolidators.
+	 *
+	 * @param rnd the new generator to use
+	 */
+	public void setConsolidationRnd(final XoShiRo256PlusRandom rnd) {
+		consolidationRnd = rnd;
+	}
+
+	/**
+	 * Produces a random boolean from the consolidation random generator. Only
+	 * draws a new long from the generator on every 64th call.
+	 *
+	 * @return a random boolean value
+	 */
+	public boolean genCachedBoolean() {
+		if (remainingBits == 0) {
+			cachedBits = consolidationRnd.nextLong();
+			remainingBits = 64;
+		}
+		remainingBits--;
+		return ((cachedBits = cachedBits >> 1) & 1) == 1;
+	}
+
+	/**
+	 * Manages the increment of the hash counter and offers the latest hash code
+	 * for new resource spreaders.
+	 *
+	 * <i>WARNING:</i> as this function does not check if a hash value is already
+	 * given or not there might be hash collisions if there are so many resource
+	 * spreaders created that the counter overflows.
+	 *
+	 * @return the hash code to be used by the newest spreader
+	 */
+	public int getHashAndIncCounter() {
+		return hashCounter++;
+	}
+
+	/**
+	 * Cancels all timed and deferred events of the context and sets back its
+	 * time to 0.
+	 */
+	void reset() {
+		timedlist.clear();
+		dispatchers.clear();
+		dispatcherPool.clear();
+		firing = false;
+		fireCounter = 0;
+		firedInstants = 0;
+	}
+}
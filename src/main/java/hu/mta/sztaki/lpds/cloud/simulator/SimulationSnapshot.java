@@ -0,0 +1,134 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.function.Function;
+
+/**
+ * A frozen copy of a running simulation. The snapshot allows what-if analysis
+ * without re-simulating the common past of the analysed cases: the simulation
+ * is run until the point where the cases start to differ, then a snapshot is
+ * taken, and every case is continued in its own fork of the snapshot. Forks are
+ * completely independent from each other and from the original simulation (they
+ * all have their own SimulationContext), thus they can also be run in parallel:
+ * 
+ * <pre>
+ * final SimulationSnapshot&lt;MyScenario&gt; snap = SimulationSnapshot.take(scenario);
+ * for (Policy p : policies) {
+ * 	pool.submit(() -&gt; snap.fork(copy -&gt; {
+ * 		copy.apply(p);
+ * 		Timed.simulateUntilLastEvent();
+ * 		return copy.results();
+ * 	}));
+ * }
+ * </pre>
+ * 
+ * The snapshot captures the context of the calling thread (with its event
+ * queue, deferred events, clock and random generators) and everything that is
+ * reachable from the context or from the root object passed by the user. The
+ * root should be the object through which the user can access the parts of the
+ * simulation relevant for its continuation (e.g., an IaaSService or an object
+ * holding several ones). The copy is made with Java serialization, thus all
+ * captured objects - including the event handlers registered by the user - must
+ * be serializable. Static fields are not captured.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public final class SimulationSnapshot<T> {
+	/**
+	 * The serialised form of the context and the root object.
+	 */
+	private final byte[] state;
+
+	private SimulationSnapshot(final byte[] state) {
+		this.state = state;
+	}
+
+	/**
+	 * Captures the simulation of the calling thread. Snapshots can only be taken
+	 * at a quiescent state of the simulation, i.e., when no events are being
+	 * delivered by Timed.fire.
+	 * 
+	 * @param root the object through which the forks can access the captured
+	 *             simulation
+	 * @return the snapshot of the simulation
+	 * @throws IllegalStateException if the snapshot is requested from an event
+	 *                               handler, or if some of the captured objects
+	 *                               are not serializable
+	 */
+	public static <T> SimulationSnapshot<T> take(final T root) {
+		final SimulationContext ctx = SimulationContext.current();
+		if (ctx.firing) {
+			throw new IllegalStateException("Snapshots cannot be taken while events are delivered");
+		}
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(ctx);
+			out.writeObject(root);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not capture the simulation", e);
+		}
+		return new SimulationSnapshot<>(bytes.toByteArray());
+	}
+
+	/**
+	 * Creates a new, independent copy of the captured simulation and continues
+	 * it. The continuation is executed in the context of the copy (see
+	 * SimulationContext.call), so it can use the static functions of Timed to
+	 * drive the forked simulation further.
+	 * 
+	 * @param continuation the code continuing the simulation, it receives the
+	 *                     copy of the root object
+	 * @return the value returned by the continuation
+	 */
+	public <R> R fork(final Function<T, R> continuation) {
+		final SimulationContext ctx;
+		final T root;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state))) {
+			ctx = (SimulationContext) in.readObject();
+			@SuppressWarnings("unchecked")
+			final T copy = (T) in.readObject();
+			root = copy;
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Could not restore the simulation", e);
+		}
+		return ctx.call(() -> continuation.apply(root));
+	}
+
+	/**
+	 * Determines the memory needed by the snapshot.
+	 * 
+	 * @return the size of the captured state in bytes
+	 */
+	public int size() {
+		return state.length;
+	}
+}
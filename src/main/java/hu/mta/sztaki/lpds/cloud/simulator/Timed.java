@@ -26,7 +26,8 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator;
 
-import java.util.PriorityQueue;
+import java.io.Serializable;
+import java.util.ArrayList;
 
 /**
  * This is the base class for the simulation, every class that should receive
@@ -41,6 +42,11 @@ import java.util.PriorityQueue;
  * of a networknode then you should set it in bytes/tick. Thus if your tick=ms
  * you must set it in bytes/ms.
  * 
+ * The event queue (see EventQueue) and the clock are held by a
+ * SimulationContext. Every timed
+ * object is bound to the context current at its creation, while the static
+ * functions below operate on the context current on the calling thread.
+ * 
  * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
  *         Moores University, (c) 2017"
  * @author "Gabor Kecskemeti, Distributed and Parallel Systems Group, University
@@ -49,20 +55,23 @@ import java.util.PriorityQueue;
  *         MTA SZTAKI (c) 2012"
  * 
  */
-public abstract class Timed implements Comparable<Timed> {
+public abstract class Timed implements Comparable<Timed>, Serializable {
 
 	/**
-	 * The main container for all recurring events in the system
+	 * The simulation this object belongs to. Its event queue and clock is used
+	 * for all subscription related operations of this object.
 	 */
-	private static final PriorityQueue<Timed> timedlist = new PriorityQueue<>();
+	private final SimulationContext ctx = SimulationContext.current();
 	/**
-	 * If set to true, the event loop is processing this object at the moment.
+	 * The position of this object in its event queue, allows queues to locate
+	 * the object without searching for it. Only maintained by queues that need
+	 * it (e.g., HeapEventQueue), -1 if the object is not queued.
 	 */
-	private boolean underProcessing = false;
+	int queueIndex = -1;
 	/**
-	 * The actual time in the system. This is maintained in ticks!
+	 * If set to true, the event loop is processing this object at the moment.
 	 */
-	private static long fireCounter = 0;
+	private boolean underProcessing = false;
 
 	/**
 	 * Determines if the actual timed object is going to receive recurring events
@@ -91,6 +100,12 @@ public abstract class Timed implements Comparable<Timed> {
 	 * fixed!
 	 */
 	private boolean backPreference = false;
+	/**
+	 * If set to true, the back preferred object asks to be prepared with
+	 * prepareTick before its tick function is called (if the context of the
+	 * object has a parallel pool).
+	 */
+	private boolean concurrentPreparation = false;
 
 	/**
 	 * Allows to determine if a particular timed object is receiving notifications
@@ -139,7 +154,7 @@ public abstract class Timed implements Comparable<Timed> {
 	private void realSubscribe(final long freq) {
 		activeSubscription = true;
 		updateEvent(freq);
-		timedlist.offer(this);
+		ctx.timedlist.offer(this);
 	}
 
 	/**
@@ -160,7 +175,7 @@ public abstract class Timed implements Comparable<Timed> {
 				// to remove from the list
 				return true;
 			}
-			timedlist.remove(this);
+			ctx.timedlist.remove(this);
 			return true;
 		}
 		return false;
@@ -181,8 +196,7 @@ public abstract class Timed implements Comparable<Timed> {
 			final long oldNE = nextEvent;
 			updateEvent(freq);
 			if (!underProcessing && oldNE != nextEvent) {
-				timedlist.remove(this);
-				timedlist.offer(this);
+				ctx.timedlist.reschedule(this, oldNE);
 			}
 		} else {
 			realSubscribe(freq);
@@ -205,7 +219,7 @@ public abstract class Timed implements Comparable<Timed> {
 			throw new IllegalStateException("ERROR: Negative event frequency cannot simulate further!");
 		} else {
 			frequency = freq;
-			nextEvent = calcTimeJump(freq);
+			nextEvent = calcTimeJump(ctx, freq);
 			if (nextEvent == Long.MAX_VALUE) {
 				throw new IllegalStateException("Event to never occur: " + freq);
 			}
@@ -246,7 +260,16 @@ public abstract class Timed implements Comparable<Timed> {
 	 *         </ul>
 	 */
 	public long nextEventDistance() {
-		return activeSubscription ? nextEvent - fireCounter : Long.MAX_VALUE;
+		return activeSubscription ? nextEvent - ctx.fireCounter : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Determines the simulation this timed object is bound to.
+	 * 
+	 * @return the context that was current when this object was created
+	 */
+	public final SimulationContext getContext() {
+		return ctx;
 	}
 
 	/**
@@ -276,6 +299,17 @@ public abstract class Timed implements Comparable<Timed> {
 		this.backPreference = backPreference;
 	}
 
+	/**
+	 * Allows back preferred timed objects to ask for the concurrent preparation
+	 * of their upcoming ticks (see prepareTick).
+	 * 
+	 * @param concurrentPreparation <i>true</i> if prepareTick should be called
+	 *                              when the context has a parallel pool
+	 */
+	protected void setConcurrentPreparation(final boolean concurrentPreparation) {
+		this.concurrentPreparation = concurrentPreparation;
+	}
+
 	/**
 	 * This function allows the manual operation of the event handling mechanism. It
 	 * is used to send out events that should occur at a particular time instance.
@@ -284,17 +318,54 @@ public abstract class Timed implements Comparable<Timed> {
 	 * advances the time by one tick.
 	 */
 	public static void fire() {
-		while (!timedlist.isEmpty() && timedlist.peek().nextEvent == fireCounter) {
+		final SimulationContext ctx = SimulationContext.current();
+		final EventQueue timedlist = ctx.timedlist;
+		boolean prepared = ctx.parallelPool == null;
+		ctx.firing = true;
+		if (!timedlist.isEmpty() && timedlist.peek().nextEvent == ctx.fireCounter) {
+			ctx.firedInstants++;
+		}
+		while (!timedlist.isEmpty() && timedlist.peek().nextEvent == ctx.fireCounter) {
+			if (!prepared && timedlist.peek().backPreference) {
+				// All regular events are delivered for this time instance
+				prepareDueObjects(ctx);
+				prepared = true;
+			}
 			final Timed t = timedlist.poll();
 			t.underProcessing = true;
-			t.tick(fireCounter);
+			t.tick(ctx.fireCounter);
 			if (t.activeSubscription) {
 				t.updateEvent(t.frequency);
 				timedlist.offer(t);
 			}
 			t.underProcessing = false;
 		}
-		fireCounter++;
+		ctx.firing = false;
+		ctx.fireCounter++;
+	}
+
+	/**
+	 * Runs the prepareTick functions of all back preferred objects due at the
+	 * current time instance on the parallel pool of the context. The objects stay
+	 * in the event queue, so their ticks are delivered in the same order as if
+	 * there was no preparation.
+	 * 
+	 * @param ctx the simulation in which the preparation should happen
+	 */
+	private static void prepareDueObjects(final SimulationContext ctx) {
+		final ArrayList<Timed> due = ctx.toPrepare;
+		ctx.timedlist.collectDue(ctx.fireCounter, due);
+		due.removeIf(t -> !(t.backPreference && t.concurrentPreparation));
+		if (due.size() > 1) {
+			final long fires = ctx.fireCounter;
+			try {
+				ctx.parallelPool.submit(() -> due.parallelStream().forEach(t -> t.prepareTick(fires))).join();
+			} finally {
+				due.clear();
+			}
+		} else {
+			due.clear();
+		}
 	}
 
 	/**
@@ -305,7 +376,11 @@ public abstract class Timed implements Comparable<Timed> {
 	 *         complete
 	 */
 	public static long calcTimeJump(long jump) {
-		final long targettime = fireCounter + jump;
+		return calcTimeJump(SimulationContext.current(), jump);
+	}
+
+	private static long calcTimeJump(final SimulationContext ctx, final long jump) {
+		final long targettime = ctx.fireCounter + jump;
 		return targettime < 0 ? Long.MAX_VALUE : targettime;
 	}
 
@@ -322,14 +397,15 @@ public abstract class Timed implements Comparable<Timed> {
 	 * @return the amount of time that still remains until desiredjump.
 	 */
 	public static long jumpTime(long desiredJump) {
-		final long targettime = calcTimeJump(desiredJump);
-		final long nextFire = getNextFire();
+		final SimulationContext ctx = SimulationContext.current();
+		final long targettime = calcTimeJump(ctx, desiredJump);
+		final long nextFire = getNextFire(ctx);
 		if (targettime <= nextFire) {
-			fireCounter = targettime;
+			ctx.fireCounter = targettime;
 			return 0;
 		} else {
-			fireCounter = nextFire < 0 ? targettime : nextFire;
-			return targettime - fireCounter;
+			ctx.fireCounter = nextFire < 0 ? targettime : nextFire;
+			return targettime - ctx.fireCounter;
 		}
 	}
 
@@ -338,22 +414,27 @@ public abstract class Timed implements Comparable<Timed> {
 	 * happen during the jumped time period, then this function cancels them. If
 	 * some events should be recurring during the period, then the first recurrence
 	 * of the event will be after the given time instance. If the given time
-	 * instance has already occurred then this function does nothing!
+	 * instance has already occurred then this function does nothing! Timed objects
+	 * that unsubscribe in their skip function will not receive further events.
 	 * 
 	 * @param desiredTime the time at which the simulation should continue after
 	 *                    this call. If the time given here already happened then
 	 *                    this function will have no effect.
 	 */
 	public static void skipEventsTill(final long desiredTime) {
-		final long distance = desiredTime - fireCounter;
+		final SimulationContext ctx = SimulationContext.current();
+		final EventQueue timedlist = ctx.timedlist;
+		final long distance = desiredTime - ctx.fireCounter;
 		if (distance > 0) {
 			while (timedlist.peek() != null && timedlist.peek().nextEvent < desiredTime) {
 				final Timed t = timedlist.poll();
 				t.skip();
-				t.nextEvent = t.frequency==0?desiredTime:calcTimeJump(t.frequency * (1 + distance / t.frequency));
-				timedlist.offer(t);
+				if (t.activeSubscription) {
+					t.nextEvent = t.frequency==0?desiredTime:calcTimeJump(ctx, t.frequency * (1 + distance / t.frequency));
+					timedlist.offer(t);
+				}
 			}
-			fireCounter = desiredTime;
+			ctx.fireCounter = desiredTime;
 		}
 	}
 
@@ -364,7 +445,7 @@ public abstract class Timed implements Comparable<Timed> {
 	 * @return The number of ticks that has passed since the beginning of time.
 	 */
 	public static long getFireCount() {
-		return fireCounter;
+		return SimulationContext.current().fireCounter;
 	}
 
 	/**
@@ -374,7 +455,11 @@ public abstract class Timed implements Comparable<Timed> {
 	 * @return the time instance in ticks
 	 */
 	public static long getNextFire() {
-		final Timed head = timedlist.peek();
+		return getNextFire(SimulationContext.current());
+	}
+
+	private static long getNextFire(final SimulationContext ctx) {
+		final Timed head = ctx.timedlist.peek();
 		return head == null ? -1 : head.nextEvent;
 	}
 
@@ -411,9 +496,10 @@ public abstract class Timed implements Comparable<Timed> {
 	 *             advance to this point.
 	 */
 	public static void simulateUntil(final long time) {
-		while (timedlist.peek() != null && fireCounter < time) {
-			jumpTime(time - fireCounter);
-			if (getNextFire() == fireCounter) {
+		final SimulationContext ctx = SimulationContext.current();
+		while (ctx.timedlist.peek() != null && ctx.fireCounter < time) {
+			jumpTime(time - ctx.fireCounter);
+			if (getNextFire(ctx) == ctx.fireCounter) {
 				fire();
 			}
 		}
@@ -421,11 +507,11 @@ public abstract class Timed implements Comparable<Timed> {
 
 	/**
 	 * Cancels all timed events and sets back the time to 0.
+	 * 
+	 * Only the simulation current on the calling thread is reset.
 	 */
 	public static void resetTimed() {
-		timedlist.clear();
-		DeferredEvent.reset();
-		fireCounter = 0;
+		SimulationContext.current().reset();
 	}
 
 	/**
@@ -447,6 +533,25 @@ public abstract class Timed implements Comparable<Timed> {
 	 */
 	public abstract void tick(long fires);
 
+	/**
+	 * Allows the part of the upcoming tick that only depends on the object's own
+	 * state to be done in advance. It is only called for back preferred objects
+	 * that asked for concurrent preparation, and only if their context has a
+	 * parallel pool. The preparation of the objects due at the same time
+	 * instance happens concurrently on the pool once all the regular events of
+	 * the time instance are delivered. The preparation must not alter the
+	 * subscription of the object and must not touch the state of any other
+	 * objects that could be prepared at the same time. The tick function is
+	 * called afterwards as usual, and it must lead to the same results as if
+	 * there was no preparation.
+	 * 
+	 * The function does nothing by default
+	 * 
+	 * @param fires the time instance for which the tick function will be called
+	 */
+	protected void prepareTick(final long fires) {
+	}
+
 	/**
 	 * Allows actions to be taken if the particular event is ignored
 	 * 
@@ -26,6 +26,7 @@ package hu.mta.sztaki.lpds.cloud.simulator.energy;
 
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.PowerBehaviorChangeListener;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ProcessingRateChangeListener;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
 
 /**
@@ -37,7 +38,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
  * 
  */
 public class DirectEnergyMeter extends EnergyMeter
-		implements PowerBehaviorChangeListener, PowerState.PowerCharacteristicsChange {
+		implements PowerBehaviorChangeListener, PowerState.PowerCharacteristicsChange, ProcessingRateChangeListener {
 	/**
 	 * the resource spreader that needs to be measured energywise
 	 */
@@ -51,10 +52,11 @@ public class DirectEnergyMeter extends EnergyMeter
 	 */
 	private double previousProcessingReport;
 	/**
-	 * the maximum amount of totalprocessed increase possible during the
-	 * metering time interval.
+	 * shows if the current metering session is event driven (i.e., readings
+	 * are only collected when the processing rate or the power behavior of the
+	 * measured resource might change, see startEventDrivenMeter).
 	 */
-	private double maxProcessable;
+	private boolean eventDriven = false;
 
 	/**
 	 * sets up the new meter. keep in mind that metering is not started by
@@ -86,38 +88,79 @@ public class DirectEnergyMeter extends EnergyMeter
 	public boolean startMeter(long interval, boolean dropPriorReading) {
 		boolean startResult = super.startMeter(interval, dropPriorReading);
 		if (startResult) {
-			previousProcessingReport = collectProcessingReport();
-			updateFieldsUsingNewInterval(interval);
-			usedPowerState = measuredResource.getCurrentPowerBehavior();
-			usedPowerState.subscribePowerCharacteristicsChanges(this);
-			measuredResource.subscribePowerBehaviorChangeEvents(this);
+			eventDriven = false;
+			startReadings();
+		}
+		return startResult;
+	}
+
+	/**
+	 * starts an event driven metering session for the particular resource
+	 * spreader. Instead of periodic readings, the meter collects its readings
+	 * when the processing rate of the spreader might change or when its power
+	 * behavior changes. In between these points the load of the spreader is
+	 * constant, thus the meter reports the same totals as a periodic meter
+	 * would (if the power behavior is linear in terms of the load) without
+	 * adding any events to the simulation.
+	 * 
+	 * @param dropPriorReading
+	 *            see EnergyMeter.startMeter
+	 * @return <i>false</i> if a metering session is already underway
+	 */
+	public boolean startEventDrivenMeter(final boolean dropPriorReading) {
+		boolean startResult = startUnscheduledMeter(dropPriorReading);
+		if (startResult) {
+			eventDriven = true;
+			startReadings();
+			measuredResource.subscribeProcessingRateChangeEvents(this);
 		}
 		return startResult;
 	}
 
+	/**
+	 * collects the first reading of a new metering session and subscribes to
+	 * the power behavior related events of the resource spreader
+	 */
+	private void startReadings() {
+		previousProcessingReport = collectProcessingReport();
+		usedPowerState = measuredResource.getCurrentPowerBehavior();
+		usedPowerState.subscribePowerCharacteristicsChanges(this);
+		measuredResource.subscribePowerBehaviorChangeEvents(this);
+	}
+
 	/**
 	 * stops the metering session for the resource spreader
 	 */
 	@Override
 	public void stopMeter() {
-		if (isSubscribed()) {
+		if (isMetering()) {
 			super.stopMeter();
 			usedPowerState.unsubscribePowerCharacteristicsChanges(this);
 			measuredResource.unsubscribePowerBehaviorChangeEvents(this);
+			if (eventDriven) {
+				measuredResource.unsubscribeProcessingRateChangeEvents(this);
+				eventDriven = false;
+			}
 		}
 	}
 
 	/**
 	 * on this function the meter receives notifications on power state changes
-	 * of the particular resource spreader
+	 * of the particular resource spreader. Event driven meters collect their
+	 * last reading with the previous power state before switching.
 	 */
 	@Override
 	public void behaviorChanged(final ResourceSpreader onSpreader, final PowerState newState) {
-		if (isSubscribed()) {
+		if (isMetering()) {
+			if (eventDriven) {
+				readjustMeter();
+			}
 			usedPowerState.unsubscribePowerCharacteristicsChanges(this);
 			usedPowerState = newState;
 			usedPowerState.subscribePowerCharacteristicsChanges(this);
-			readjustMeter();
+			if (!eventDriven) {
+				readjustMeter();
+			}
 		}
 	}
 
@@ -133,14 +176,43 @@ public class DirectEnergyMeter extends EnergyMeter
 	}
 
 	/**
-	 * The maxProcessable field is updated with the metering frequency specified
-	 * here
-	 * 
-	 * @param interval
-	 *            the metering period (in ticks)
+	 * event driven meters just collect a reading, periodic ones restart their
+	 * session
 	 */
-	private void updateFieldsUsingNewInterval(final long interval) {
-		maxProcessable = interval * measuredResource.getPerTickProcessingPower();
+	@Override
+	protected void readjustMeter() {
+		if (eventDriven) {
+			tick(getFireCount());
+		} else {
+			super.readjustMeter();
+		}
+	}
+
+	/**
+	 * event driven meters collect a reading when the rate of the resource
+	 * spreader might change. The spreader is already processed at this point,
+	 * thus the reading is an estimate that does not trigger any further
+	 * processing.
+	 */
+	@Override
+	public void rateChanges(final ResourceSpreader onSpreader, final long when) {
+		meterUntil(when, measuredResource.getTotalProcessed(when));
+	}
+
+	/**
+	 * Event driven meters also report the consumption since their last reading.
+	 * As the load of the resource spreader is constant since then, this is
+	 * calculated from the estimated total processed value of the spreader
+	 * without collecting a new reading.
+	 */
+	@Override
+	public double getTotalConsumption() {
+		final double collected = super.getTotalConsumption();
+		final long now = getFireCount();
+		if (!eventDriven || now == lastMetered) {
+			return collected;
+		}
+		return collected + consumptionUntil(now, measuredResource.getTotalProcessed(now));
 	}
 
 	/**
@@ -153,20 +225,48 @@ public class DirectEnergyMeter extends EnergyMeter
 		return measuredResource.getTotalProcessed();
 	}
 
+	/**
+	 * Determines the energy consumed since the last reading of the meter. The
+	 * load of the spreader is derived from the amount processed since then and
+	 * the maximum amount that could have been processed in the same period.
+	 * 
+	 * @param when
+	 *            the time instance until the consumption is determined
+	 * @param processingReport
+	 *            the total processed value of the spreader at that time
+	 * @return the energy consumed in W*(ticks)
+	 */
+	private double consumptionUntil(final long when, final double processingReport) {
+		final long period = when - lastMetered;
+		final double maxProcessable = period * measuredResource.getPerTickProcessingPower();
+		return usedPowerState.getCurrentPower((processingReport - previousProcessingReport) / maxProcessable)
+				* period;
+	}
+
+	/**
+	 * Collects a new reading from the resource spreader. Readings for the time
+	 * instance of the last one are ignored so the processing done in the
+	 * meantime is accounted for in the next reading.
+	 * 
+	 * @param when
+	 *            the time instance of the reading
+	 * @param processingReport
+	 *            the total processed value of the spreader at that time
+	 */
+	private void meterUntil(final long when, final double processingReport) {
+		if (when != lastMetered) {
+			increaseTotalConsumption(consumptionUntil(when, processingReport));
+			previousProcessingReport = processingReport;
+			lastMetered = when;
+		}
+	}
+
 	/**
 	 * Maintains the totalconsumption value in every desired time interval
 	 */
 	@Override
 	public void tick(final long fires) {
-		if (!isSubscribed()) {
-			updateFieldsUsingNewInterval(getFrequency() - getNextEvent() + fires);
-		}
-		final double currentProcessingReport = collectProcessingReport();
-		increaseTotalConsumption(
-				usedPowerState.getCurrentPower(((currentProcessingReport - previousProcessingReport) / maxProcessable))
-						* (fires - lastMetered));
-		previousProcessingReport = currentProcessingReport;
-		lastMetered = fires;
+		meterUntil(fires, collectProcessingReport());
 	}
 
 }
@@ -77,10 +77,43 @@ public abstract class EnergyMeter extends Timed {
 	 * 
 	 */
 	public boolean startMeter(final long interval, boolean dropPriorReading) {
-		if (meteringStopped == -1) {
+		if (isMetering()) {
 			return false;
 		}
 		subscribe(interval);
+		startSession(dropPriorReading);
+		return true;
+	}
+
+	/**
+	 * Initiates an energy metering session without periodic readings. The
+	 * meters using this kind of session are expected to update their readings
+	 * on their own (e.g., when they are notified about changes in the metered
+	 * entity).
+	 * 
+	 * @param dropPriorReading
+	 *            see startMeter
+	 * @return <ul>
+	 *         <li>False: if a metering session is already underway
+	 *         <li>True: if the metering session was successfully initiated
+	 *         </ul>
+	 */
+	protected boolean startUnscheduledMeter(final boolean dropPriorReading) {
+		if (isMetering()) {
+			return false;
+		}
+		startSession(dropPriorReading);
+		return true;
+	}
+
+	/**
+	 * Sets up the session related fields of the meter for a new metering
+	 * session starting at the current time instance.
+	 * 
+	 * @param dropPriorReading
+	 *            see startMeter
+	 */
+	private void startSession(final boolean dropPriorReading) {
 		lastMetered = Timed.getFireCount();
 		if (dropPriorReading) {
 			totalConsumption = 0;
@@ -91,7 +124,6 @@ public abstract class EnergyMeter extends Timed {
 			meteringStarted += lastMetered - meteringStopped;
 		}
 		meteringStopped = -1;
-		return true;
 	}
 
 	/**
@@ -99,7 +131,8 @@ public abstract class EnergyMeter extends Timed {
 	 * longer be updated!
 	 */
 	public void stopMeter() {
-		if (unsubscribe()) {
+		if (isMetering()) {
+			unsubscribe();
 			final long now = getFireCount();
 			if (now != lastMetered) {
 				tick(now);
@@ -108,6 +141,16 @@ public abstract class EnergyMeter extends Timed {
 		}
 	}
 
+	/**
+	 * Determines if there is a metering session underway (regardless if it
+	 * does periodic readings or not).
+	 * 
+	 * @return <i>true</i> if the meter is in a metering session
+	 */
+	public boolean isMetering() {
+		return meteringStopped == -1;
+	}
+
 	/**
 	 * Allows the reading of the meter's current consumption report.
 	 * 
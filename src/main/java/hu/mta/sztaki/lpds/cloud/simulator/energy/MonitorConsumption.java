@@ -25,87 +25,31 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.energy;
 
-import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
 
-import java.util.PriorityQueue;
-
 /**
- * This class is an initial framework to collect periodical reports on
- * consumptions. In its current state it is too rigid and needs more
- * customization.
- * 
- * However, if extended further it would allow a single consumption monitor to
- * be added to a particular resourcespreader, eliminating the need for multiple
- * queries on the getTotalProcessed function.
+ * Collects periodical reports on the processing of a single resource spreader.
  * 
- * <i>NOTE:</i> this class is outdated and might perform badly.
+ * A single consumption monitor can be added to a particular resourcespreader,
+ * eliminating the need for multiple queries on the getTotalProcessed function.
+ * The reports are collected with the rolling windows of
+ * WindowedConsumptionMonitor, thus the monitor uses constant memory and
+ * constant time per report. If several spreaders need to be monitored, a
+ * single WindowedConsumptionMonitor should be used instead of a
+ * MonitorConsumption object per spreader.
  * 
  * @author "Gabor Kecskemeti, Distributed and Parallel Systems Group, University of Innsbruck (c) 2013"
  * 
  */
-public class MonitorConsumption extends Timed {
-	/**
-	 * the collected totalprocessed data with timestamps to allow seeing the
-	 * temporal behavior of totalprocessed
-	 * 
-	 * @author "Gabor Kecskemeti, Distributed and Parallel Systems Group, University of Innsbruck (c) 2013"
-	 *
-	 */
-	private static class SpreadingRecord implements Comparable<SpreadingRecord> {
-		/**
-		 * the time in ticks when this record was acquired
-		 */
-		public long timestamp;
-		/**
-		 * the totalprocessed value at the particular time instance
-		 */
-		public double totalProcessed;
-
-		/**
-		 * a comparator to allow easy ordering of the records based on
-		 * timestamps.
-		 */
-		@Override
-		public int compareTo(SpreadingRecord o) {
-			return Long.signum(timestamp - o.timestamp);
-		}
-	}
-
+public class MonitorConsumption extends WindowedConsumptionMonitor {
 	/**
 	 * what resource spreader to collect the totalprocessed values from
 	 */
 	final ResourceSpreader toMonitor;
 	/**
-	 * all spreading records that were collected during the past hour
-	 */
-	private final PriorityQueue<SpreadingRecord> subHourRecords = new PriorityQueue<>();
-	/**
-	 * all spreading records collected during the past day
-	 */
-	private final PriorityQueue<SpreadingRecord> subDayRecords = new PriorityQueue<>();
-	/**
-	 * the total processing accomplished in the last hour
-	 */
-	private double subHourProcessing = 0;
-	/**
-	 * the total processing accomplished in the last day
-	 */
-	private double subDayProcessing = 0;
-	/**
-	 * the totalprocessed value of the spreader during the last collection
+	 * the reports of the monitored spreader
 	 */
-	private double totalProcessed;
-	/**
-	 * the amount of processing done in the last second
-	 */
-	private double subSecondProcessing = 0;
-
-	/**
-	 * the amount of ticks it takes for a single second to pass in the simulated
-	 * time
-	 */
-	private final long aSecond;
+	private final Handle reports;
 
 	/**
 	 * Initiates a monitoring session for the resource consumptions of a
@@ -119,79 +63,48 @@ public class MonitorConsumption extends Timed {
 	 *            below 1 then the monitor consumption class should not be used
 	 */
 	public MonitorConsumption(final ResourceSpreader toMonitor, final long aSecond) {
+		super(aSecond);
 		this.toMonitor = toMonitor;
-		totalProcessed = toMonitor.getTotalProcessed();
-		this.aSecond = aSecond;
-		subscribe(aSecond);
+		reports = monitor(toMonitor);
 	}
 
 	/**
 	 * the amount of processing done in the past day (this is a rolling day
-	 * always assumed to start a day before this function was called)
+	 * always assumed to start a day before the last report)
 	 * 
 	 * @return the processing done in the past day
 	 */
 	public double getSubDayProcessing() {
-		return subDayProcessing;
+		return reports.getProcessing(Window.DAY);
 	}
 
 	/**
 	 * the amount of processing done in the past hour (this is a rolling hour
-	 * always assumed to start a hour before this function was called)
+	 * always assumed to start a hour before the last report)
 	 * 
 	 * @return the processing done in the past hour
 	 */
 	public double getSubHourProcessing() {
-		return subHourProcessing;
+		return reports.getProcessing(Window.HOUR);
 	}
 
 	/**
-	 * the amount of processing done in the past second (this is a rolling
-	 * second always assumed to start a second before this function was called)
+	 * the amount of processing done in the past minute (this is a rolling
+	 * minute always assumed to start a minute before the last report)
 	 * 
-	 * @return the processing done in the past second
-	 */
-	public double getSubSecondProcessing() {
-		return subSecondProcessing;
-	}
-
-	/**
-	 * Data collector function that updates all processing data records and
-	 * throws out the too old records as well.
+	 * @return the processing done in the past minute
 	 */
-	@Override
-	public void tick(final long fires) {
-		final SpreadingRecord current = new SpreadingRecord();
-		current.timestamp = fires;
-		current.totalProcessed = toMonitor.getTotalProcessed();
-		subSecondProcessing = current.totalProcessed - totalProcessed;
-		totalProcessed = current.totalProcessed;
-		subHourRecords.add(current);
-		while (subHourRecords.peek().timestamp + 3600 * aSecond < fires) {
-			// 60*60*1000
-			// Over the past hour
-			subDayRecords.add(subHourRecords.poll());
-			while (subDayRecords.peek().timestamp + 86400 * aSecond < fires) {
-				// Over the past day
-				subDayRecords.poll();
-			}
-		}
-		subHourProcessing = totalProcessed - subHourRecords.peek().totalProcessed;
-		try {
-			subDayProcessing = totalProcessed - subDayRecords.peek().totalProcessed;
-		} catch (NullPointerException ne) {
-			// No records over an hour
-			subDayProcessing = subHourProcessing;
-		}
+	public double getSubMinuteProcessing() {
+		return reports.getProcessing(Window.MINUTE);
 	}
 
 	/**
-	 * allows the monitoring to be terminated at any arbitrary point of time.
-	 * The processing data reports are not going to be updated anymore, and they
-	 * are going to be always valid for the time instance where the cancel
-	 * operation was called.
+	 * the amount of processing done in the past second (this is a rolling
+	 * second always assumed to start a second before the last report)
+	 * 
+	 * @return the processing done in the past second
 	 */
-	public void cancelMonitoring() {
-		unsubscribe();
+	public double getSubSecondProcessing() {
+		return reports.getProcessing(Window.SECOND);
 	}
 }
@@ -0,0 +1,342 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy;
+
+import java.util.Arrays;
+
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
+
+/**
+ * Collects periodical reports on the processing done by any number of
+ * resource spreaders with a single timed event per second. The processing is
+ * reported for rolling windows of a second, a minute, an hour and a day (see
+ * Window).
+ * 
+ * The total processed values of the spreaders are kept in fixed size ring
+ * buffers at several resolutions: every second for the last minute, every
+ * minute for the last hour and every hour for the last day. Thus the memory
+ * used for a spreader is constant and the collection of a report costs
+ * constant time no matter how long the spreader is monitored. The windows are
+ * measured with the resolution of the buffer they use: the minute window is
+ * exact, while the hour and day windows start at the last minute or hour
+ * boundary before the window's exact start (i.e., they might be up to a minute
+ * or an hour longer). The buffers of all spreaders are stored together in
+ * primitive arrays.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class WindowedConsumptionMonitor extends Timed {
+	/**
+	 * The rolling windows the processing can be reported for
+	 */
+	public enum Window {
+		/**
+		 * the last second
+		 */
+		SECOND(1),
+		/**
+		 * the last minute
+		 */
+		MINUTE(60),
+		/**
+		 * the last hour
+		 */
+		HOUR(3600),
+		/**
+		 * the last day
+		 */
+		DAY(86400);
+
+		/**
+		 * the length of the window in seconds
+		 */
+		public final int seconds;
+
+		Window(final int seconds) {
+			this.seconds = seconds;
+		}
+	}
+
+	/**
+	 * Represents a spreader monitored by this object. Allows the querying of
+	 * the processing reports of the spreader. The handle remains valid until
+	 * the spreader is removed from the monitor.
+	 */
+	public final class Handle {
+		/**
+		 * The monitored spreader
+		 */
+		private final ResourceSpreader monitored;
+		/**
+		 * The row of the spreader in the buffers of the monitor, -1 if the
+		 * spreader is no longer monitored
+		 */
+		private int row;
+
+		private Handle(final ResourceSpreader rs, final int row) {
+			monitored = rs;
+			this.row = row;
+		}
+
+		/**
+		 * Allows determining which spreader is reported by this handle
+		 * 
+		 * @return the monitored spreader
+		 */
+		public ResourceSpreader getMonitored() {
+			return monitored;
+		}
+
+		/**
+		 * The amount of processing done by the spreader in a rolling window
+		 * ending at the last report of the monitor. If the spreader is
+		 * monitored for a shorter time than the window, the processing since
+		 * the start of the monitoring is reported.
+		 * 
+		 * @param window
+		 *            the length of the window
+		 * @return the processing done in the window, 0 if the spreader is no
+		 *         longer monitored
+		 */
+		public double getProcessing(final Window window) {
+			return row < 0 ? 0 : processingSince(row, reports - window.seconds);
+		}
+	}
+
+	/**
+	 * The number of reports (i.e., seconds) kept in the per second buffer
+	 */
+	private static final int secondSlots = 61;
+	/**
+	 * The number of reports (i.e., minutes) kept in the per minute buffer
+	 */
+	private static final int minuteSlots = 61;
+	/**
+	 * The number of reports (i.e., hours) kept in the per hour buffer
+	 */
+	private static final int hourSlots = 25;
+
+	/**
+	 * the amount of ticks it takes for a single second to pass in the simulated
+	 * time
+	 */
+	private final long aSecond;
+	/**
+	 * The number of reports collected so far
+	 */
+	private long reports = 0;
+	/**
+	 * The number of monitored spreaders
+	 */
+	private int rows = 0;
+	/**
+	 * The handles of the monitored spreaders, indexed by row
+	 */
+	private Handle[] handles = new Handle[0];
+	/**
+	 * The report number at which the spreader in the row was added to the
+	 * monitor
+	 */
+	private long[] addedAt = new long[0];
+	/**
+	 * The total processed value of the spreader in the row when it was added
+	 * to the monitor
+	 */
+	private double[] firstTotals = new double[0];
+	/**
+	 * The total processed value of the spreader in the row at the last report
+	 */
+	private double[] lastTotals = new double[0];
+	/**
+	 * The total processed values of the spreaders at the last secondSlots
+	 * reports. The values of a spreader are stored in a continuous range
+	 * starting at row*secondSlots.
+	 */
+	private double[] perSecond = new double[0];
+	/**
+	 * The total processed values of the spreaders at the last minuteSlots
+	 * minute boundaries (organized like perSecond)
+	 */
+	private double[] perMinute = new double[0];
+	/**
+	 * The total processed values of the spreaders at the last hourSlots hour
+	 * boundaries (organized like perSecond)
+	 */
+	private double[] perHour = new double[0];
+
+	/**
+	 * Initiates a monitor that collects its reports in every second.
+	 * 
+	 * @param aSecond
+	 *            the amount of ticks it takes to get to one second in the
+	 *            current configuration of the simulation, if this should be
+	 *            below 1 then the monitor should not be used
+	 */
+	public WindowedConsumptionMonitor(final long aSecond) {
+		this.aSecond = aSecond;
+		subscribe(aSecond);
+	}
+
+	/**
+	 * Starts monitoring a spreader. Its processing is reported from the
+	 * current time instance on.
+	 * 
+	 * @param rs
+	 *            the spreader to monitor
+	 * @return the handle to query the processing reports of the spreader
+	 */
+	public Handle monitor(final ResourceSpreader rs) {
+		if (rows == handles.length) {
+			final int newRows = Math.max(4, rows * 2);
+			handles = Arrays.copyOf(handles, newRows);
+			addedAt = Arrays.copyOf(addedAt, newRows);
+			firstTotals = Arrays.copyOf(firstTotals, newRows);
+			lastTotals = Arrays.copyOf(lastTotals, newRows);
+			perSecond = Arrays.copyOf(perSecond, newRows * secondSlots);
+			perMinute = Arrays.copyOf(perMinute, newRows * minuteSlots);
+			perHour = Arrays.copyOf(perHour, newRows * hourSlots);
+		}
+		final Handle handle = new Handle(rs, rows);
+		handles[rows] = handle;
+		addedAt[rows] = reports;
+		firstTotals[rows] = lastTotals[rows] = rs.getTotalProcessed();
+		rows++;
+		return handle;
+	}
+
+	/**
+	 * Stops monitoring a spreader. The row of the last spreader is moved to
+	 * the place of the removed one.
+	 * 
+	 * @param handle
+	 *            the handle of the spreader received from monitor
+	 */
+	public void stopMonitoring(final Handle handle) {
+		final int row = handle.row;
+		if (row < 0) {
+			return;
+		}
+		rows--;
+		if (row != rows) {
+			handles[row] = handles[rows];
+			handles[row].row = row;
+			addedAt[row] = addedAt[rows];
+			firstTotals[row] = firstTotals[rows];
+			lastTotals[row] = lastTotals[rows];
+			System.arraycopy(perSecond, rows * secondSlots, perSecond, row * secondSlots, secondSlots);
+			System.arraycopy(perMinute, rows * minuteSlots, perMinute, row * minuteSlots, minuteSlots);
+			System.arraycopy(perHour, rows * hourSlots, perHour, row * hourSlots, hourSlots);
+		}
+		handles[rows] = null;
+		handle.row = -1;
+	}
+
+	/**
+	 * Determines the number of monitored spreaders
+	 * 
+	 * @return the number of spreaders
+	 */
+	public int getMonitoredCount() {
+		return rows;
+	}
+
+	/**
+	 * Determines the processing done by a spreader since a particular report.
+	 * Reports before the spreader was added are substituted with its total
+	 * processed value at the time of the addition. Reports older than the
+	 * per second buffer are substituted with the report at the last minute or
+	 * hour boundary before them.
+	 * 
+	 * @param row
+	 *            the row of the spreader
+	 * @param report
+	 *            the number of the report the processing is measured from
+	 * @return the processing done since the report until the last report
+	 */
+	private double processingSince(final int row, final long report) {
+		double from;
+		if (report <= addedAt[row]) {
+			from = firstTotals[row];
+		} else if (reports - report < secondSlots) {
+			from = perSecond[row * secondSlots + (int) (report % secondSlots)];
+		} else {
+			final long minute = report / 60;
+			if (reports / 60 - minute < minuteSlots) {
+				from = minute * 60 <= addedAt[row] ? firstTotals[row]
+						: perMinute[row * minuteSlots + (int) (minute % minuteSlots)];
+			} else {
+				final long hour = report / 3600;
+				from = hour * 3600 <= addedAt[row] ? firstTotals[row]
+						: perHour[row * hourSlots + (int) (hour % hourSlots)];
+			}
+		}
+		return lastTotals[row] - from;
+	}
+
+	/**
+	 * Collects a new report for all monitored spreaders
+	 */
+	@Override
+	public void tick(final long fires) {
+		reports++;
+		final int second = (int) (reports % secondSlots);
+		final boolean minuteBoundary = reports % 60 == 0;
+		final boolean hourBoundary = reports % 3600 == 0;
+		final int minute = (int) (reports / 60 % minuteSlots);
+		final int hour = (int) (reports / 3600 % hourSlots);
+		for (int row = 0; row < rows; row++) {
+			final double total = handles[row].monitored.getTotalProcessed();
+			lastTotals[row] = total;
+			perSecond[row * secondSlots + second] = total;
+			if (minuteBoundary) {
+				perMinute[row * minuteSlots + minute] = total;
+				if (hourBoundary) {
+					perHour[row * hourSlots + hour] = total;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines the length of a second in the simulation as used by this
+	 * monitor
+	 * 
+	 * @return the number of ticks in a second
+	 */
+	public long getSecondLength() {
+		return aSecond;
+	}
+
+	/**
+	 * allows the monitoring to be terminated at any arbitrary point of time.
+	 * The processing reports are not going to be updated anymore, and they are
+	 * going to be always valid for the time instance of the last report.
+	 */
+	public void cancelMonitoring() {
+		unsubscribe();
+	}
+}
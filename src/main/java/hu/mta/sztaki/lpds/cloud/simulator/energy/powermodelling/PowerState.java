@@ -26,8 +26,8 @@ package hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling;
 
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Serializable;
+import java.util.LinkedHashSet;
 import java.util.function.Supplier;
 
 /**
@@ -37,7 +37,7 @@ import java.util.function.Supplier;
  *         MTA SZTAKI (c) 2014"
  *
  */
-public class PowerState {
+public class PowerState implements Serializable {
 	/**
 	 * By sub-classing this class one can define arbitrary consumption models.
 	 * 
@@ -45,7 +45,7 @@ public class PowerState {
 	 *         MTA SZTAKI (c) 2014"
 	 *
 	 */
-	public static abstract class ConsumptionModel {
+	public static abstract class ConsumptionModel implements Serializable, Cloneable {
 		/**
 		 * backlink to the power state with useful data to determine the consumption
 		 * model
@@ -64,6 +64,22 @@ public class PowerState {
 			return myPowerState;
 		}
 
+		/**
+		 * Creates a copy of this model to be used by another power state
+		 * 
+		 * @return the copy of the model (without its backlink)
+		 */
+		private ConsumptionModel replicate() {
+			try {
+				final ConsumptionModel copy = (ConsumptionModel) clone();
+				copy.myPowerState = null;
+				return copy;
+			} catch (CloneNotSupportedException e) {
+				// Should not happen as all models are cloneable
+				throw new IllegalStateException(e);
+			}
+		}
+
 		/**
 		 * calculates the instantaneous power draw of a resource spreader under a
 		 * particular load.
@@ -84,7 +100,7 @@ public class PowerState {
 	 *         MTA SZTAKI (c) 2014"
 	 *
 	 */
-	public interface PowerCharacteristicsChange {
+	public interface PowerCharacteristicsChange extends Serializable {
 		/**
 		 * this function is called when there is a powerstate characteristic change on
 		 * the powerstate onMe.
@@ -115,9 +131,12 @@ public class PowerState {
 	 */
 	private final ConsumptionModel model;
 	/**
-	 * the list of those objects who are prepared to handle power state changes
+	 * the set of those objects who are prepared to handle power state changes.
+	 * Power states shared amongst many spreaders have many listeners, so they
+	 * are kept in a set to allow constant time unsubscriptions, while the
+	 * notifications still follow the order of the subscriptions.
 	 */
-	private final List<PowerCharacteristicsChange> listeners = new ArrayList<>();
+	private final LinkedHashSet<PowerCharacteristicsChange> listeners = new LinkedHashSet<>();
 
 	/**
 	 * Allow the creation of a new power state object with initial power state
@@ -143,6 +162,19 @@ public class PowerState {
 		model.setMyPowerState(this);
 	}
 
+	/**
+	 * Creates a private copy of this power state. The copy has the same power
+	 * characteristics and consumption model, but it has no listeners and its
+	 * characteristics can be changed independently from this power state. Useful
+	 * when a power state is shared amongst several resource spreaders (e.g., by
+	 * a physical machine template) but one of them needs an altered behavior.
+	 * 
+	 * @return the new power state
+	 */
+	public PowerState copy() {
+		return new PowerState(minConsumption, consumptionRange, model::replicate);
+	}
+
 	/**
 	 * determines the current power draw of the system given that it has the load
 	 * specified in the parameter
@@ -215,7 +247,8 @@ public class PowerState {
 
 	/**
 	 * allows users of this powerstate object to get notifications about power state
-	 * characteristics changes
+	 * characteristics changes. A listener is notified only once even if it
+	 * subscribed several times.
 	 * 
 	 * @param listener the object where the events should be sent
 	 */
@@ -0,0 +1,197 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A consumption model that evaluates the power draw with a piecewise linear
+ * lookup table sampled from another consumption model. Useful for expensive
+ * (e.g., measurement curve based) consumption models: their evaluation is done
+ * only once per sample, afterwards every load evaluation costs a table lookup
+ * and an interpolation.
+ * 
+ * Tabulated models are created with the suppliers offered by the compile
+ * functions. All power states created with the same supplier share the tables
+ * of identical power characteristics (i.e., minimum consumption and range).
+ * Tables of linear (and constant) consumption models are reduced to their two
+ * endpoints, thus their interpolation is exact. Other models are approximated
+ * between their samples (e.g., the no idle model reports its idle consumption
+ * between 0 and the first sample).
+ * 
+ * The sources of the sampled models are serializable so the power states using
+ * tabulated models remain part of simulation snapshots.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class TabulatedConsumptionModel extends PowerState.ConsumptionModel {
+	/**
+	 * The number of intervals the load range is divided to by default
+	 */
+	public static final int defaultSamples = 100;
+
+	/**
+	 * The supplier of the models to be sampled. It is serializable so the
+	 * restored tabulated models can still sample new tables. Lambdas and
+	 * method references (e.g., LinearConsumptionModel::new) passed to the
+	 * compile functions are automatically serializable.
+	 */
+	public interface Source extends Supplier<PowerState.ConsumptionModel>, Serializable {
+	}
+
+	/**
+	 * The power characteristics a table was sampled for
+	 */
+	private record Characteristics(double minConsumption, double consumptionRange) implements Serializable {
+	}
+
+	/**
+	 * The shared table store of all tabulated models created with a single
+	 * supplier.
+	 */
+	private static class Tables implements Supplier<TabulatedConsumptionModel>, Serializable {
+		/**
+		 * the supplier of the model to sample
+		 */
+		private final Source source;
+		/**
+		 * the number of intervals the load range is divided to
+		 */
+		private final int samples;
+		/**
+		 * the already sampled tables. A compiled supplier might be used by
+		 * simulations running in parallel, thus the tables are sampled under
+		 * the control of a concurrent map.
+		 */
+		private final ConcurrentHashMap<Characteristics, double[]> tables = new ConcurrentHashMap<>();
+
+		private Tables(final Source source, final int samples) {
+			this.source = source;
+			this.samples = samples;
+		}
+
+		@Override
+		public TabulatedConsumptionModel get() {
+			return new TabulatedConsumptionModel(this);
+		}
+
+		/**
+		 * Looks up or samples the table of particular power characteristics
+		 * 
+		 * @param minConsumption
+		 *            the minimum consumption of the power state to be tabulated
+		 * @param consumptionRange
+		 *            the consumption range of the power state to be tabulated
+		 * @return the table with the power draw values at equidistant loads
+		 *         between 0 and 1
+		 */
+		private double[] getTable(final double minConsumption, final double consumptionRange) {
+			return tables.computeIfAbsent(new Characteristics(minConsumption, consumptionRange), c -> {
+				final PowerState sampled = new PowerState(minConsumption, consumptionRange, source);
+				final double[] table = new double[samples + 1];
+				for (int i = 0; i <= samples; i++) {
+					table[i] = sampled.getCurrentPower((double) i / samples);
+				}
+				final double tolerance = 1e-12 * Math.max(Math.abs(table[0]), Math.abs(table[samples]));
+				for (int i = 1; i < samples; i++) {
+					final double linear = table[0] + (table[samples] - table[0]) * i / samples;
+					if (Math.abs(table[i] - linear) > tolerance) {
+						return table;
+					}
+				}
+				return new double[] { table[0], table[samples] };
+			});
+		}
+	}
+
+	/**
+	 * where the tables for this model are coming from
+	 */
+	private final Tables tables;
+	/**
+	 * the characteristics the current table was sampled for
+	 */
+	private double tableMin = Double.NaN, tableRange = Double.NaN;
+	/**
+	 * the power draw values at equidistant loads between 0 and 1
+	 */
+	private double[] table;
+
+	private TabulatedConsumptionModel(final Tables tables) {
+		this.tables = tables;
+	}
+
+	/**
+	 * Offers tabulated models sampled from another consumption model at the
+	 * default resolution
+	 * 
+	 * @param source
+	 *            the supplier of the model to be sampled
+	 * @return the supplier to be used when constructing power states
+	 */
+	public static Supplier<TabulatedConsumptionModel> compile(
+			final Source source) {
+		return compile(source, defaultSamples);
+	}
+
+	/**
+	 * Offers tabulated models sampled from another consumption model
+	 * 
+	 * @param source
+	 *            the supplier of the model to be sampled
+	 * @param samples
+	 *            the number of intervals the load range should be divided to
+	 * @return the supplier to be used when constructing power states
+	 */
+	public static Supplier<TabulatedConsumptionModel> compile(
+			final Source source, final int samples) {
+		if (samples < 1) {
+			throw new IllegalArgumentException("At least a single interval is needed: " + samples);
+		}
+		return new Tables(source, samples);
+	}
+
+	/**
+	 * Interpolates the power draw from the table belonging to the current
+	 * characteristics of the power state. The table is looked up again only
+	 * if the characteristics have changed since the last evaluation.
+	 */
+	@Override
+	protected double evaluateConsumption(final double load) {
+		final PowerState ps = getMyPowerState();
+		if (ps.getMinConsumption() != tableMin || ps.getConsumptionRange() != tableRange) {
+			tableMin = ps.getMinConsumption();
+			tableRange = ps.getConsumptionRange();
+			table = tables.getTable(tableMin, tableRange);
+		}
+		final int intervals = table.length - 1;
+		final double pos = load * intervals;
+		final int i = Math.max(0, Math.min(intervals - 1, (int) pos));
+		return table[i] + (pos - i) * (table[i + 1] - table[i]);
+	}
+}
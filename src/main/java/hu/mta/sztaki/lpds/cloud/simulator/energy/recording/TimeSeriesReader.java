@@ -0,0 +1,270 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy.recording;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Allows the analysis of the time series files written by TimeSeriesWriter.
+ * The blocks of the file are memory mapped, thus the series do not need to
+ * fit into the heap. The samples are accessed by their index, the values of
+ * a sample are read in constant time. Timestamps are delta encoded, so the
+ * timestamps of a block are decoded when one of them is first needed.
+ * 
+ * <i>Note:</i> the reader is not thread safe.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class TimeSeriesReader implements Closeable {
+	/**
+	 * The file read
+	 */
+	private final FileChannel channel;
+	/**
+	 * The names of the value columns
+	 */
+	private final List<String> columnNames;
+	/**
+	 * The number of samples in a block
+	 */
+	private final int blockSize;
+	/**
+	 * The size of a block in bytes
+	 */
+	private final long blockBytes;
+	/**
+	 * The number of blocks mapped by a single segment. Mapped segments are
+	 * limited to 2GB, so larger files are mapped with several segments, each
+	 * holding complete blocks.
+	 */
+	private final int blocksPerSegment;
+	/**
+	 * The mapped segments of the file
+	 */
+	private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+	/**
+	 * The total number of samples in the file
+	 */
+	private final long sampleCount;
+	/**
+	 * The index of the block with its timestamps decoded into
+	 * decodedTimestamps, -1 if none
+	 */
+	private long decodedBlock = -1;
+	/**
+	 * The decoded timestamps of decodedBlock
+	 */
+	private final long[] decodedTimestamps;
+
+	/**
+	 * Opens a time series file for reading
+	 * 
+	 * @param file
+	 *            the file written by a TimeSeriesWriter
+	 * @throws IOException
+	 *             if the file cannot be read or it is not a time series file
+	 */
+	public TimeSeriesReader(final Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			final CountingInput counter = new CountingInput(Channels.newInputStream(channel));
+			final DataInputStream header = new DataInputStream(counter);
+			if (header.readInt() != TimeSeriesWriter.magic) {
+				throw new IOException("Not a time series file: " + file);
+			}
+			final short version = header.readShort();
+			if (version != TimeSeriesWriter.version) {
+				throw new IOException("Unsupported time series version: " + version);
+			}
+			blockSize = header.readInt();
+			final int columns = header.readInt();
+			final ArrayList<String> names = new ArrayList<>(columns);
+			for (int i = 0; i < columns; i++) {
+				names.add(header.readUTF());
+			}
+			columnNames = Collections.unmodifiableList(names);
+			blockBytes = TimeSeriesWriter.blockBytes(blockSize, columns);
+			blocksPerSegment = (int) Math.max(1, Integer.MAX_VALUE / blockBytes);
+			final long dataStart = counter.read;
+			final long blockCount = (channel.size() - dataStart) / blockBytes;
+			for (long b = 0; b < blockCount; b += blocksPerSegment) {
+				segments.add(channel.map(FileChannel.MapMode.READ_ONLY, dataStart + b * blockBytes,
+						Math.min(blocksPerSegment, blockCount - b) * blockBytes));
+			}
+			sampleCount = blockCount == 0 ? 0
+					: (blockCount - 1) * blockSize + segment(blockCount - 1).getInt(offset(blockCount - 1));
+			decodedTimestamps = new long[blockSize];
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Counts the bytes read from the header of the file so the start of the
+	 * blocks can be determined.
+	 */
+	private static class CountingInput extends InputStream {
+		/**
+		 * where the bytes come from
+		 */
+		private final InputStream in;
+		/**
+		 * the number of bytes read so far
+		 */
+		private long read = 0;
+
+		private CountingInput(final InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = in.read();
+			if (b >= 0) {
+				read++;
+			}
+			return b;
+		}
+	}
+
+	/**
+	 * Determines the segment holding a particular block
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the mapped segment
+	 */
+	private MappedByteBuffer segment(final long block) {
+		return segments.get((int) (block / blocksPerSegment));
+	}
+
+	/**
+	 * Determines the position of a block in its segment
+	 * 
+	 * @param block
+	 *            the index of the block
+	 * @return the position of the first byte of the block
+	 */
+	private int offset(final long block) {
+		return (int) ((block % blocksPerSegment) * blockBytes);
+	}
+
+	/**
+	 * Checks if there is a sample with a particular index
+	 * 
+	 * @param sample
+	 *            the index to check
+	 */
+	private void checkIndex(final long sample) {
+		if (sample < 0 || sample >= sampleCount) {
+			throw new IndexOutOfBoundsException("Sample " + sample + " of " + sampleCount);
+		}
+	}
+
+	/**
+	 * Allows determining what the values of the samples are about
+	 * 
+	 * @return the names of the value columns
+	 */
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * Determines the number of samples recorded
+	 * 
+	 * @return the number of samples in the file
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Reads the timestamp of a sample
+	 * 
+	 * @param sample
+	 *            the index of the sample
+	 * @return the timestamp of the sample
+	 */
+	public long getTimestamp(final long sample) {
+		checkIndex(sample);
+		final long block = sample / blockSize;
+		if (block != decodedBlock) {
+			final MappedByteBuffer segment = segment(block);
+			final int start = offset(block);
+			final int count = segment.getInt(start);
+			long timestamp = segment.getLong(start + Integer.BYTES);
+			final int deltas = start + Integer.BYTES + Long.BYTES;
+			for (int i = 0; i < count; i++) {
+				timestamp += segment.getInt(deltas + i * Integer.BYTES);
+				decodedTimestamps[i] = timestamp;
+			}
+			decodedBlock = block;
+		}
+		return decodedTimestamps[(int) (sample % blockSize)];
+	}
+
+	/**
+	 * Reads a value of a sample
+	 * 
+	 * @param column
+	 *            the index of the value column (see getColumnNames)
+	 * @param sample
+	 *            the index of the sample
+	 * @return the value in the particular column of the sample
+	 */
+	public double getValue(final int column, final long sample) {
+		checkIndex(sample);
+		if (column < 0 || column >= columnNames.size()) {
+			throw new IndexOutOfBoundsException("Column " + column + " of " + columnNames.size());
+		}
+		final long block = sample / blockSize;
+		final long position = Integer.BYTES + Long.BYTES + (long) blockSize * Integer.BYTES
+				+ ((long) column * blockSize + sample % blockSize) * Double.BYTES;
+		return segment(block).getDouble((int) (offset(block) + position));
+	}
+
+	/**
+	 * Releases the file. The mapped segments are released by the garbage
+	 * collector.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy.recording;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.EnergyMeter;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.MonitorConsumption;
+
+/**
+ * Periodically samples a set of sources (e.g., energy meters or consumption
+ * monitors) and streams the samples to a time series file (see
+ * TimeSeriesWriter). Unlike collecting the history of the sources on the heap,
+ * the memory used by the recorder does not grow with the length of the
+ * simulation.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class TimeSeriesRecorder extends Timed {
+	/**
+	 * Provides the current value of a recorded quantity
+	 */
+	public interface Source extends Serializable {
+		/**
+		 * Called every time the recorder collects a sample
+		 * 
+		 * @return the current value of the quantity
+		 */
+		double sample();
+	}
+
+	/**
+	 * The names of the recorded sources
+	 */
+	private final ArrayList<String> names = new ArrayList<>();
+	/**
+	 * The recorded sources, in the order of the columns in the file
+	 */
+	private final ArrayList<Source> sources = new ArrayList<>();
+	/**
+	 * The values of the sample under collection
+	 */
+	private double[] sample;
+	/**
+	 * The writer of the current recording session, null if there is no
+	 * session underway. Not captured by simulation snapshots, the forks of a
+	 * simulation do not continue the recording of the original.
+	 */
+	private transient TimeSeriesWriter writer;
+	/**
+	 * The time of the last sample
+	 */
+	private long lastRecorded;
+
+	/**
+	 * Adds a new source to the recorder, it will be recorded in a new column.
+	 * 
+	 * @param name
+	 *            the name of the column
+	 * @param source
+	 *            the quantity to record
+	 */
+	public void addSource(final String name, final Source source) {
+		if (writer != null) {
+			throw new IllegalStateException("Cannot add sources during a recording session");
+		}
+		names.add(name);
+		sources.add(source);
+	}
+
+	/**
+	 * Records the total consumption reported by an energy meter
+	 * 
+	 * @param name
+	 *            the name of the column
+	 * @param meter
+	 *            the meter to read
+	 */
+	public void addMeter(final String name, final EnergyMeter meter) {
+		addSource(name, meter::getTotalConsumption);
+	}
+
+	/**
+	 * Records the processing done in the last second as reported by a
+	 * consumption monitor
+	 * 
+	 * @param name
+	 *            the name of the column
+	 * @param monitor
+	 *            the monitor to read
+	 */
+	public void addMonitor(final String name, final MonitorConsumption monitor) {
+		addSource(name, monitor::getSubSecondProcessing);
+	}
+
+	/**
+	 * Starts a recording session, the first sample is collected right away.
+	 * 
+	 * @param file
+	 *            the file to stream the samples to
+	 * @param interval
+	 *            the time between two samples
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public void startRecording(final Path file, final long interval) throws IOException {
+		startRecording(new TimeSeriesWriter(file, names), interval);
+	}
+
+	/**
+	 * Starts a recording session with a custom writer (e.g., with different
+	 * block size), the first sample is collected right away.
+	 * 
+	 * @param to
+	 *            the writer to stream the samples to, its columns should be
+	 *            the sources of this recorder
+	 * @param interval
+	 *            the time between two samples
+	 * @throws IOException
+	 *             if the first sample cannot be written
+	 */
+	public void startRecording(final TimeSeriesWriter to, final long interval) throws IOException {
+		if (writer != null) {
+			throw new IllegalStateException("There is a recording session underway already");
+		}
+		writer = to;
+		sample = new double[sources.size()];
+		collect(getFireCount());
+		subscribe(interval);
+	}
+
+	/**
+	 * Terminates the recording session, collects a last sample if the time has
+	 * passed since the previous one and closes the file.
+	 * 
+	 * @throws IOException
+	 *             if some of the samples could not be written
+	 */
+	public void stopRecording() throws IOException {
+		if (writer != null) {
+			unsubscribe();
+			try {
+				final long now = getFireCount();
+				if (now != getLastRecorded()) {
+					collect(now);
+				}
+			} finally {
+				writer.close();
+				writer = null;
+			}
+		}
+	}
+
+	/**
+	 * Shows if there is a recording session underway
+	 * 
+	 * @return <i>true</i> if the recorder collects samples
+	 */
+	public boolean isRecording() {
+		return writer != null;
+	}
+
+	/**
+	 * Determines when the last sample was collected
+	 * 
+	 * @return the timestamp of the last sample
+	 */
+	public long getLastRecorded() {
+		return lastRecorded;
+	}
+
+	/**
+	 * Collects a sample from all sources and hands it to the writer
+	 * 
+	 * @param when
+	 *            the timestamp of the sample
+	 * @throws IOException
+	 *             if an earlier sample could not be written
+	 */
+	private void collect(final long when) throws IOException {
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = sources.get(i).sample();
+		}
+		writer.append(when, sample);
+		lastRecorded = when;
+	}
+
+	/**
+	 * Collects a sample in every recording interval. A recorder restored from a
+	 * simulation snapshot has no writer, it stops at its first tick.
+	 */
+	@Override
+	public void tick(final long fires) {
+		if (writer == null) {
+			unsubscribe();
+			return;
+		}
+		try {
+			collect(fires);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not record the time series", e);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy.recording;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams time series samples (a timestamp and a value for each column) into a
+ * compact binary file. The samples are collected in fixed size blocks, every
+ * block stores its timestamps delta encoded followed by the values of each
+ * column one after the other. Completed blocks are written to the file
+ * asynchronously from a bounded set of buffers, thus the memory used by the
+ * writer does not depend on the length of the recorded series. If all buffers
+ * are under writing, appending waits until one of them is written out.
+ * 
+ * The file layout is the following (all numbers are big endian):
+ * <ul>
+ * <li>header: magic number, format version, block size (in samples), column
+ * count, column names (in modified UTF-8)
+ * <li>blocks: sample count in the block, timestamp of the first sample, the
+ * timestamp difference of each sample to its predecessor (0 for the first),
+ * then the values of the first column, the second column and so on. Every
+ * block has the same size, the unused part of the last one is padded with
+ * zeros.
+ * </ul>
+ * Files written by this class can be read with TimeSeriesReader.
+ * 
+ * <i>Note:</i> the writer is not thread safe, samples are expected to be
+ * appended from the thread of the simulation.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class TimeSeriesWriter implements Closeable {
+	/**
+	 * Identifies the time series files
+	 */
+	static final int magic = 0x44434654;
+	/**
+	 * The version of the file layout written by this class
+	 */
+	static final short version = 1;
+	/**
+	 * The default number of samples in a block
+	 */
+	public static final int defaultBlockSize = 4096;
+	/**
+	 * The default number of block buffers the writer can fill before it has to
+	 * wait for the file system
+	 */
+	public static final int defaultBufferCount = 4;
+
+	/**
+	 * The channel the blocks are written to
+	 */
+	private final FileChannel channel;
+	/**
+	 * The number of samples in a block
+	 */
+	private final int blockSize;
+	/**
+	 * The number of value columns in each sample
+	 */
+	private final int columns;
+	/**
+	 * The buffers that are free to encode new blocks into
+	 */
+	private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+	/**
+	 * Writes the encoded blocks to the channel in the order they were completed
+	 */
+	private final ExecutorService flusher;
+	/**
+	 * The timestamps of the samples in the block under collection
+	 */
+	private final long[] timestamps;
+	/**
+	 * The values of the samples in the block under collection, indexed by
+	 * column first
+	 */
+	private final double[][] values;
+	/**
+	 * The number of samples in the block under collection
+	 */
+	private int collected = 0;
+	/**
+	 * The timestamp of the last appended sample
+	 */
+	private long lastTimestamp = Long.MIN_VALUE;
+	/**
+	 * Shows if any sample was appended already (i.e., lastTimestamp is set)
+	 */
+	private boolean appended = false;
+	/**
+	 * The first failure of the asynchronous writes, reported on the next
+	 * append or on closing the writer
+	 */
+	private volatile IOException failure = null;
+	/**
+	 * Shows if the writer was closed already
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Creates a new time series file with the default block size and buffer
+	 * count. An existing file is overwritten.
+	 * 
+	 * @param file
+	 *            the file to write the samples to
+	 * @param columnNames
+	 *            the names of the value columns of the samples
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public TimeSeriesWriter(final Path file, final List<String> columnNames) throws IOException {
+		this(file, columnNames, defaultBlockSize, defaultBufferCount);
+	}
+
+	/**
+	 * Creates a new time series file. An existing file is overwritten.
+	 * 
+	 * @param file
+	 *            the file to write the samples to
+	 * @param columnNames
+	 *            the names of the value columns of the samples
+	 * @param blockSize
+	 *            the number of samples in a block
+	 * @param bufferCount
+	 *            the number of blocks that can be under writing at the same
+	 *            time, this bounds the memory used by the writer
+	 * @throws IOException
+	 *             if the file cannot be created
+	 */
+	public TimeSeriesWriter(final Path file, final List<String> columnNames, final int blockSize,
+			final int bufferCount) throws IOException {
+		if (blockSize < 1 || bufferCount < 1) {
+			throw new IllegalArgumentException("Block size and buffer count must be positive");
+		}
+		this.blockSize = blockSize;
+		columns = columnNames.size();
+		timestamps = new long[blockSize];
+		values = new double[columns][blockSize];
+		final int blockBytes = (int) blockBytes(blockSize, columns);
+		freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+		for (int i = 0; i < bufferCount; i++) {
+			freeBuffers.add(ByteBuffer.allocateDirect(blockBytes));
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		final DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(magic);
+		headerData.writeShort(version);
+		headerData.writeInt(blockSize);
+		headerData.writeInt(columns);
+		for (final String name : columnNames) {
+			headerData.writeUTF(name);
+		}
+		headerData.flush();
+		writeFully(ByteBuffer.wrap(header.toByteArray()));
+		flusher = Executors.newSingleThreadExecutor(r -> {
+			final Thread t = new Thread(r, "DISSECT-CF time series writer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Determines the size of a block in the file
+	 * 
+	 * @param blockSize
+	 *            the number of samples in the block
+	 * @param columns
+	 *            the number of value columns in a sample
+	 * @return the size in bytes
+	 */
+	static long blockBytes(final int blockSize, final int columns) {
+		return Integer.BYTES + Long.BYTES + (long) blockSize * (Integer.BYTES + (long) columns * Double.BYTES);
+	}
+
+	/**
+	 * Adds a new sample to the time series.
+	 * 
+	 * @param timestamp
+	 *            the time of the sample, it should not be earlier than the
+	 *            timestamp of the previous sample and should not be more than
+	 *            Integer.MAX_VALUE later than that
+	 * @param sample
+	 *            the values of the sample, one for each column
+	 * @throws IOException
+	 *             if a previous block could not be written to the file
+	 */
+	public void append(final long timestamp, final double[] sample) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Cannot append to a closed time series");
+		}
+		if (sample.length != columns) {
+			throw new IllegalArgumentException("Expected " + columns + " values, got " + sample.length);
+		}
+		if (appended && timestamp < lastTimestamp) {
+			throw new IllegalArgumentException("Timestamp " + timestamp + " is earlier than " + lastTimestamp);
+		}
+		// The first sample of a block is stored with its full timestamp
+		if (collected != 0 && timestamp - lastTimestamp > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(
+					"Timestamp " + timestamp + " cannot be delta encoded after " + lastTimestamp);
+		}
+		timestamps[collected] = timestamp;
+		for (int c = 0; c < columns; c++) {
+			values[c][collected] = sample[c];
+		}
+		lastTimestamp = timestamp;
+		appended = true;
+		if (++collected == blockSize) {
+			flushBlock();
+		}
+	}
+
+	/**
+	 * Encodes the collected samples into a free buffer and hands it over to the
+	 * flusher thread. Waits if there are no free buffers.
+	 * 
+	 * @throws IOException
+	 *             if a previous block could not be written to the file
+	 */
+	private void flushBlock() throws IOException {
+		checkFailure();
+		final ByteBuffer buffer;
+		try {
+			buffer = freeBuffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a free block buffer", e);
+		}
+		if (collected < blockSize) {
+			// Only the last block is partial, its padding has to be cleared
+			// from the earlier contents of the reused buffer
+			for (int i = 0; i < buffer.limit(); i++) {
+				buffer.put(i, (byte) 0);
+			}
+		}
+		buffer.putInt(collected);
+		buffer.putLong(timestamps[0]);
+		buffer.putInt(0);
+		for (int i = 1; i < collected; i++) {
+			buffer.putInt((int) (timestamps[i] - timestamps[i - 1]));
+		}
+		buffer.position(buffer.position() + (blockSize - collected) * Integer.BYTES);
+		for (int c = 0; c < columns; c++) {
+			final double[] column = values[c];
+			for (int i = 0; i < collected; i++) {
+				buffer.putDouble(column[i]);
+			}
+			buffer.position(buffer.position() + (blockSize - collected) * Double.BYTES);
+		}
+		buffer.rewind();
+		collected = 0;
+		flusher.execute(() -> {
+			try {
+				writeFully(buffer);
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			} finally {
+				buffer.clear();
+				freeBuffers.add(buffer);
+			}
+		});
+	}
+
+	/**
+	 * Writes the complete content of the buffer to the channel
+	 * 
+	 * @param buffer
+	 *            the data to be written
+	 * @throws IOException
+	 *             if the write fails
+	 */
+	private void writeFully(final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Reports the failure of an earlier asynchronous write
+	 * 
+	 * @throws IOException
+	 *             the failure of the write
+	 */
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Could not write a time series block", failure);
+		}
+	}
+
+	/**
+	 * Writes out the partially collected last block, waits until all blocks are
+	 * written and closes the file.
+	 * 
+	 * @throws IOException
+	 *             if some blocks could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (collected != 0) {
+				flushBlock();
+			}
+		} finally {
+			closed = true;
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			channel.close();
+		}
+		checkFailure();
+	}
+}
@@ -0,0 +1,450 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.energy.specialized;
+
+import hu.mta.sztaki.lpds.cloud.simulator.energy.EnergyMeter;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ResourceConstraints;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.PowerBehaviorChangeListener;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Allows a complete IaaS system to be monitored energywise like the
+ * IaaSEnergyMeter does, but without a separate meter (and thus a separate
+ * timed event) for every resource spreader of every physical machine. Instead,
+ * the readings of all spreaders are kept in primitive arrays (one column entry
+ * per spreader) and they are all advanced by the single timed subscription of
+ * this meter.
+ * 
+ * The readings are collected the same way as DirectEnergyMeter does, except
+ * when a spreader switches its power state: the reading collected at the switch
+ * is accounted with the power state the spreader was in until the switch. Thus
+ * the reported totals are independent from the metering interval (as long as
+ * the power states of the spreaders are linear in terms of their load) and
+ * they match the ones of event driven direct meters (see
+ * DirectEnergyMeter.startEventDrivenMeter).
+ * 
+ * The readings of the individual physical machines are available through their
+ * views (see getView). Unlike with the IaaSEnergyMeter, the energy consumed by
+ * a physical machine is kept in the total of the meter even after the machine
+ * is removed from the IaaS.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class ColumnarIaaSEnergyMeter extends EnergyMeter implements VMManager.CapacityChangeEvent<PhysicalMachine>,
+		PowerBehaviorChangeListener, PowerState.PowerCharacteristicsChange {
+
+	/**
+	 * Allows the readings of a single physical machine to be queried. The view
+	 * remains valid as long as its machine is part of the observed IaaS.
+	 */
+	public final class PMView {
+		/**
+		 * The physical machine shown by this view
+		 */
+		private final PhysicalMachine observed;
+		/**
+		 * The row of the machine in the columns of the meter
+		 */
+		private int row;
+
+		private PMView(final PhysicalMachine pm, final int row) {
+			observed = pm;
+			this.row = row;
+		}
+
+		/**
+		 * allows determining which PM is shown by the view
+		 * 
+		 * @return the metered pm
+		 */
+		public PhysicalMachine getObserved() {
+			return observed;
+		}
+
+		/**
+		 * Reads the consumption of the machine's resource spreaders (e.g., CPU,
+		 * network) collected so far.
+		 * 
+		 * @return the total consumption of the machine, 0 if it is no longer
+		 *         metered
+		 */
+		public double getTotalConsumption() {
+			return row < 0 ? 0 : consumptions[row];
+		}
+	}
+
+	/**
+	 * The number of resource spreaders metered for each physical machine (the
+	 * same spreaders as a PhysicalMachineEnergyMeter would meter).
+	 */
+	private static final int spreadersPerPM = 5;
+
+	/**
+	 * The IaaSService to be observed with this meter
+	 */
+	private final IaaSService observed;
+	/**
+	 * The number of physical machines currently metered
+	 */
+	private int rows = 0;
+	/**
+	 * The views of the metered machines, indexed by row
+	 */
+	private PMView[] views = new PMView[0];
+	/**
+	 * The total consumption of the metered machines, indexed by row
+	 */
+	private double[] consumptions = new double[0];
+	/**
+	 * The metered spreaders, a machine's spreaders are in the columns
+	 * row*spreadersPerPM to (row+1)*spreadersPerPM-1
+	 */
+	private ResourceSpreader[] spreaders = new ResourceSpreader[0];
+	/**
+	 * The power states the metered spreaders are in
+	 */
+	private PowerState[] usedPowerStates = new PowerState[0];
+	/**
+	 * The last collected totalProcessed values of the metered spreaders
+	 */
+	private double[] previousProcessingReports = new double[0];
+	/**
+	 * The time instances of the last readings of the metered spreaders
+	 */
+	private long[] lastReadings = new long[0];
+	/**
+	 * Allows finding the machine of a spreader that changed its power behavior
+	 */
+	private final HashMap<ResourceSpreader, PMView> viewOfSpreader = new HashMap<>();
+	/**
+	 * The power states the meter receives characteristics change
+	 * notifications from and the number of spreaders using them. Shared power
+	 * states are subscribed to only once.
+	 */
+	private final IdentityHashMap<PowerState, Integer> observedStates = new IdentityHashMap<>();
+
+	/**
+	 * Allows the construction of a new columnar metering object for all the
+	 * machines of an IaaS
+	 * 
+	 * @param iaas
+	 *            the IaaS to be monitored energywise
+	 */
+	public ColumnarIaaSEnergyMeter(final IaaSService iaas) {
+		observed = iaas;
+		final List<PhysicalMachine> machines = iaas.machines;
+		for (int i = 0; i < machines.size(); i++) {
+			addMachine(machines.get(i));
+		}
+		observed.subscribeToCapacityChanges(this);
+	}
+
+	/**
+	 * Appends a new row for the machine to the columns of the meter. If there
+	 * is a metering session underway, the new row's readings start now.
+	 * 
+	 * @param pm
+	 *            the machine to be metered
+	 */
+	private void addMachine(final PhysicalMachine pm) {
+		if (rows == views.length) {
+			final int newRows = Math.max(16, rows * 2);
+			views = Arrays.copyOf(views, newRows);
+			consumptions = Arrays.copyOf(consumptions, newRows);
+			final int newColumns = newRows * spreadersPerPM;
+			spreaders = Arrays.copyOf(spreaders, newColumns);
+			usedPowerStates = Arrays.copyOf(usedPowerStates, newColumns);
+			previousProcessingReports = Arrays.copyOf(previousProcessingReports, newColumns);
+			lastReadings = Arrays.copyOf(lastReadings, newColumns);
+		}
+		final PMView view = new PMView(pm, rows);
+		views[rows] = view;
+		consumptions[rows] = 0;
+		final int first = rows * spreadersPerPM;
+		spreaders[first] = pm;
+		spreaders[first + 1] = pm.localDisk.diskinbws;
+		spreaders[first + 2] = pm.localDisk.diskoutbws;
+		spreaders[first + 3] = pm.localDisk.inbws;
+		spreaders[first + 4] = pm.localDisk.outbws;
+		for (int c = first; c < first + spreadersPerPM; c++) {
+			viewOfSpreader.put(spreaders[c], view);
+			if (isMetering()) {
+				startReadings(c);
+			}
+		}
+		rows++;
+	}
+
+	/**
+	 * Removes the row of the machine from the columns of the meter by moving
+	 * the last row in its place. The consumption of the machine remains part
+	 * of the total consumption of the meter.
+	 * 
+	 * @param view
+	 *            the view of the machine to be removed
+	 */
+	private void removeMachine(final PMView view) {
+		final int row = view.row;
+		final int first = row * spreadersPerPM;
+		for (int c = first; c < first + spreadersPerPM; c++) {
+			if (isMetering()) {
+				meterUntil(c, getFireCount());
+				stopReadings(c);
+			}
+			viewOfSpreader.remove(spreaders[c]);
+		}
+		rows--;
+		final int last = rows * spreadersPerPM;
+		if (row != rows) {
+			views[row] = views[rows];
+			views[row].row = row;
+			consumptions[row] = consumptions[rows];
+			System.arraycopy(spreaders, last, spreaders, first, spreadersPerPM);
+			System.arraycopy(usedPowerStates, last, usedPowerStates, first, spreadersPerPM);
+			System.arraycopy(previousProcessingReports, last, previousProcessingReports, first, spreadersPerPM);
+			System.arraycopy(lastReadings, last, lastReadings, first, spreadersPerPM);
+		}
+		views[rows] = null;
+		Arrays.fill(spreaders, last, last + spreadersPerPM, null);
+		Arrays.fill(usedPowerStates, last, last + spreadersPerPM, null);
+		view.row = -1;
+	}
+
+	/**
+	 * Collects the first reading of a spreader in a metering session and
+	 * subscribes to its power behavior related events.
+	 * 
+	 * @param c
+	 *            the column of the spreader
+	 */
+	private void startReadings(final int c) {
+		final ResourceSpreader rs = spreaders[c];
+		previousProcessingReports[c] = rs.getTotalProcessed();
+		lastReadings[c] = getFireCount();
+		usedPowerStates[c] = rs.getCurrentPowerBehavior();
+		observeState(usedPowerStates[c]);
+		rs.subscribePowerBehaviorChangeEvents(this);
+	}
+
+	/**
+	 * Cancels the power behavior related subscriptions of a spreader.
+	 * 
+	 * @param c
+	 *            the column of the spreader
+	 */
+	private void stopReadings(final int c) {
+		forgetState(usedPowerStates[c]);
+		spreaders[c].unsubscribePowerBehaviorChangeEvents(this);
+	}
+
+	/**
+	 * Ensures the meter receives the characteristics changes of a power state
+	 * used by one more spreader.
+	 * 
+	 * @param ps
+	 *            the power state used
+	 */
+	private void observeState(final PowerState ps) {
+		final Integer users = observedStates.get(ps);
+		if (users == null) {
+			ps.subscribePowerCharacteristicsChanges(this);
+			observedStates.put(ps, 1);
+		} else {
+			observedStates.put(ps, users + 1);
+		}
+	}
+
+	/**
+	 * Cancels the characteristics change notifications of a power state once
+	 * no metered spreader uses it.
+	 * 
+	 * @param ps
+	 *            the power state no longer used by a spreader
+	 */
+	private void forgetState(final PowerState ps) {
+		final int users = observedStates.get(ps);
+		if (users == 1) {
+			ps.unsubscribePowerCharacteristicsChanges(this);
+			observedStates.remove(ps);
+		} else {
+			observedStates.put(ps, users - 1);
+		}
+	}
+
+	/**
+	 * Collects a new reading of a spreader and accounts the energy consumed
+	 * since its last reading the same way as DirectEnergyMeter does.
+	 * 
+	 * @param c
+	 *            the column of the spreader
+	 * @param when
+	 *            the time instance of the reading
+	 */
+	private void meterUntil(final int c, final long when) {
+		final long period = when - lastReadings[c];
+		if (period != 0) {
+			final ResourceSpreader rs = spreaders[c];
+			final double currentProcessingReport = rs.getTotalProcessed();
+			final double consumed = usedPowerStates[c].getCurrentPower(
+					(currentProcessingReport - previousProcessingReports[c]) / (period * rs.getPerTickProcessingPower()))
+					* period;
+			consumptions[c / spreadersPerPM] += consumed;
+			increaseTotalConsumption(consumed);
+			previousProcessingReports[c] = currentProcessingReport;
+			lastReadings[c] = when;
+		}
+	}
+
+	/**
+	 * starts the metering session for all machines of the IaaS
+	 */
+	@Override
+	public boolean startMeter(final long interval, final boolean dropPriorReading) {
+		final boolean startResult = super.startMeter(interval, dropPriorReading);
+		if (startResult) {
+			if (dropPriorReading) {
+				Arrays.fill(consumptions, 0);
+			}
+			for (int c = 0; c < rows * spreadersPerPM; c++) {
+				startReadings(c);
+			}
+		}
+		return startResult;
+	}
+
+	/**
+	 * stops the metering session for all machines of the IaaS
+	 */
+	@Override
+	public void stopMeter() {
+		if (isMetering()) {
+			super.stopMeter();
+			for (int c = 0; c < rows * spreadersPerPM; c++) {
+				stopReadings(c);
+			}
+		}
+	}
+
+	/**
+	 * Collects the readings of all metered spreaders with a single event
+	 */
+	@Override
+	public void tick(final long fires) {
+		for (int c = 0; c < rows * spreadersPerPM; c++) {
+			meterUntil(c, fires);
+		}
+		lastMetered = fires;
+	}
+
+	/**
+	 * a spreader switching its power state gets a new reading that is still
+	 * accounted with its previous power state
+	 */
+	@Override
+	public void behaviorChanged(final ResourceSpreader onSpreader, final PowerState newState) {
+		final PMView view = viewOfSpreader.get(onSpreader);
+		if (isMetering() && view != null) {
+			int c = view.row * spreadersPerPM;
+			while (spreaders[c] != onSpreader) {
+				c++;
+			}
+			meterUntil(c, getFireCount());
+			forgetState(usedPowerStates[c]);
+			usedPowerStates[c] = newState;
+			observeState(newState);
+		}
+	}
+
+	/**
+	 * collects the readings of the spreaders using the power state before its
+	 * characteristics change
+	 */
+	@Override
+	public void prePowerChangeEvent(final PowerState onMe) {
+		final long now = getFireCount();
+		for (int c = 0; c < rows * spreadersPerPM; c++) {
+			if (usedPowerStates[c] == onMe) {
+				meterUntil(c, now);
+			}
+		}
+	}
+
+	/**
+	 * manages the changes in size of the infrastructure (e.g. PM additions or
+	 * removals) by adding or removing the rows of the affected machines
+	 */
+	@Override
+	public void capacityChanged(final ResourceConstraints newCapacity, final List<PhysicalMachine> affectedCapacity) {
+		for (int i = 0; i < affectedCapacity.size(); i++) {
+			final PhysicalMachine pm = affectedCapacity.get(i);
+			final PMView view = viewOfSpreader.get(pm);
+			if (view == null) {
+				addMachine(pm);
+			} else {
+				removeMachine(view);
+			}
+		}
+	}
+
+	/**
+	 * Allows querying the readings of a particular machine
+	 * 
+	 * @param pm
+	 *            the machine in question
+	 * @return the view of the machine or <i>null</i> if the machine is not
+	 *         metered by this meter
+	 */
+	public PMView getView(final PhysicalMachine pm) {
+		return viewOfSpreader.get(pm);
+	}
+
+	/**
+	 * Determines the number of machines metered
+	 * 
+	 * @return the number of machines
+	 */
+	public int getMeteredMachineCount() {
+		return rows;
+	}
+
+	/**
+	 * Allows determining what is
+	 * 
+	 * @return the observed IaaS system
+	 */
+	public IaaSService getObserved() {
+		return observed;
+	}
+}
@@ -26,6 +26,7 @@
 package hu.mta.sztaki.lpds.cloud.simulator.iaas;
 
 import java.io.Serial;
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -56,7 +57,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.util.ArrayHandler;
  *         of Innsbruck (c) 2013"
  * 
  */
-public class IaaSService implements VMManager<IaaSService, PhysicalMachine>, PhysicalMachine.StateChangeListener {
+public class IaaSService implements VMManager<IaaSService, PhysicalMachine>, PhysicalMachine.StateChangeListener, Serializable {
 
 	/**
 	 * This class represents a generic error that occurred during the operation of
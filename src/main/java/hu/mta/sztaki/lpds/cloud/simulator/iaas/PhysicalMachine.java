@@ -27,6 +27,7 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.iaas;
 
+import java.io.Serializable;
 import java.util.*;
 
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.*;
@@ -140,7 +141,7 @@ public class PhysicalMachine extends MaxMinProvider implements VMManager<Physica
 	 *         MTA SZTAKI (c) 2012"
 	 *
 	 */
-	public interface StateChangeListener {
+	public interface StateChangeListener extends Serializable {
 		/**
 		 * This function is called by the PM on subscribed objects when a PM's state
 		 * changes. To simplify the implementation of the receiver objects, this state
@@ -727,18 +728,13 @@ public class PhysicalMachine extends MaxMinProvider implements VMManager<Physica
 	}
 
 	/**
-	 * Makes a copy of the given array to the correct target (on/offTransition), and
-	 * calculates the estimates for the on/offDelay
+	 * Calculates the estimates for the on/offDelay
 	 * 
-	 * @param on
-	 *            which taskset needs to be prepared
 	 * @param array
 	 *            the task array - for format see powerstatedelayer
 	 * @return the estimated runtime of all tasks in the array
 	 */
-	private long prepareTransitionalTasks(boolean on, double[] array) {
-		final double[] writeHere = on ? onTransition : offTransition;
-		System.arraycopy(array, 0, writeHere, 0, array.length);
+	static long estimateTransitionalTasks(final double[] array) {
 		long odSum = 0;
 		for (int i = 0; i < array.length; i += 2) {
 			odSum += (long) (array[i] / array[i + 1]);
@@ -778,6 +774,44 @@ public class PhysicalMachine extends MaxMinProvider implements VMManager<Physica
 
 	public PhysicalMachine(double cores, double perCoreProcessing, long memory, Repository disk,
 			double[] turnonOperations, double[] switchoffOperations, Map<String, PowerState> cpuPowerTransitions) {
+		this(cores, perCoreProcessing, memory, disk, turnonOperations.clone(), switchoffOperations.clone(),
+				estimateTransitionalTasks(turnonOperations), estimateTransitionalTasks(switchoffOperations),
+				cpuPowerTransitions);
+	}
+
+	/**
+	 * Defines a new physical machine without copying its transitional task
+	 * arrays. Allows machine templates to share a single copy of the arrays
+	 * amongst all of their machines.
+	 * 
+	 * @param cores
+	 *            defines the number of CPU cores this machine has under control
+	 * @param perCoreProcessing
+	 *            defines the processing capabilities of a single CPU core in this
+	 *            machine (in instructions/tick)
+	 * @param memory
+	 *            defines the total physical memory this machine has under control
+	 *            (in bytes)
+	 * @param disk
+	 *            defines the local physical disk &amp; networking this machine has
+	 *            under control
+	 * @param turnonOperations
+	 *            the tasks to execute before the PM can be turned on, the array
+	 *            is not modified by the PM
+	 * @param switchoffOperations
+	 *            the tasks to execute before the PM can be switched off, the
+	 *            array is not modified by the PM
+	 * @param onEstimate
+	 *            the estimated runtime of the turnon operations
+	 * @param offEstimate
+	 *            the estimated runtime of the switchoff operations
+	 * @param cpuPowerTransitions
+	 *            determines the applied power state transitions while the physical
+	 *            machine state changes.
+	 */
+	PhysicalMachine(double cores, double perCoreProcessing, long memory, Repository disk, double[] turnonOperations,
+			double[] switchoffOperations, long onEstimate, long offEstimate,
+			Map<String, PowerState> cpuPowerTransitions) {
 		super(cores * perCoreProcessing);
 		if (cpuPowerTransitions == null) {
 			throw new IllegalStateException("Cannot initialize physical machine without a complete power behavior set");
@@ -792,10 +826,10 @@ public class PhysicalMachine extends MaxMinProvider implements VMManager<Physica
 		localDisk = disk;
 
 		hostPowerBehavior = Collections.unmodifiableMap(cpuPowerTransitions);
-		onTransition = new double[turnonOperations.length];
-		onDelayEstimate = prepareTransitionalTasks(true, turnonOperations);
-		offTransition = new double[switchoffOperations.length];
-		offDelayEstimate = prepareTransitionalTasks(false, switchoffOperations);
+		onTransition = turnonOperations;
+		onDelayEstimate = onEstimate;
+		offTransition = switchoffOperations;
+		offDelayEstimate = offEstimate;
 
 		try {
 			setState(State.OFF);
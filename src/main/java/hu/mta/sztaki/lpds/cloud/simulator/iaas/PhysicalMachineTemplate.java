@@ -0,0 +1,238 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
+import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
+import hu.mta.sztaki.lpds.cloud.simulator.util.PowerTransitionGenerator.PowerStateKind;
+
+/**
+ * Describes a homogeneous group of physical machines. The template keeps a
+ * single copy of the machines' power behavior and transitional task lists and
+ * shares them amongst all machines created from it. Thus large infrastructures
+ * of identical machines do not need to duplicate these data.
+ * 
+ * <i>WARNING:</i> the power states of the template are shared, changing their
+ * characteristics (e.g., for DVFS) affects all machines of the template. If a
+ * machine needs independently alterable power states, it should be created with
+ * the private variant of the create functions.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class PhysicalMachineTemplate {
+	/**
+	 * the number of CPU cores of the machines
+	 */
+	public final double cores;
+	/**
+	 * the processing capabilities of a single CPU core (in instructions/tick)
+	 */
+	public final double perCoreProcessing;
+	/**
+	 * the physical memory of the machines (in bytes)
+	 */
+	public final long memory;
+	/**
+	 * the shared tasks to do when turning a machine on. The format of the array
+	 * is documented in the powerstatedelayer class.
+	 */
+	private final double[] onTransition;
+	/**
+	 * the shared tasks to do when switching a machine off.
+	 */
+	private final double[] offTransition;
+	/**
+	 * around how many ticks a machine is estimated to run the tasks in the
+	 * onTransition array.
+	 */
+	private final long onDelayEstimate;
+	/**
+	 * around how many ticks a machine is estimated to run the tasks in the
+	 * offTransition array.
+	 */
+	private final long offDelayEstimate;
+	/**
+	 * the shared, read only power state mappings of the machines
+	 */
+	private final EnumMap<PowerStateKind, Map<String, PowerState>> powerBehavior = new EnumMap<>(
+			PowerStateKind.class);
+
+	/**
+	 * Defines a template for machines with simple boot and shutdown processes.
+	 * 
+	 * @param cores
+	 *            the number of CPU cores of the machines
+	 * @param perCoreProcessing
+	 *            the processing capabilities of a single CPU core (in
+	 *            instructions/tick)
+	 * @param memory
+	 *            the physical memory of the machines (in bytes)
+	 * @param onD
+	 *            the time delay between a machine's switch on and the first time
+	 *            it can serve VM requests
+	 * @param offD
+	 *            the time delay a machine needs to shut down
+	 * @param powerTransitions
+	 *            the power state mappings for the host, storage and network
+	 *            behavior of the machines (e.g., as generated by
+	 *            PowerTransitionGenerator)
+	 */
+	public PhysicalMachineTemplate(final double cores, final double perCoreProcessing, final long memory,
+			final int onD, final int offD, final Map<PowerStateKind, Map<String, PowerState>> powerTransitions) {
+		this(cores, perCoreProcessing, memory,
+				new double[] { onD * perCoreProcessing * PhysicalMachine.smallUtilization,
+						perCoreProcessing * PhysicalMachine.smallUtilization },
+				new double[] { offD * perCoreProcessing * PhysicalMachine.smallUtilization,
+						perCoreProcessing * PhysicalMachine.smallUtilization },
+				powerTransitions);
+	}
+
+	/**
+	 * Defines a template for machines with arbitrary boot and shutdown
+	 * processes.
+	 * 
+	 * @param cores
+	 *            the number of CPU cores of the machines
+	 * @param perCoreProcessing
+	 *            the processing capabilities of a single CPU core (in
+	 *            instructions/tick)
+	 * @param memory
+	 *            the physical memory of the machines (in bytes)
+	 * @param turnonOperations
+	 *            the tasks to execute before a machine can be turned on. For the
+	 *            complete definition of this array have a look at the
+	 *            powerstatedelayer class.
+	 * @param switchoffOperations
+	 *            the tasks to execute before a machine can be switched off.
+	 * @param powerTransitions
+	 *            the power state mappings for the host, storage and network
+	 *            behavior of the machines
+	 */
+	public PhysicalMachineTemplate(final double cores, final double perCoreProcessing, final long memory,
+			final double[] turnonOperations, final double[] switchoffOperations,
+			final Map<PowerStateKind, Map<String, PowerState>> powerTransitions) {
+		for (PowerStateKind kind : PowerStateKind.values()) {
+			final Map<String, PowerState> states = powerTransitions.get(kind);
+			if (states == null) {
+				throw new IllegalArgumentException("No power behavior is specified for " + kind);
+			}
+			powerBehavior.put(kind, Collections.unmodifiableMap(new HashMap<>(states)));
+		}
+		this.cores = cores;
+		this.perCoreProcessing = perCoreProcessing;
+		this.memory = memory;
+		onTransition = turnonOperations.clone();
+		offTransition = switchoffOperations.clone();
+		onDelayEstimate = PhysicalMachine.estimateTransitionalTasks(onTransition);
+		offDelayEstimate = PhysicalMachine.estimateTransitionalTasks(offTransition);
+	}
+
+	/**
+	 * Allows read access to the shared power state mappings of the template
+	 * 
+	 * @param kind
+	 *            the kind of the power behavior needed
+	 * @return the read only power state mapping
+	 */
+	public Map<String, PowerState> getPowerBehavior(final PowerStateKind kind) {
+		return powerBehavior.get(kind);
+	}
+
+	/**
+	 * Creates private copies of the power states of a particular kind. The
+	 * states shared amongst several state names in the template are shared in
+	 * the copy as well.
+	 * 
+	 * @param kind
+	 *            the kind of the power behavior needed
+	 * @return the new, modifiable power state mapping
+	 */
+	public Map<String, PowerState> copyPowerBehavior(final PowerStateKind kind) {
+		final Map<PowerState, PowerState> copies = new HashMap<>();
+		final Map<String, PowerState> copy = new HashMap<>();
+		powerBehavior.get(kind).forEach((name, ps) -> copy.put(name, copies.computeIfAbsent(ps, PowerState::copy)));
+		return copy;
+	}
+
+	/**
+	 * Creates a new repository that shares the storage and network power
+	 * behavior of the template. Useful as the local disk of the machines of
+	 * the template.
+	 * 
+	 * @param id
+	 *            the name of the repository
+	 * @param capacity
+	 *            the storage capacity of the repository
+	 * @param maxInBW
+	 *            the input network bandwidth of the repository
+	 * @param maxOutBW
+	 *            the output network bandwidth of the repository
+	 * @param diskBW
+	 *            the disk bandwidth of the repository
+	 * @param latencyMap
+	 *            the latencies of the repository towards other network nodes
+	 * @return the new repository
+	 */
+	public Repository createRepository(final String id, final long capacity, final long maxInBW,
+			final long maxOutBW, final long diskBW, final Map<String, Integer> latencyMap) {
+		return new Repository(capacity, id, maxInBW, maxOutBW, diskBW, latencyMap,
+				powerBehavior.get(PowerStateKind.storage), powerBehavior.get(PowerStateKind.network));
+	}
+
+	/**
+	 * Creates a new machine that shares the host power behavior and the
+	 * transitional tasks of the template.
+	 * 
+	 * @param disk
+	 *            the local disk &amp; networking of the machine (e.g., created
+	 *            with createRepository)
+	 * @return the new machine
+	 */
+	public PhysicalMachine createMachine(final Repository disk) {
+		return new PhysicalMachine(cores, perCoreProcessing, memory, disk, onTransition, offTransition,
+				onDelayEstimate, offDelayEstimate, powerBehavior.get(PowerStateKind.host));
+	}
+
+	/**
+	 * Creates a new machine that shares the transitional tasks of the template
+	 * but has a private copy of the host power behavior. The power states of
+	 * such machine can be altered independently from the other machines of the
+	 * template.
+	 * 
+	 * @param disk
+	 *            the local disk &amp; networking of the machine
+	 * @return the new machine
+	 */
+	public PhysicalMachine createPrivateMachine(final Repository disk) {
+		return new PhysicalMachine(cores, perCoreProcessing, memory, disk, onTransition, offTransition,
+				onDelayEstimate, offDelayEstimate, copyPowerBehavior(PowerStateKind.host));
+	}
+}
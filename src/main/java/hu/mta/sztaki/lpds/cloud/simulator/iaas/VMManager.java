@@ -31,6 +31,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
 import hu.mta.sztaki.lpds.cloud.simulator.io.VirtualAppliance;
 
 import java.io.Serial;
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -103,7 +104,7 @@ public interface VMManager<E, F> {
 	 * @param <F>
 	 *            the kind of capacity that changes
 	 */
-	interface CapacityChangeEvent<F> {
+	interface CapacityChangeEvent<F> extends Serializable {
 		/**
 		 * This function is called by the object that has changed its capacities
 		 * 
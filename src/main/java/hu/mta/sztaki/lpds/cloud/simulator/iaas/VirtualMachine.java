@@ -28,7 +28,9 @@
 package hu.mta.sztaki.lpds.cloud.simulator.iaas;
 
 import java.io.Serial;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 
@@ -37,6 +39,7 @@ import org.apache.commons.lang3.tuple.Triple;
 import hu.mta.sztaki.lpds.cloud.simulator.DeferredEvent;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager.VMManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.CoalescedConsumption;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ConsumptionEventAdapter;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinConsumer;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption;
@@ -130,7 +133,7 @@ public class VirtualMachine extends MaxMinConsumer {
 	 *         of Innsbruck (c) 2013"
 	 * 
 	 */
-	public interface StateChange {
+	public interface StateChange extends Serializable {
 		/**
 		 * If the state of a VM is changed this function is called on all subscribing
 		 * implementations.
@@ -149,7 +152,7 @@ public class VirtualMachine extends MaxMinConsumer {
 	 *         of Innsbruck (c) 2013"
 	 * 
 	 */
-	private static class EventSetup {
+	private static class EventSetup implements Serializable {
 
 		/**
 		 * the state that the VM needs to be after the eventsetup completes
@@ -1134,12 +1137,87 @@ public class VirtualMachine extends MaxMinConsumer {
 		}
 		ResourceConsumption cons = new ResourceConsumption(total, limit, VirtualMachine.this, ra.getHost(), e);
 		if (cons.registerConsumption()) {
-			final long bgnwload = va.getBgNetworkLoad();
-			if (bgnwload > 0) {
-				final long minBW = Math.min(bgnwload,
-						Math.min(ra.getHost().localDisk.getOutputbw(), vasource.getInputbw()));
-				NetworkNode.initTransfer(minBW * cons.getCompletionDistance(), minBW, ra.getHost().localDisk, vasource,
-						computeTaskHelper);
+			startBackgroundLoad(cons);
+			return cons;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates several computing tasks on the VM at once. The tasks are
+	 * registered in bulk (see ResourceConsumption.registerAll), thus starting
+	 * many tasks at the same time instance does not involve repeated influence
+	 * group management. Otherwise, the tasks behave the same way as the ones
+	 * created by newComputeTask.
+	 * 
+	 * @param totals the amount of processing to be done by each task (in number
+	 *               of instructions)
+	 * @param limit  the amount of processing each task is allowed to do in a
+	 *               single tick (in instructions/tick)
+	 * @param events the objects to be notified about the completion of the
+	 *               tasks, the i-th event belongs to the i-th task
+	 * @return the resource consumption objects representing the tasks, in the
+	 *         order of their totals. The items for the tasks that could not be
+	 *         registered are null. The whole array is null if there is no
+	 *         resource for the VM.
+	 * @throws NetworkException         if the background network load is not
+	 *                                  possible to simulate.
+	 * @throws IllegalArgumentException if the number of events does not match
+	 *                                  the number of tasks
+	 */
+	public ResourceConsumption[] newComputeTasks(final double[] totals, final double limit,
+			final ResourceConsumption.ConsumptionEvent[] events) throws NetworkException {
+		if (totals.length != events.length) {
+			throw new IllegalArgumentException("Every compute task needs its own event");
+		}
+		if (ra == null) {
+			return null;
+		}
+		final ResourceConsumption[] tasks = new ResourceConsumption[totals.length];
+		for (int i = 0; i < totals.length; i++) {
+			tasks[i] = new ResourceConsumption(totals[i], limit, VirtualMachine.this, ra.getHost(), events[i]);
+		}
+		final boolean[] registered = ResourceConsumption.registerAll(Arrays.asList(tasks));
+		for (int i = 0; i < tasks.length; i++) {
+			if (registered[i]) {
+				startBackgroundLoad(tasks[i]);
+			} else {
+				tasks[i] = null;
+			}
+		}
+		return tasks;
+	}
+
+	/**
+	 * Creates several identical computing tasks on the VM that are represented
+	 * by a single consumption (see CoalescedConsumption). This significantly
+	 * reduces the costs of simulating bag of tasks like workloads, while the
+	 * tasks receive the same share of the VM as if they were created one by one
+	 * with newComputeTask.
+	 * 
+	 * @param total  the amount of processing to be done by each task (in
+	 *               number of instructions)
+	 * @param limit  the amount of processing each task is allowed to do in a
+	 *               single tick (in instructions/tick)
+	 * @param events the objects to be notified about the completion of the
+	 *               tasks, one for each task
+	 * @return the consumption representing all the tasks. Could return null if
+	 *         the consumption cannot be registered or when there is no resource
+	 *         for the VM
+	 * @throws NetworkException if the background network load is not possible to
+	 *                          simulate.
+	 */
+	public CoalescedConsumption newCoalescedComputeTask(final double total, final double limit,
+			final ResourceConsumption.ConsumptionEvent[] events) throws NetworkException {
+		if (ra == null) {
+			return null;
+		}
+		final CoalescedConsumption cons = new CoalescedConsumption(total, limit, VirtualMachine.this, ra.getHost(),
+				events);
+		if (cons.registerConsumption()) {
+			for (int i = 0; i < events.length; i++) {
+				startBackgroundLoad(cons);
 			}
 			return cons;
 		} else {
@@ -1147,6 +1225,24 @@ public class VirtualMachine extends MaxMinConsumer {
 		}
 	}
 
+	/**
+	 * Simulates the background network load of the VA during the processing of
+	 * a just started computing task.
+	 * 
+	 * @param cons the consumption representing the computing task
+	 * @throws NetworkException if the background network load is not possible to
+	 *                          simulate.
+	 */
+	private void startBackgroundLoad(final ResourceConsumption cons) throws NetworkException {
+		final long bgnwload = va.getBgNetworkLoad();
+		if (bgnwload > 0) {
+			final long minBW = Math.min(bgnwload,
+					Math.min(ra.getHost().localDisk.getOutputbw(), vasource.getInputbw()));
+			NetworkNode.initTransfer(minBW * cons.getCompletionDistance(), minBW, ra.getHost().localDisk, vasource,
+					computeTaskHelper);
+		}
+	}
+
 	public ResourceConsumption newComputeTask(final double total, final double limit,
 			final ResourceConsumption.ConsumptionEvent e, final double dirtyingRate, final long memSize)
 			throws NetworkException {
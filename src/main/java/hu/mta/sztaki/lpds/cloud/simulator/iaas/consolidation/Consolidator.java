@@ -101,7 +101,14 @@ public abstract class Consolidator extends Timed {
 	 */
 	private final HashMap<PhysicalMachine, VMListObserver> observers = new HashMap<>();
 
-	private final Consumer<PhysicalMachine> extendObsevers = pm -> observers.put(pm, new VMListObserver(pm)); // Management of capacity increase
+	/**
+	 * Management of capacity increase: starts observing a new PM
+	 *
+	 * @param pm the newly registered PM
+	 */
+	private void extendObservers(final PhysicalMachine pm) {
+		observers.put(pm, new VMListObserver(pm));
+	}
 
 	/**
 	 * This constructor ensures the proper maintenance of the observer list - i.e.,
@@ -122,7 +129,7 @@ public abstract class Consolidator extends Timed {
 		this.consFreq = consFreq;
 		this.toConsolidate = toConsolidate;
         // Let's see if there are machines to observe already
-        toConsolidate.machines.forEach(extendObsevers);
+        toConsolidate.machines.forEach(this::extendObservers);
         // Let's make sure we observe all machines even if they are added to the
         // system later on
         toConsolidate.subscribeToCapacityChanges(
@@ -130,7 +137,7 @@ public abstract class Consolidator extends Timed {
                     var newRegistration = Consolidator.this.toConsolidate
                             .isRegisteredHost(affectedCapacity.get(0));
                     final Consumer<PhysicalMachine> pmAction =
-                            newRegistration ? extendObsevers :
+                            newRegistration ? this::extendObservers :
                                     pm -> observers.remove(pm).cancelSubscriptions(); // Management of capacity decrease
                     affectedCapacity.forEach(pmAction);
                 });
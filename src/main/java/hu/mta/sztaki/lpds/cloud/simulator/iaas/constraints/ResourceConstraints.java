@@ -25,6 +25,8 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints;
 
+import java.io.Serializable;
+
 /**
  * This class defines the basic properties (cpu core count, per core processing
  * power, and memory size) and operations on resource constraints. These
@@ -39,7 +41,7 @@ package hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints;
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems,
  *         MTA SZTAKI (c) 2012"
  */
-public abstract class ResourceConstraints implements Comparable<ResourceConstraints> {
+public abstract class ResourceConstraints implements Comparable<ResourceConstraints>, Serializable {
 
 	/**
 	 * provides a simple one line representation of resource constraints listing
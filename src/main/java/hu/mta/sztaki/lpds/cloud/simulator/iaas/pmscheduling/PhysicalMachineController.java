@@ -30,6 +30,8 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.Scheduler;
 
+import java.io.Serializable;
+
 /**
  * This class contains the main interface for the schedulers of Physical machine
  * states. Although the interface is rather simplistic, its powers lie in the
@@ -40,7 +42,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.Scheduler;
  *         "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems, MTA SZTAKI (c) 2012"
  * 
  */
-public abstract class PhysicalMachineController {
+public abstract class PhysicalMachineController implements Serializable {
 	/**
 	 * The Infrastructure service that will have the physical machines to be
 	 * controlled and overseen by the particular implementations of this class
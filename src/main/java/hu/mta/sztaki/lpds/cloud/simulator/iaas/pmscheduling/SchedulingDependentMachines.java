@@ -102,12 +102,16 @@ public class SchedulingDependentMachines extends PhysicalMachineController {
 	 */
 	@Override
 	protected Scheduler.QueueingEvent getQueueingEvent() {
-		return () -> {
-			if (currentlyStartingPM == null || PhysicalMachine.State.RUNNING.equals(currentlyStartingPM.getState())) {
-				// If there are no machines under their startup procedure,
-				// or the currently started up machine is already running,
-				// and we still receive the queueingstarted event
-				turnOnAMachine();
+		return new Scheduler.QueueingEvent() {
+			@Override
+			public void queueingStarted() {
+				if (currentlyStartingPM == null
+						|| PhysicalMachine.State.RUNNING.equals(currentlyStartingPM.getState())) {
+					// If there are no machines under their startup procedure,
+					// or the currently started up machine is already running,
+					// and we still receive the queueingstarted event
+					turnOnAMachine();
+				}
 			}
 		};
 	}
@@ -0,0 +1,96 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
+
+/**
+ * This class is part of the unified resource consumption model of DISSECT-CF.
+ * 
+ * Represents several identical resource consumptions (i.e., ones with the same
+ * amount of processing and the same limit between the same consumer and
+ * provider) with a single consumption object. Such consumptions would receive
+ * the same share from the max-min fair scheduler anyway, thus they are
+ * processed together: the spreaders and the freqsyncers only handle a single
+ * entry for the whole group, while the scheduler still accounts with all the
+ * members when sharing the processing power of the spreaders.
+ * 
+ * The processing related values of the object (e.g., getUnProcessed,
+ * getRealLimit) refer to a single member of the group. The members complete
+ * (or get cancelled) together, but each of them receives its own notification.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class CoalescedConsumption extends ResourceConsumption {
+
+	/**
+	 * Forwards the notifications of the group to the events of its members.
+	 */
+	private static class MemberEvents implements ConsumptionEvent {
+		private final ConsumptionEvent[] members;
+
+		MemberEvents(final ConsumptionEvent[] members) {
+			for (final ConsumptionEvent e : members) {
+				if (e == null) {
+					throw new IllegalStateException("Cannot create a consumption without an event to be fired");
+				}
+			}
+			this.members = members.clone();
+		}
+
+		@Override
+		public void conComplete() {
+			for (final ConsumptionEvent e : members) {
+				e.conComplete();
+			}
+		}
+
+		@Override
+		public void conCancelled(final ResourceConsumption problematic) {
+			for (final ConsumptionEvent e : members) {
+				e.conCancelled(problematic);
+			}
+		}
+	}
+
+	/**
+	 * Creates a group of identical consumptions. The size of the group is
+	 * determined by the number of member events.
+	 * 
+	 * @param total    The amount of processing to be done by each member
+	 * @param limit    the maximum amount of processing allowable for each member
+	 *                 in a single tick
+	 * @param consumer the consumer that will benefit from the resource
+	 *                 consumptions
+	 * @param provider the provider which will offer its resources for the
+	 *                 consumer
+	 * @param events   the events to be fired when the members complete their
+	 *                 processing, one for each member. None of them can be null.
+	 */
+	public CoalescedConsumption(final double total, final double limit, final ResourceSpreader consumer,
+			final ResourceSpreader provider, final ConsumptionEvent[] events) {
+		super(total, limit, consumer, provider, new MemberEvents(events), events.length);
+	}
+}
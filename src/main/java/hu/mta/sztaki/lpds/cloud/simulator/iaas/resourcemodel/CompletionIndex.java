@@ -0,0 +1,220 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is part of the unified resource consumption model of DISSECT-CF.
+ * 
+ * Orders the resource consumptions of an influence group by their projected
+ * completion times (i.e., the time instance at which the consumption is
+ * expected to complete with its current real limit). The consumptions are kept
+ * in a binary heap where every consumption remembers its position. Thus the
+ * earliest completion is available in constant time, while the projection of a
+ * consumption can be changed or dropped in logarithmic time (see
+ * HeapEventQueue for the same technique applied on timed objects).
+ * 
+ * The projections are absolute time instances, so they stay valid as long as
+ * the real limit of their consumption remains unchanged. The low level
+ * scheduler is expected to update the projections of those consumptions only
+ * that received a new real limit.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+final class CompletionIndex implements Serializable {
+	/**
+	 * The heap holding all the indexed consumptions in [0,size[
+	 */
+	private ResourceConsumption[] heap = new ResourceConsumption[16];
+	/**
+	 * The number of indexed consumptions
+	 */
+	private int size = 0;
+
+	/**
+	 * Adds a consumption to the index or changes its projected completion time
+	 * if it was already indexed.
+	 * 
+	 * @param con       the consumption to index
+	 * @param projected the time instance at which the consumption is expected
+	 *                  to complete
+	 */
+	void offer(final ResourceConsumption con, final long projected) {
+		final int i = con.completionIndex;
+		if (contains(con)) {
+			final long previous = con.projectedCompletion;
+			con.projectedCompletion = projected;
+			if (projected < previous) {
+				siftUp(i, con);
+			} else {
+				siftDown(i, con);
+			}
+		} else {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+			}
+			con.projectedCompletion = projected;
+			siftUp(size++, con);
+		}
+	}
+
+	/**
+	 * Drops a consumption from the index
+	 * 
+	 * @param con the consumption to drop
+	 * @return <i>true</i> if the consumption was part of this index
+	 */
+	boolean remove(final ResourceConsumption con) {
+		if (!contains(con)) {
+			return false;
+		}
+		final int i = con.completionIndex;
+		final int last = --size;
+		if (last == i) {
+			heap[i] = null;
+		} else {
+			final ResourceConsumption moved = heap[last];
+			heap[last] = null;
+			siftDown(i, moved);
+			if (heap[i] == moved) {
+				siftUp(i, moved);
+			}
+		}
+		con.completionIndex = -1;
+		return true;
+	}
+
+	private boolean contains(final ResourceConsumption con) {
+		final int i = con.completionIndex;
+		return i >= 0 && i < size && heap[i] == con;
+	}
+
+	/**
+	 * Determines the earliest projected completion time in the index
+	 * 
+	 * @return the earliest completion or Long.MAX_VALUE if there are no indexed
+	 *         consumptions
+	 */
+	long earliestCompletion() {
+		return size == 0 ? Long.MAX_VALUE : heap[0].projectedCompletion;
+	}
+
+	/**
+	 * Collects the consumptions that are projected to complete at or before the
+	 * given time instance. The subheaps with a root later than the time instance
+	 * are skipped, so the costs are proportional to the number of due
+	 * consumptions.
+	 * 
+	 * @param time the time instance to compare the projections with
+	 * @param due  the list to which the due consumptions are added
+	 */
+	void collectDue(final long time, final List<ResourceConsumption> due) {
+		collectDue(0, time, due);
+	}
+
+	private void collectDue(final int k, final long time, final List<ResourceConsumption> due) {
+		if (k < size && heap[k].projectedCompletion <= time) {
+			due.add(heap[k]);
+			collectDue(2 * k + 1, time, due);
+			collectDue(2 * k + 2, time, due);
+		}
+	}
+
+	/**
+	 * Unites two indexes by moving the consumptions of the smaller one to the
+	 * larger one.
+	 * 
+	 * @param one   an index to unite
+	 * @param other another index to unite
+	 * @return the index that holds the consumptions of both, the other index is
+	 *         left empty
+	 */
+	static CompletionIndex merge(final CompletionIndex one, final CompletionIndex other) {
+		final CompletionIndex larger = one.size < other.size ? other : one;
+		final CompletionIndex smaller = larger == one ? other : one;
+		for (int i = 0; i < smaller.size; i++) {
+			final ResourceConsumption con = smaller.heap[i];
+			smaller.heap[i] = null;
+			con.completionIndex = -1;
+			larger.offer(con, con.projectedCompletion);
+		}
+		smaller.size = 0;
+		return larger;
+	}
+
+	/**
+	 * Moves an object towards the root of the heap until its parent is not later
+	 * than it.
+	 * 
+	 * @param k   the position to start from
+	 * @param con the consumption to be placed
+	 */
+	private void siftUp(int k, final ResourceConsumption con) {
+		while (k > 0) {
+			final int parent = (k - 1) >>> 1;
+			final ResourceConsumption p = heap[parent];
+			if (con.projectedCompletion >= p.projectedCompletion) {
+				break;
+			}
+			heap[k] = p;
+			p.completionIndex = k;
+			k = parent;
+		}
+		heap[k] = con;
+		con.completionIndex = k;
+	}
+
+	/**
+	 * Moves an object towards the leaves of the heap until its children are not
+	 * earlier than it.
+	 * 
+	 * @param k   the position to start from
+	 * @param con the consumption to be placed
+	 */
+	private void siftDown(int k, final ResourceConsumption con) {
+		final int half = size >>> 1;
+		while (k < half) {
+			int child = 2 * k + 1;
+			ResourceConsumption c = heap[child];
+			final int right = child + 1;
+			if (right < size && c.projectedCompletion > heap[right].projectedCompletion) {
+				c = heap[child = right];
+			}
+			if (con.projectedCompletion <= c.projectedCompletion) {
+				break;
+			}
+			heap[k] = c;
+			c.completionIndex = k;
+			k = child;
+		}
+		heap[k] = con;
+		con.completionIndex = k;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is part of the unified resource consumption model of DISSECT-CF.
+ * 
+ * Packed storage for the frequently changing state of the resource
+ * consumptions of a provider. Instead of keeping the processing state in the
+ * individual consumption objects, the state of all consumptions offered by the
+ * provider is held in parallel primitive arrays. The consumption objects
+ * attached to the store only act as handles (they remember their slot in the
+ * arrays). Thus the processing loop of the provider runs over consecutive
+ * memory areas instead of visiting the consumption objects one by one.
+ * 
+ * Consumptions are attached when their provider starts processing them and
+ * they are detached (receiving their state back) when the provider drops
+ * them. The slots of the store are kept compact: the last slot is moved to the
+ * place of the detached consumption.
+ * 
+ * The processing done here must be kept in line with the processing functions
+ * of ResourceConsumption.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+final class ConsumptionStore implements Serializable {
+	/**
+	 * The consumptions attached to the store, the state of the consumption at
+	 * handles[i] is in the i-th item of the state arrays.
+	 */
+	private ResourceConsumption[] handles = new ResourceConsumption[16];
+	/**
+	 * See ResourceConsumption.underProcessing
+	 */
+	double[] underProcessing = new double[16];
+	/**
+	 * See ResourceConsumption.toBeProcessed
+	 */
+	double[] toBeProcessed = new double[16];
+	/**
+	 * See ResourceConsumption.realLimit
+	 */
+	double[] realLimit = new double[16];
+	/**
+	 * See ResourceConsumption.halfRealLimit
+	 */
+	double[] halfRealLimit = new double[16];
+	/**
+	 * See ResourceConsumption.completionDistance
+	 */
+	long[] completionDistance = new long[16];
+	/**
+	 * See ResourceConsumption.multiplicity
+	 */
+	private int[] multiplicity = new int[16];
+	/**
+	 * The number of consumptions attached to the store
+	 */
+	private int size = 0;
+	/**
+	 * A reusable list for collecting the consumptions completed during a single
+	 * bulk processing step, so the processing does not allocate a new list.
+	 */
+	final ArrayList<ResourceConsumption> completed = new ArrayList<>();
+
+	/**
+	 * Moves the state of a consumption into the store
+	 * 
+	 * @param con the consumption to attach
+	 */
+	void attach(final ResourceConsumption con) {
+		if (size == handles.length) {
+			final int newLength = size * 2;
+			handles = Arrays.copyOf(handles, newLength);
+			underProcessing = Arrays.copyOf(underProcessing, newLength);
+			toBeProcessed = Arrays.copyOf(toBeProcessed, newLength);
+			realLimit = Arrays.copyOf(realLimit, newLength);
+			halfRealLimit = Arrays.copyOf(halfRealLimit, newLength);
+			completionDistance = Arrays.copyOf(completionDistance, newLength);
+			multiplicity = Arrays.copyOf(multiplicity, newLength);
+		}
+		handles[size] = con;
+		multiplicity[size] = con.multiplicity;
+		con.pack(this, size++);
+	}
+
+	/**
+	 * Gives back the state of a consumption and releases its slot.
+	 * 
+	 * @param con the consumption to detach, it must be attached to this store
+	 */
+	void detach(final ResourceConsumption con) {
+		final int slot = con.slot;
+		con.unpack();
+		final int last = --size;
+		if (slot != last) {
+			final ResourceConsumption moved = handles[last];
+			handles[slot] = moved;
+			underProcessing[slot] = underProcessing[last];
+			toBeProcessed[slot] = toBeProcessed[last];
+			realLimit[slot] = realLimit[last];
+			halfRealLimit[slot] = halfRealLimit[last];
+			completionDistance[slot] = completionDistance[last];
+			multiplicity[slot] = multiplicity[last];
+			moved.slot = slot;
+		}
+		handles[last] = null;
+	}
+
+	/**
+	 * Offers the resources for all attached consumptions (see
+	 * doProviderProcessing).
+	 * 
+	 * @param ticksPassed the number of ticks to be simulated
+	 * @param completed   the list to which the consumptions that received all
+	 *                    their resources are added
+	 * @return the amount of resources offered to the attached consumptions
+	 *         (including all members of coalesced consumptions)
+	 */
+	double doProviderProcessing(final long ticksPassed, final List<ResourceConsumption> completed) {
+		double total = 0;
+		for (int i = 0; i < size; i++) {
+			final double processed = doProviderProcessing(i, ticksPassed);
+			total += Math.abs(processed) * multiplicity[i];
+			if (processed < 0) {
+				completed.add(handles[i]);
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * The packed equivalent of ResourceConsumption.doProviderProcessing
+	 */
+	double doProviderProcessing(final int slot, final long ticksPassed) {
+		double processed = 0;
+		final double remaining = toBeProcessed[slot];
+		if (remaining > 0) {
+			processed = Math.min(ticksPassed * realLimit[slot], remaining);
+			final double left = remaining - processed;
+			underProcessing[slot] += processed;
+			if (left < halfRealLimit[slot]) {
+				// ensure that tobeprocessed is 0!
+				processed += left;
+				underProcessing[slot] += left;
+				toBeProcessed[slot] = 0;
+				return -processed;
+			}
+			toBeProcessed[slot] = left;
+		}
+		return processed;
+	}
+
+	/**
+	 * The packed equivalent of ResourceConsumption.doConsumerProcessing
+	 */
+	double doConsumerProcessing(final int slot, final long ticksPassed) {
+		double processed = 0;
+		final double offered = underProcessing[slot];
+		if (offered > 0) {
+			processed = Math.min(ticksPassed * realLimit[slot], offered);
+			underProcessing[slot] = offered - processed;
+			calcCompletionDistance(slot);
+			if (completionDistance[slot] == 0) {
+				// ensure that tobeprocessed is 0!
+				processed += underProcessing[slot];
+				underProcessing[slot] = 0;
+				return -processed;
+			}
+		}
+		return processed;
+	}
+
+	/**
+	 * The packed equivalent of ResourceConsumption.calcCompletionDistance
+	 */
+	void calcCompletionDistance(final int slot) {
+		completionDistance[slot] = Math.round((underProcessing[slot] + toBeProcessed[slot]) / realLimit[slot]);
+	}
+}
@@ -25,13 +25,12 @@
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
-import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
-import java.util.Set;
-import java.util.stream.Stream;
-import static java.util.function.Predicate.not;
+import java.util.List;
 
 /**
  * This class is the core part of the unified resource consumption model of
@@ -49,6 +48,21 @@ import static java.util.function.Predicate.not;
  * resource consumption is added to the group or because one of the consumptions
  * complete), and then make sure that all spreaders in the influence group
  * receive timing events at the same time instance.
+ * <p>
+ * Influence groups are maintained incrementally. When two groups get connected,
+ * the members of the smaller group are moved to the larger one's sets and the
+ * absorbed freqsyncer only remembers its absorber (members resolve their
+ * syncer lazily, see resolve). When consumptions are dropped, only their
+ * former endpoints are checked: two searches are started from them in
+ * parallel and the first one that runs out of connections identifies the
+ * component that has to be split off. Thus the costs of merges and splits are
+ * proportional to the smaller of the affected parts and not to the whole
+ * influence group.
+ * <p>
+ * The tick of an influence group that does not change its members (e.g., a
+ * group rescheduled without any consumptions joining or leaving it) does not
+ * allocate any objects: the members are kept in array lists and visited with
+ * indexed loops.
  *
  * @author "Gabor Kecskemeti, Distributed and Parallel Systems Group, University
  * of Innsbruck (c) 2013" "Gabor Kecskemeti, Laboratory of Parallel and
@@ -60,21 +74,13 @@ public class FreqSyncer extends Timed {
     }
 
     /**
-     * The influence group managed by this freqsyncer object.
-     * <p>
-     * myDepGroup is always kept in order: first all the providers are listed, then
-     * all the consumers, when dealing with this data member please keep in mind
-     * this expected behavior. At the end of the array we have a padding with null
-     * items.
-     * <p>
-     * Contents:
-     * <ul>
-     * <li>[0,firstConsumerId[ providers
-     * <li>[firstConsumerId,depgrouplen[ consumers
-     * <li>[depgrouplen,myDepGroup.length[ padding with null items
-     * </ul>
+     * The influence group managed by this freqsyncer object. The providers and
+     * the consumers of the group are listed separately. The order of the
+     * members is not guaranteed, every member remembers its position in its
+     * list (see ResourceSpreader.groupSlot), so members can be looked up and
+     * removed in constant time.
      */
-    final EnumMap<DepKind, Set<ResourceSpreader>> myDepGroup;
+    final EnumMap<DepKind, ArrayList<ResourceSpreader>> myDepGroup;
     /**
      * those resource spreaders that need to be added to the influence group at the
      * particular time instance
@@ -94,6 +100,71 @@ public class FreqSyncer extends Timed {
      * multiple times in a single time instance.
      */
     private boolean regularFreqMode = true;
+    /**
+     * The freqsyncer that took over the influence group of this one. Null while
+     * this freqsyncer manages its own group.
+     */
+    private FreqSyncer absorbedBy = null;
+    /**
+     * Those freqsyncers whose influence groups need to be merged into ours at
+     * the particular time instance
+     */
+    private final ArrayList<FreqSyncer> toAbsorb = new ArrayList<>();
+    /**
+     * The consumptions that got dropped by both of their spreaders during the
+     * current tick, their former endpoints might have been disconnected.
+     */
+    private final ArrayList<ResourceConsumption> detachedConsumptions = new ArrayList<>();
+    /**
+     * The members that dropped some consumptions since the last frequency
+     * update, they might not process anything anymore.
+     */
+    final ArrayList<ResourceSpreader> shrunkMembers = new ArrayList<>();
+    /**
+     * The consumptions that joined the group since the last frequency update
+     */
+    final ArrayList<ResourceConsumption> addedConsumptions = new ArrayList<>();
+    /**
+     * Shows if the low level scheduler should reassign the processing limits of
+     * all consumptions in the group at the next frequency update. Otherwise, it
+     * is allowed to only reschedule the parts of the group affected by the
+     * shrunk members and added consumptions.
+     */
+    boolean fullReschedule = true;
+    /**
+     * The projected completion times of the consumptions processed by the
+     * providers of the group. Allows the low level scheduler to find the next
+     * completion without visiting all consumptions of the group.
+     */
+    CompletionIndex completions = new CompletionIndex();
+    /**
+     * The freqsyncers created for the components split off from this group
+     * during the current tick
+     */
+    private final ArrayList<FreqSyncer> splitSyncers = new ArrayList<>();
+    /**
+     * The endpoint of a detached consumption whose connectivity the other
+     * endpoints in this group are checked against during the group separation
+     * of the current tick (see separateIfDisconnected)
+     */
+    private transient ResourceSpreader representative;
+    /**
+     * The reusable pair of searches for the connectivity checks of the group
+     * separation (see detachedComponent), created at the first check
+     */
+    private transient ComponentSearch[] searches;
+    /**
+     * The time instance for which all members of the group were processed last
+     * (see processGroup), -1 if the members changed since then.
+     */
+    private long processedAt = -1;
+    /**
+     * The number of frequency updates of the group so far. The real limits of
+     * the group's consumptions can only change with a frequency update, thus
+     * the members can keep values derived from the real limits until this
+     * counter changes (see ResourceSpreader.getTotalProcessed(long)).
+     */
+    long frequencyUpdates = 0;
 
     /**
      * Constructor of a freqsyncer to be used when neither the provider nor the
@@ -106,31 +177,80 @@ public class FreqSyncer extends Timed {
     FreqSyncer(final ResourceSpreader provider, final ResourceSpreader consumer) {
         myDepGroup=new EnumMap<>(DepKind.class);
         initDGMap(myDepGroup);
-        myDepGroup.get(DepKind.PROVIDER).add(provider);
-        myDepGroup.get(DepKind.CONSUMER).add(consumer);
+        addMember(myDepGroup, provider);
+        addMember(myDepGroup, consumer);
         provider.setSyncer(this);
         consumer.setSyncer(this);
         setBackPreference(true);
+        setConcurrentPreparation(true);
     }
 
-    private static void initDGMap(EnumMap<DepKind, Set<ResourceSpreader>> toInit) {
-        toInit.put(DepKind.PROVIDER, new HashSet<>());
-        toInit.put(DepKind.CONSUMER, new HashSet<>());
+    private static void initDGMap(EnumMap<DepKind, ArrayList<ResourceSpreader>> toInit) {
+        toInit.put(DepKind.PROVIDER, new ArrayList<>());
+        toInit.put(DepKind.CONSUMER, new ArrayList<>());
     }
 
-    Stream<ResourceSpreader> getProviderStream() {
-        return getDepGroupStream(DepKind.PROVIDER);
+    /**
+     * Lists a new member in an influence group. Members already listed are not
+     * added for a second time.
+     *
+     * @param group the group to extend
+     * @param rs    the new member
+     */
+    private static void addMember(final EnumMap<DepKind, ArrayList<ResourceSpreader>> group,
+                                  final ResourceSpreader rs) {
+        final var members = group.get(rs.spreaderType());
+        if (!isMember(members, rs)) {
+            rs.groupSlot = members.size();
+            members.add(rs);
+        }
     }
 
     /**
-     * @return Returns a new stream of all the members of the influence group, it is guaranteed to offer all providers first in the sequential stream
+     * Removes a member from an influence group in constant time. The last member
+     * of the same kind takes the place of the removed one.
+     *
+     * @param group the group to shrink
+     * @param rs    the member to remove
      */
-    Stream<ResourceSpreader> getCompleteDGStream() {
-        return Stream.concat(getProviderStream(),getDepGroupStream(DepKind.CONSUMER));
+    private static void removeMember(final EnumMap<DepKind, ArrayList<ResourceSpreader>> group,
+                                     final ResourceSpreader rs) {
+        final var members = group.get(rs.spreaderType());
+        if (isMember(members, rs)) {
+            final var last = members.remove(members.size() - 1);
+            if (last != rs) {
+                members.set(rs.groupSlot, last);
+                last.groupSlot = rs.groupSlot;
+            }
+            rs.groupSlot = -1;
+        }
     }
 
-    Stream<ResourceSpreader> getDepGroupStream(DepKind streamKind) {
-        return myDepGroup.get(streamKind).stream();
+    private static boolean isMember(final ArrayList<ResourceSpreader> members, final ResourceSpreader rs) {
+        final int slot = rs.groupSlot;
+        return slot >= 0 && slot < members.size() && members.get(slot) == rs;
+    }
+
+    /**
+     * Determines the number of spreaders in the influence group.
+     *
+     * @return the number of providers and consumers in the group
+     */
+    int groupSize() {
+        return myDepGroup.get(DepKind.PROVIDER).size() + myDepGroup.get(DepKind.CONSUMER).size();
+    }
+
+    /**
+     * Allows indexed iteration over the influence group. It is guaranteed that
+     * all providers are offered before the consumers.
+     *
+     * @param index the position of the member, must be smaller than groupSize
+     * @return the member of the group at the particular position
+     */
+    ResourceSpreader member(final int index) {
+        final var providers = myDepGroup.get(DepKind.PROVIDER);
+        return index < providers.size() ? providers.get(index)
+                : myDepGroup.get(DepKind.CONSUMER).get(index - providers.size());
     }
 
     /**
@@ -139,22 +259,74 @@ public class FreqSyncer extends Timed {
      *
      * @param predefinedDepGroup the group members to take part in the new influence group
      */
-    private FreqSyncer(EnumMap<DepKind,Set<ResourceSpreader>> predefinedDepGroup) {
+    private FreqSyncer(EnumMap<DepKind, ArrayList<ResourceSpreader>> predefinedDepGroup) {
         myDepGroup=predefinedDepGroup;
-        getCompleteDGStream().forEach(rs -> rs.setSyncer(this));
+        for (int i = 0; i < groupSize(); i++) {
+            member(i).setSyncer(this);
+        }
         setBackPreference(true);
+        setConcurrentPreparation(true);
     }
 
     /**
-     * This function copies the contents of the depGroupExtension list to the array
-     * representing the influence group and ensures that all newly added members of
-     * the influence group know their group membership.
+     * Determines the freqsyncer actually managing the influence group this one
+     * used to manage. Shortens the chain of absorptions along the way, so later
+     * queries are answered directly.
+     *
+     * @return this object if it was not absorbed, otherwise the freqsyncer that
+     * holds the members of our former group
+     */
+    FreqSyncer resolve() {
+        var root = this;
+        while (root.absorbedBy != null) {
+            root = root.absorbedBy;
+        }
+        var current = this;
+        while (current.absorbedBy != null) {
+            final var next = current.absorbedBy;
+            current.absorbedBy = root;
+            current = next;
+        }
+        return root;
+    }
+
+    /**
+     * This function merges the influence groups of the absorbed freqsyncers and
+     * copies the contents of the depGroupExtension list to the sets representing
+     * the influence group. The merge always moves the members of the smaller set,
+     * the members of the absorbed groups learn their new group membership lazily
+     * (see ResourceSpreader.getSyncer). The individually added members are
+     * immediately informed about their group membership.
      */
     private void addToGroup() {
-        depGroupExtension.forEach(rs -> {
-            myDepGroup.get(rs.spreaderType()).add(rs);
-            rs.setSyncer(this);
-        });
+        if (!toAbsorb.isEmpty() || !depGroupExtension.isEmpty()) {
+            // The new members are not processed yet
+            processedAt = -1;
+        }
+        for (int i = 0; i < toAbsorb.size(); i++) {
+            final var absorbed = toAbsorb.get(i);
+            for (DepKind kind : DepKind.values()) {
+                final var ours = myDepGroup.get(kind);
+                final var theirs = absorbed.myDepGroup.get(kind);
+                if (ours.size() < theirs.size()) {
+                    ours.forEach(rs -> addMember(absorbed.myDepGroup, rs));
+                    myDepGroup.put(kind, theirs);
+                } else {
+                    theirs.forEach(rs -> addMember(myDepGroup, rs));
+                }
+            }
+            initDGMap(absorbed.myDepGroup);
+            completions = CompletionIndex.merge(completions, absorbed.completions);
+            absorbed.completions = new CompletionIndex();
+            fullReschedule |= absorbed.fullReschedule;
+        }
+        toAbsorb.clear();
+        if (!depGroupExtension.isEmpty()) {
+            depGroupExtension.forEach(rs -> {
+                addMember(myDepGroup, rs);
+                rs.setSyncer(this);
+            });
+        }
     }
 
     /**
@@ -165,7 +337,7 @@ public class FreqSyncer extends Timed {
      * @return <i>true</i> if the group is part of the current influence group
      */
     private boolean isInDepGroup(final ResourceSpreader lookfor) {
-        return getDepGroupStream(lookfor.spreaderType()).anyMatch( d -> d==lookfor);
+        return isMember(myDepGroup.get(lookfor.spreaderType()), lookfor);
     }
 
     /**
@@ -198,7 +370,47 @@ public class FreqSyncer extends Timed {
      * @param currentTime the time instance for which the processing should be done
      */
     protected final void outOfOrderProcessing(final long currentTime) {
-        getCompleteDGStream().forEach(rs -> rs.doProcessing(currentTime));
+        for (int i = 0; i < groupSize(); i++) {
+            member(i).doProcessing(currentTime);
+        }
+        processedAt = currentTime;
+    }
+
+    /**
+     * Processes the entire influence group unless it was already processed for
+     * the particular time instance (and its members did not change since).
+     * Thus the group is processed at most once per time instance no matter how
+     * many of its members are queried (see ResourceSpreader.getTotalProcessed).
+     * Groups processing 0 tick long consumptions are processed on every call as
+     * they might need repeated processing in the same time instance.
+     *
+     * @param currentTime the time instance for which the processing should be done
+     */
+    void processGroup(final long currentTime) {
+        if (processedAt != currentTime || !regularFreqMode) {
+            outOfOrderProcessing(currentTime);
+        }
+    }
+
+    /**
+     * Does the resource consumption processing of the influence group in advance.
+     * Influence groups never share resource consumptions, thus the groups due at
+     * the same time instance can be processed concurrently. The processing is
+     * not repeated by the tick function afterwards (see
+     * ResourceSpreader.doProcessing). Consumptions completing here only nudge
+     * this freqsyncer, which is already due, so its place in the event queue is
+     * not affected.
+     * <p>
+     * Groups processing 0 tick long consumptions are left for the tick function
+     * as they might need repeated processing in the same time instance.
+     *
+     * @param fires the time instance the processing should be done for
+     */
+    @Override
+    protected void prepareTick(final long fires) {
+        if (regularFreqMode) {
+            outOfOrderProcessing(fires);
+        }
     }
 
     /**
@@ -209,6 +421,10 @@ public class FreqSyncer extends Timed {
      * <p>
      * Sends out the notifications for completed or failed resource consumptions.
      * <p>
+     * Once all members are processed, notifies the members' processing rate
+     * change listeners (see ProcessingRateChangeListener) as the rates are only
+     * changed by the rescheduling done here.
+     * <p>
      * This is executed with the frequency identified by the low level scheduler.
      * The execution of this tick function is run at the very end of the event loop
      * in Timed (with the help of backpreference that is set up in the constructors
@@ -220,7 +436,12 @@ public class FreqSyncer extends Timed {
      */
     @Override
     public void tick(final long fires) {
-        if (identifyGroupMembers(fires)) {
+        final boolean separation = identifyGroupMembers(fires);
+        // All members are processed until now, their rates change from here
+        for (int i = 0; i < groupSize(); i++) {
+            member(i).notifyRateChange(fires);
+        }
+        if (separation) {
             groupSeparation();
         } else {
             // No separation was needed we just update our freq
@@ -242,46 +463,56 @@ public class FreqSyncer extends Timed {
             outOfOrderProcessing(fires);
             depGroupExtension.clear();
             nudged = false;
-            var res = getCompleteDGStream()
-                    .map(rs -> Pair.of(rs.handleRemovals(), rs.handleAdditions(fires)))
-                    .reduce((in1, in2) -> Pair.of(in1.getLeft() | in2.getLeft(), in1.getRight() | in2.getRight()))
-                    .orElse(Pair.of(false, false));
-            didRemovals |= res.getLeft();
-            didExtension = res.getRight();
+            didExtension = false;
+            for (int i = 0; i < groupSize(); i++) {
+                final var rs = member(i);
+                if (rs.handleRemovals(detachedConsumptions)) {
+                    shrunkMembers.add(rs);
+                    didRemovals = true;
+                }
+                if (rs.spreaderType() == DepKind.PROVIDER) {
+                    // Copied one by one, addAll would allocate a temporary array
+                    for (int j = 0; j < rs.underAddition.size(); j++) {
+                        addedConsumptions.add(rs.underAddition.get(j));
+                    }
+                }
+                didExtension |= rs.handleAdditions(fires);
+            }
         } while (didExtension || nudged);
         return didRemovals;
     }
 
     /**
      * Phase II. managing separation of influence groups
+     * <p>
+     * First the members that have nothing left to process leave the group. Then
+     * the connectivity of the endpoints of the consumptions that no longer
+     * connect them is checked. Every part of a fragmented group contains at
+     * least one of these endpoints, thus it is enough to check if each endpoint
+     * is still connected to a representative endpoint of its group (see
+     * separateIfDisconnected). Disconnected parts get their own freqsyncers.
      */
     private void groupSeparation() {
-        cleanDepGroupFromUnusedSpreaders();
-        if(!isEmptyDG()) {
-            // Marking all current members of the depgroup as non-members
-            getCompleteDGStream().forEach(rs -> rs.stillInDepGroup = false);
-            boolean needsFurtherSplitChecks = true;
-            do {
-                buildDepGroup(getFirstProvider());
-                if (getCompleteDGStream().anyMatch(not(rs -> rs.stillInDepGroup))) {
-                    // a split is needed, we have identified an influence group which does not belong to the group of the first member
-                    EnumMap<DepKind, Set<ResourceSpreader>> newInfluenceGroup = new EnumMap<>(DepKind.class);
-                    initDGMap(newInfluenceGroup);
-                    var notClassified = getCompleteDGStream();
-                    // Separate the newly identified subgroup into its own
-                    notClassified.filter(rs -> rs.stillInDepGroup).peek(rs -> newInfluenceGroup.get(rs.spreaderType()).add(rs)).toList().forEach(rs ->
-                            myDepGroup.get(rs.spreaderType()).remove(rs) // remove the new sub group's members from the original
-                    );
-                    // by this time we have a smaller influence group in the current freq syncer as the new group has some of the old members
-                    var newFreqSyncer = new FreqSyncer(newInfluenceGroup);
-                    newFreqSyncer.updateMyFreqNow();
-                } else {
-                    // no split is needed, we have got the final group, it is just a bit smaller than before
-                    needsFurtherSplitChecks = false;
-                }
-            } while (needsFurtherSplitChecks);
+        for (int i = 0; i < shrunkMembers.size(); i++) {
+            final var rs = shrunkMembers.get(i);
+            if (rs.cleanSyncerWhenNotProcessing()) {
+                removeMember(myDepGroup, rs);
+            }
+        }
+        for (int i = 0; i < detachedConsumptions.size(); i++) {
+            final var con = detachedConsumptions.get(i);
+            separateIfDisconnected(con.getProvider());
+            separateIfDisconnected(con.getConsumer());
         }
-        if(isEmptyDG()) {
+        detachedConsumptions.clear();
+        representative = null;
+        for (int i = 0; i < splitSyncers.size(); i++) {
+            final var split = splitSyncers.get(i);
+            split.representative = null;
+            split.updateMyFreqNow();
+        }
+        splitSyncers.clear();
+        if(groupSize() == 0) {
             // We have not been left to work with anything, no need to keep our subscription
             unsubscribe();
         } else {
@@ -289,18 +520,196 @@ public class FreqSyncer extends Timed {
         }
     }
 
-    private void cleanDepGroupFromUnusedSpreaders() {
-        for(DepKind dgType:DepKind.values()) cleanDepGroupFromUnusedSpreaders(dgType);
+    /**
+     * Checks if a former endpoint of a detached consumption is still connected
+     * to the representative endpoint of its influence group (see
+     * detachedComponent). If not, the part found disconnected is split off and
+     * the representatives of both groups are updated. The first endpoint
+     * encountered in a group becomes its representative.
+     *
+     * @param rs the endpoint to check
+     */
+    private void separateIfDisconnected(final ResourceSpreader rs) {
+        if (!rs.isProcessing()) {
+            return;
+        }
+        final var syncer = rs.getSyncer();
+        final var groupRepresentative = syncer.representative;
+        if (groupRepresentative == null) {
+            syncer.representative = rs;
+            return;
+        }
+        if (groupRepresentative == rs) {
+            return;
+        }
+        final var component = detachedComponent(groupRepresentative, rs);
+        if (component != null) {
+            final var split = splitOff(component.visited);
+            if (split != null) {
+                if (component.hasVisited(rs)) {
+                    split.representative = rs;
+                } else {
+                    split.representative = groupRepresentative;
+                    syncer.representative = rs;
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a disconnected component of an influence group into a new influence
+     * group. Only this group and those split from it during the current tick are
+     * allowed to be separated, as only their members are processed up to the
+     * current time instance. The new freqsyncer is added to the splitSyncers list.
+     *
+     * @param component the members of the component to separate
+     * @return the new freqsyncer of the component or null if it was not split off
+     */
+    private FreqSyncer splitOff(final List<ResourceSpreader> component) {
+        final var owner = component.get(0).getSyncer();
+        if (owner != this && !splitSyncers.contains(owner)) {
+            return null;
+        }
+        if (owner.groupSize() == component.size()) {
+            // It is already in a group of its own
+            return null;
+        }
+        EnumMap<DepKind, ArrayList<ResourceSpreader>> newInfluenceGroup = new EnumMap<>(DepKind.class);
+        initDGMap(newInfluenceGroup);
+        component.forEach(rs -> {
+            removeMember(owner.myDepGroup, rs);
+            addMember(newInfluenceGroup, rs);
+        });
+        final var split = new FreqSyncer(newInfluenceGroup);
+        newInfluenceGroup.get(DepKind.PROVIDER).forEach(rs -> rs.toProcess.forEach(con -> {
+            if (owner.completions.remove(con)) {
+                split.completions.offer(con, con.projectedCompletion);
+            }
+        }));
+        splitSyncers.add(split);
+        return split;
     }
 
-    private void cleanDepGroupFromUnusedSpreaders(DepKind dgType) {
-        // Removing all past members which are no longer processing
-        // Clearing out previous freq syncer references to members no longer needing one
-        myDepGroup.get(dgType).removeIf(ResourceSpreader::cleanSyncerWhenNotProcessing);
+    /**
+     * Determines if two spreaders of an influence group are still connected
+     * through the remaining consumptions. Two breadth first searches are
+     * started from the spreaders and they take their steps (i.e., examine a
+     * consumption) in turns. If the searches meet, the spreaders are
+     * still connected. If one of them runs out of consumptions to examine, it
+     * has visited a complete component. Thus the search costs are proportional to
+     * the smaller of the two components.
+     * <p>
+     * Components with members that have dangling consumptions (i.e., ones that
+     * are still listed at their counterparts) might be reachable from outside, so
+     * they are never reported. They are checked again when the counterpart drops
+     * the consumption as well.
+     * <p>
+     * The searches reuse the working memory of this freqsyncer, thus a
+     * connectivity check that does not reach more spreaders than the earlier
+     * ones does not allocate.
+     *
+     * @param first  the first spreader to start the search from
+     * @param second the second spreader to start the search from
+     * @return the search that visited the component that got disconnected from
+     * the other spreader, or null if the two spreaders are still connected (or
+     * their connectivity cannot be decided yet)
+     */
+    private ComponentSearch detachedComponent(final ResourceSpreader first, final ResourceSpreader second) {
+        if (searches == null) {
+            searches = new ComponentSearch[] { new ComponentSearch(), new ComponentSearch() };
+        }
+        var side = searches[0];
+        var other = searches[1];
+        side.start(first);
+        other.start(second);
+        while (true) {
+            final var reached = side.step();
+            if (reached == null) {
+                return side.dangling ? null : side;
+            }
+            if (other.hasVisited(reached)) {
+                return null;
+            }
+            side.visit(reached);
+            final var swap = side;
+            side = other;
+            other = swap;
+        }
     }
 
-    private boolean isEmptyDG() {
-        return getCompleteDGStream().findFirst().isEmpty();
+    /**
+     * The state of a single breadth first search over the consumptions of an
+     * influence group. Visited spreaders are marked with the search and its
+     * round (see ResourceSpreader.searchedBy), so the search can be restarted
+     * without clearing the marks of its earlier rounds.
+     */
+    static final class ComponentSearch {
+        /**
+         * The spreaders reached so far
+         */
+        final ArrayList<ResourceSpreader> visited = new ArrayList<>();
+        /**
+         * The reached spreaders whose consumptions were not examined yet
+         */
+        private final ArrayDeque<ResourceSpreader> frontier = new ArrayDeque<>();
+        /**
+         * The number of times this search was started, tells apart the current
+         * marks from those of the earlier rounds
+         */
+        private long round;
+        /**
+         * The spreader whose consumptions are under examination
+         */
+        private ResourceSpreader current;
+        /**
+         * The index of the next consumption to examine in current's toProcess
+         */
+        private int next;
+        /**
+         * Shows if any of the visited spreaders have dangling consumptions
+         */
+        boolean dangling;
+
+        void start(final ResourceSpreader from) {
+            round++;
+            visited.clear();
+            frontier.clear();
+            current = null;
+            next = 0;
+            dangling = false;
+            visit(from);
+        }
+
+        boolean hasVisited(final ResourceSpreader rs) {
+            return rs.searchedBy == this && rs.searchRound == round;
+        }
+
+        void visit(final ResourceSpreader rs) {
+            if (!hasVisited(rs)) {
+                rs.searchedBy = this;
+                rs.searchRound = round;
+                visited.add(rs);
+                frontier.add(rs);
+                dangling |= rs.danglingConsumptions > 0;
+            }
+        }
+
+        /**
+         * Examines a single consumption
+         *
+         * @return the counterpart reached via the consumption or null if there
+         * are no more consumptions to examine
+         */
+        ResourceSpreader step() {
+            while (current == null || next == current.toProcess.size()) {
+                current = frontier.poll();
+                next = 0;
+                if (current == null) {
+                    return null;
+                }
+            }
+            return current.getCounterPart(current.toProcess.get(next++));
+        }
     }
 
     /**
@@ -311,15 +720,36 @@ public class FreqSyncer extends Timed {
      * times influence group management has to be executed. Unless someone asks for
      * it explicitly, this process also reduces the frequency with which the
      * ResourceSpreader.doProcessing is called.
+     * <p>
+     * If the simulation tolerates inaccurate timing, the next event is snapped
+     * onto the time grid of the simulation (see
+     * SimulationContext.setTimingTolerance). Snapped events are never earlier
+     * than the exact ones, so the consumptions due are always completed by the
+     * snapped event.
      */
     private void updateMyFreqNow() {
-        var newFreq = getFirstProvider().singleGroupwiseFreqUpdater();
+        var newFreq = getContext().quantizeJump(getFirstProvider().singleGroupwiseFreqUpdater());
+        shrunkMembers.clear();
+        addedConsumptions.clear();
+        fullReschedule = false;
+        frequencyUpdates++;
         regularFreqMode = newFreq != 0;
         updateFrequency(newFreq);
     }
 
+    /**
+     * Updates the projected completion time of a consumption in the completion
+     * index of the group. Should be called every time the completion distance
+     * of the consumption is changed by a new real limit.
+     *
+     * @param con the consumption of one of the group's providers
+     */
+    void projectCompletion(final ResourceConsumption con) {
+        completions.offer(con, calcTimeJump(con.getCompletionDistance()));
+    }
+
     private ResourceSpreader getFirstProvider() {
-        return getProviderStream().findFirst().orElseThrow();
+        return myDepGroup.get(DepKind.PROVIDER).get(0);
     }
 
     /**
@@ -332,23 +762,6 @@ public class FreqSyncer extends Timed {
         return regularFreqMode;
     }
 
-    /**
-     * Marks all resource spreaders in the currently decomposing influence group
-     * that the starting spreader has connections with. Before calling this function
-     * it is expected that all past members of the influence group are marked not in
-     * the group anymore. This function will then change these flags back only on
-     * the relevant members from the point of view of the starting item.
-     *
-     * @param startingItem the starting item from which point the influence group
-     *                     should be constructured.
-     */
-    private void buildDepGroup(final ResourceSpreader startingItem) {
-        if (!startingItem.toProcess.isEmpty() && !startingItem.stillInDepGroup) {
-            startingItem.stillInDepGroup = true;
-            startingItem.toProcess.stream().map(startingItem::getCounterPart).forEach(this::buildDepGroup);
-        }
-    }
-
     boolean ensureDepGroupHasCounterPart(ResourceSpreader cp) {
         // Check if counterpart is in the dependency group
         if (!isInDepGroup(cp)) {
@@ -358,13 +771,13 @@ public class FreqSyncer extends Timed {
                 // Just this single item is missing
                 depGroupExtension.add(cp);
             } else {
-                // There are further items missing
+                // There are further items missing, the whole group of cp joins
+                // ours when we next extend our group
                 cpSyncer.unsubscribe(); // we will remove its old syncer
-                cpSyncer.getCompleteDGStream().forEach(depGroupExtension::add);
-                // Make sure, that if we encounter this cp
-                // next time we will not try to add all its
-                // dep group
-                cp.setSyncer(null);
+                // Make sure, that if we encounter a member of its group
+                // next time we will not try to add all its dep group
+                cpSyncer.absorbedBy = this;
+                toAbsorb.add(cpSyncer);
             }
             return true;
         } else {
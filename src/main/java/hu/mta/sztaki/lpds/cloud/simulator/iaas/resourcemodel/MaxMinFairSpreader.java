@@ -25,6 +25,13 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+
 /**
  * This class is part of the unified resource consumption model of DISSECT-CF.
  * 
@@ -39,18 +46,71 @@ package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 public abstract class MaxMinFairSpreader extends ResourceSpreader {
 
 	/**
-	 * Determines the amount of processing that still remains unspent in this
-	 * spreader. This value is always smaller than the perTickProcessingPower of the
-	 * spreader.
+	 * Orders the spreaders of an influence group by the processing level at which
+	 * they would saturate. Ties are broken by the spreaders' hash codes so the
+	 * order is reproducible.
+	 */
+	private static final Comparator<MaxMinFairSpreader> saturationComparator = Comparator
+			.comparingDouble((MaxMinFairSpreader s) -> s.saturationLevel).thenComparingInt(ResourceSpreader::hashCode);
+	/**
+	 * Orders resource consumptions by their processing limits.
+	 */
+	private static final Comparator<ResourceConsumption> processingLimitComparator = Comparator
+			.comparingDouble(ResourceConsumption::getProcessingLimit);
+
+	/**
+	 * Determines the amount of processing that is not yet assigned to the
+	 * consumptions fixed so far. This value is always smaller than the
+	 * perTickProcessingPower of the spreader.
 	 */
 	private double currentUnProcessed;
 	/**
 	 * The number of resource consumptions for which this spreader still did not
 	 * assign temporal resource utilization limits - see: p(c,s,t) in the paper
 	 * titled "DISSECT-CF: a simulator to foster energy-aware scheduling in
-	 * infrastructure clouds" .
+	 * infrastructure clouds" . Coalesced consumptions are counted with their
+	 * multiplicities.
 	 */
 	private int unassignedNum;
+	/**
+	 * The processing level at which this spreader runs out of its unassigned
+	 * processing if all its unassigned consumptions receive the same share.
+	 */
+	private double saturationLevel;
+	/**
+	 * The processing left unassigned after the consumptions of this spreader got
+	 * their processing limits. Kept up to date as consumptions leave, so
+	 * rescheduling can tell if the spreader is a bottleneck without looking at
+	 * its consumptions.
+	 */
+	private double spareProcessing;
+	/**
+	 * Shows if this spreader was a bottleneck when it dropped some of its
+	 * consumptions, thus its remaining consumptions could receive more
+	 * processing.
+	 */
+	private boolean refillNeeded;
+	/**
+	 * Shows if the spreader takes part in the ongoing incremental rescheduling.
+	 */
+	private boolean involved;
+	/**
+	 * Shows if all the consumptions of this spreader take part in the ongoing
+	 * incremental rescheduling.
+	 */
+	private boolean expanded;
+	/**
+	 * The position of this spreader in the saturation order of the ongoing
+	 * rescheduling, -1 if it is not ordered.
+	 */
+	private int saturationSlot = -1;
+	/**
+	 * The reusable working memory of the reschedulings led by this spreader (see
+	 * singleGroupwiseFreqUpdater). It is created when the spreader first leads a
+	 * rescheduling and it grows with the largest group rescheduled. Thus the
+	 * reschedulings of a group that does not grow do not allocate.
+	 */
+	private transient Rescheduling rescheduling;
 
 	/**
 	 * Constructs a generic Max Min fairness based resource spreader.
@@ -62,73 +122,288 @@ public abstract class MaxMinFairSpreader extends ResourceSpreader {
 		super(perSecondProcessing);
 	}
 
+	/**
+	 * Keeps the spare processing in line with the new processing power. As the
+	 * change might affect all the consumptions of the influence group, the next
+	 * rescheduling of the group will reassign all the processing limits.
+	 */
+	@Override
+	protected void setPerTickProcessingPower(final double perTickProcessingPower) {
+		spareProcessing += perTickProcessingPower - getPerTickProcessingPower();
+		super.setPerTickProcessingPower(perTickProcessingPower);
+		final FreqSyncer syncer = getSyncer();
+		if (syncer != null) {
+			syncer.fullReschedule = true;
+		}
+	}
+
+	@Override
+	void consumptionAdded(final ResourceConsumption con) {
+		con.unassigned = true;
+	}
+
+	@Override
+	void consumptionDropped(final ResourceConsumption con) {
+		if (!con.unassigned) {
+			refillNeeded |= spareProcessing <= negligibleProcessing;
+			spareProcessing += con.limithelper * con.multiplicity;
+		}
+	}
+
 	/**
 	 * At the beginning of a freq update cycle, every influence group member is
 	 * initialised with this function.
 	 * 
 	 * The function assures that the private fields of this class are initialised,
 	 * as well as all resource consumptions in the influence group are set as
-	 * unassigned and their processing limits are set to 0. This step actually
-	 * allows the max-min fairness algorithm to gradually increase the processing
-	 * limits for each resource consumption that could play a role in bottleneck
-	 * situations.
+	 * unassigned. Consumptions already dropped by their counterparts are not
+	 * rescheduled, they keep their processing limits until they complete.
 	 *
 	 */
 	private void initializeFreqUpdate() {
 		currentUnProcessed = perTickProcessingPower;
-		unassignedNum=underProcessing.size();
-		underProcessing.forEach(ResourceConsumption::resetForFreqUpdate);
-	}
-
-	/**
-	 * Manages the gradual increase of the processing limits for each resource
-	 * consumption related to this spreader. The increase is started from the
-	 * limithelper of each resource consumption. This limithelper tells to what
-	 * amount the particular consumption was able to already process (i.e. it is the
-	 * maximum consumption limit of some of its peers). If a resource consumption is
-	 * still unassigned then its limithelper should be still lower than the maximum
-	 * amount of processing possible by its provider/consumer.
-	 */
-	private void assignProcessingPower() {
-		if (currentUnProcessed > negligibleProcessing && unassignedNum > 0) {
-			int currlen = unassignedNum;
-			underProcessing.forEach(c -> c.inassginmentprocess=c.unassigned);
-			double currentProcessable = currentUnProcessed;
-			double pastProcessable;
-			int firstindex = 0;
-			int lastindex = underProcessing.size();
-			do {
-				pastProcessable = currentProcessable;
-				final double maxShare = currentProcessable / currlen;
-				boolean firstIndexNotSetUp = true;
-				int newlastindex = -1;
-				for (int i = firstindex; i < lastindex; i++) {
-					final ResourceConsumption con = underProcessing.get(i);
-					if (con.inassginmentprocess) {
-						final double limit = con.getProcessingLimit() - con.limithelper;
-						if (limit < maxShare) {
-							currentProcessable -= limit;
-							updateConsumptionLimit(con, limit);
-							// we move an unprocessed item from the back here
-							// then allow reevaluation
-							// and also make sure the currlen is reduced
-							con.inassginmentprocess = false;
-							currlen--;
-						} else {
-							newlastindex = i;
-							if (firstIndexNotSetUp) {
-								firstindex = i;
-								firstIndexNotSetUp = false;
-							}
-							updateConsumptionLimit(con, maxShare);
-						}
+		unassignedNum = 0;
+		refillNeeded = false;
+		for (int i = 0; i < toProcess.size(); i++) {
+			final ResourceConsumption con = toProcess.get(i);
+			if (con.listedAt == 2) {
+				con.resetForFreqUpdate();
+				unassignedNum += con.multiplicity;
+			} else if (!con.unassigned) {
+				currentUnProcessed -= con.limithelper * con.multiplicity;
+			}
+		}
+	}
+
+	private void updateSaturationLevel() {
+		saturationLevel = currentUnProcessed / unassignedNum;
+	}
+
+	/**
+	 * Fixes the processing limit of a consumption and updates both of its
+	 * spreaders accordingly. The spreaders are repositioned in the saturation
+	 * order as their saturation levels change. Spreaders that are not in the
+	 * order (i.e., the one currently saturating) are left out of it. As the real
+	 * limit of the consumption is now known, its projected completion is updated
+	 * as well.
+	 * 
+	 * @param con             the consumption to fix
+	 * @param level           the processing limit to be assigned to the
+	 *                        consumption
+	 * @param saturationOrder the spreaders that still have unassigned
+	 *                        consumptions
+	 * @param syncer          the freqsyncer of the influence group
+	 */
+	private static void fixConsumption(final ResourceConsumption con, final double level,
+			final SaturationOrder saturationOrder, final FreqSyncer syncer) {
+		con.unassigned = false;
+		con.underReschedule = false;
+		con.limithelper = level;
+		fixInSpreader((MaxMinFairSpreader) con.getProvider(), con, level, saturationOrder);
+		fixInSpreader((MaxMinFairSpreader) con.getConsumer(), con, level, saturationOrder);
+		con.updateRealLimit(true);
+		syncer.projectCompletion(con);
+	}
+
+	private static void fixInSpreader(final MaxMinFairSpreader mmfs, final ResourceConsumption con,
+			final double level, final SaturationOrder saturationOrder) {
+		mmfs.updateConsumptionLimit(con, level);
+		mmfs.currentUnProcessed -= level * con.multiplicity;
+		mmfs.unassignedNum -= con.multiplicity;
+		if (saturationOrder.contains(mmfs)) {
+			if (mmfs.unassignedNum > 0) {
+				mmfs.updateSaturationLevel();
+				saturationOrder.reposition(mmfs);
+			} else {
+				saturationOrder.remove(mmfs);
+			}
+		}
+	}
+
+	/**
+	 * Assigns the processing limits of the consumptions under rescheduling with
+	 * progressive filling: the processing of all these consumptions is raised
+	 * together, and a consumption gets its final limit when either its own
+	 * processing limit or one of its spreaders is saturated. Instead of raising
+	 * the level in small steps, the next saturation is looked up from the
+	 * consumptions sorted by their processing limits and from the spreaders
+	 * ordered by their saturation levels. Thus the filling costs O(n log n) for
+	 * n consumptions.
+	 * 
+	 * @param work   the working memory of the rescheduling, its spreaders must
+	 *               have their unassigned processing and the number of their
+	 *               consumptions under rescheduling set up, while its
+	 *               rescheduled consumptions will be sorted by their processing
+	 *               limits
+	 * @param syncer the freqsyncer of the influence group
+	 */
+	private static void progressiveFilling(final Rescheduling work, final FreqSyncer syncer) {
+		final SaturationOrder saturationOrder = work.saturationOrder;
+		for (int i = 0; i < work.spreaders.size(); i++) {
+			final MaxMinFairSpreader mmfs = work.spreaders.get(i);
+			if (mmfs.unassignedNum > 0) {
+				mmfs.updateSaturationLevel();
+				saturationOrder.add(mmfs);
+			}
+		}
+		final ResourceConsumption[] byLimit = work.sortRescheduled();
+		final int limitedCount = work.rescheduled.size();
+		int nextLimited = 0;
+		double level = 0;
+		while (!saturationOrder.isEmpty()) {
+			while (nextLimited < limitedCount && !byLimit[nextLimited].unassigned) {
+				nextLimited++;
+			}
+			final MaxMinFairSpreader firstSaturating = saturationOrder.first();
+			if (nextLimited < limitedCount
+					&& byLimit[nextLimited].getProcessingLimit() < firstSaturating.saturationLevel) {
+				// a consumption reaches its own limit first
+				final ResourceConsumption con = byLimit[nextLimited++];
+				level = con.getProcessingLimit();
+				fixConsumption(con, level, saturationOrder, syncer);
+			} else {
+				// a spreader saturates, it limits all its unassigned consumptions
+				saturationOrder.remove(firstSaturating);
+				level = Math.max(level, firstSaturating.saturationLevel);
+				for (int i = 0; i < firstSaturating.toProcess.size(); i++) {
+					final ResourceConsumption con = firstSaturating.toProcess.get(i);
+					if (con.underReschedule) {
+						fixConsumption(con, level, saturationOrder, syncer);
+					}
+				}
+			}
+		}
+		Arrays.fill(byLimit, 0, limitedCount, null);
+	}
+
+	/**
+	 * Reassigns the processing limits of all consumptions in the influence group.
+	 * 
+	 * @param syncer the freqsyncer of the influence group
+	 * @param work   the working memory of the rescheduling
+	 */
+	private static void fullReschedule(final FreqSyncer syncer, final Rescheduling work) {
+		work.clear();
+		for (int i = 0; i < syncer.groupSize(); i++) {
+			final MaxMinFairSpreader mmfs = (MaxMinFairSpreader) syncer.member(i);
+			mmfs.initializeFreqUpdate();
+			work.spreaders.add(mmfs);
+			if (!mmfs.isConsumer()) {
+				for (int j = 0; j < mmfs.toProcess.size(); j++) {
+					final ResourceConsumption con = mmfs.toProcess.get(j);
+					if (con.underReschedule) {
+						work.rescheduled.add(con);
+					}
+				}
+			}
+		}
+		progressiveFilling(work, syncer);
+		for (int i = 0; i < work.spreaders.size(); i++) {
+			final MaxMinFairSpreader mmfs = work.spreaders.get(i);
+			mmfs.spareProcessing = mmfs.currentUnProcessed;
+		}
+		work.clear();
+	}
+
+	/**
+	 * Reassigns the processing limits of those consumptions only that could be
+	 * affected by the changes in the influence group since the last rescheduling.
+	 * <p>
+	 * Added consumptions are rescheduled. Spreaders that are bottlenecks (they
+	 * have no spare processing left) of a rescheduled consumption, or that were
+	 * bottlenecks when dropping some consumptions, get all their consumptions
+	 * rescheduled. The other spreaders of the rescheduled consumptions
+	 * participate with their spare processing and the processing of their
+	 * rescheduled consumptions. The rest of the group keeps its processing
+	 * limits. This is only valid if none of the spreaders with non rescheduled
+	 * consumptions become bottlenecks, otherwise the function gives up.
+	 * 
+	 * @param syncer the freqsyncer of the influence group
+	 * @param work   the working memory of the rescheduling
+	 * @return <i>true</i> if the processing limits are max-min fair after the
+	 *         rescheduling, <i>false</i> if a full rescheduling is needed
+	 */
+	private static boolean incrementalReschedule(final FreqSyncer syncer, final Rescheduling work) {
+		if (syncer.shrunkMembers.isEmpty() && syncer.addedConsumptions.isEmpty()) {
+			// Nothing changed, the current processing limits are still max-min fair
+			return true;
+		}
+		work.clear();
+		for (int i = 0; i < syncer.shrunkMembers.size(); i++) {
+			final MaxMinFairSpreader mmfs = (MaxMinFairSpreader) syncer.shrunkMembers.get(i);
+			if (mmfs.refillNeeded && mmfs.isProcessing() && mmfs.getSyncer() == syncer) {
+				involve(mmfs, work);
+				work.toExpand.add(mmfs);
+			}
+			mmfs.refillNeeded = false;
+		}
+		for (int i = 0; i < syncer.addedConsumptions.size(); i++) {
+			final ResourceConsumption con = syncer.addedConsumptions.get(i);
+			if (con.listedAt == 2 && con.getProvider().getSyncer() == syncer) {
+				reschedule(con, work);
+			}
+		}
+		while (!work.toExpand.isEmpty()) {
+			final MaxMinFairSpreader mmfs = work.toExpand.poll();
+			if (!mmfs.expanded) {
+				mmfs.expanded = true;
+				for (int i = 0; i < mmfs.toProcess.size(); i++) {
+					final ResourceConsumption con = mmfs.toProcess.get(i);
+					if (con.listedAt == 2) {
+						reschedule(con, work);
 					}
 				}
-				lastindex = newlastindex;
-			} while (currlen != 0 && pastProcessable != currentProcessable);
+			}
+		}
+		progressiveFilling(work, syncer);
+		boolean maxMinFair = true;
+		for (int i = 0; i < work.spreaders.size(); i++) {
+			final MaxMinFairSpreader mmfs = work.spreaders.get(i);
+			mmfs.spareProcessing = mmfs.currentUnProcessed;
+			maxMinFair &= mmfs.expanded || mmfs.spareProcessing > mmfs.negligibleProcessing;
+			mmfs.involved = mmfs.expanded = false;
+		}
+		work.clear();
+		return maxMinFair;
+	}
+
+	/**
+	 * Prepares a spreader for participating in the incremental rescheduling.
+	 * Bottleneck spreaders are queued for rescheduling all their consumptions.
+	 */
+	private static void involve(final MaxMinFairSpreader mmfs, final Rescheduling work) {
+		if (!mmfs.involved) {
+			mmfs.involved = true;
+			mmfs.currentUnProcessed = mmfs.spareProcessing;
+			mmfs.unassignedNum = 0;
+			work.spreaders.add(mmfs);
+			if (mmfs.spareProcessing <= mmfs.negligibleProcessing) {
+				work.toExpand.add(mmfs);
+			}
 		}
 	}
 
+	/**
+	 * Adds a consumption to the incremental rescheduling. Its past processing
+	 * limit is returned to its spreaders.
+	 */
+	private static void reschedule(final ResourceConsumption con, final Rescheduling work) {
+		if (!con.underReschedule) {
+			final double pastLimit = con.unassigned ? 0 : con.limithelper;
+			con.unassigned = con.underReschedule = true;
+			work.rescheduled.add(con);
+			returnLimit((MaxMinFairSpreader) con.getProvider(), con, pastLimit, work);
+			returnLimit((MaxMinFairSpreader) con.getConsumer(), con, pastLimit, work);
+		}
+	}
+
+	private static void returnLimit(final MaxMinFairSpreader mmfs, final ResourceConsumption con,
+			final double pastLimit, final Rescheduling work) {
+		involve(mmfs, work);
+		mmfs.currentUnProcessed += pastLimit * con.multiplicity;
+		mmfs.unassignedNum += con.multiplicity;
+	}
+
 	/**
 	 * This function is the entrance to the lowest level scheduling in DISSECT-CF.
 	 * 
@@ -136,50 +411,205 @@ public abstract class MaxMinFairSpreader extends ResourceSpreader {
 	 * limit and determines what is the resource consumption which will finish
 	 * earliest with that particular limit. The earliest completion time is then
 	 * returned to the main resource spreading logic of the simulator.
+	 * 
+	 * Unless the freqsyncer asks for the reassignment of all processing limits,
+	 * only the parts of the influence group affected by the latest changes are
+	 * rescheduled (see incrementalReschedule).
+	 * 
+	 * The earliest completion is looked up from the completion index of the
+	 * group. Only the projections of the rescheduled consumptions and of those
+	 * that are close to the earliest projection are renewed. The projections of
+	 * the rest of the group remain valid (up to the rounding of their
+	 * completion distances) as their real limits did not change.
 	 */
 	@Override
 	protected long singleGroupwiseFreqUpdater() {
-		// Phase 1: preparation
 		final FreqSyncer syncer = getSyncer();
-		syncer.getCompleteDGStream().forEach(rs -> ((MaxMinFairSpreader)rs).initializeFreqUpdate());
-		boolean someConsumptionIsStillUnderUtilized;
-		// Phase 2: Progressive filling iteration
-		do {
-			// Phase 2a: determining maximum possible processing
-			// Determining wishes for providers and consumers
-			syncer.getCompleteDGStream().forEach(rs -> ((MaxMinFairSpreader)rs).assignProcessingPower());
-			// Phase 2b: Finding minimum between providers and consumers
-			final double minProcessing = syncer.getProviderStream().flatMapToDouble(
-					rs -> rs.underProcessing.stream().filter(c -> c.unassigned).mapToDouble(c -> c.updateRealLimit(false))).min().orElse(Double.MAX_VALUE);
-
-			final double mpLowLimit=minProcessing * 0.000000001;
-			// Phase 2c: single filling
-			someConsumptionIsStillUnderUtilized = syncer.getProviderStream().filter(
-					rs -> {
-						final MaxMinFairSpreader mmfs = (MaxMinFairSpreader) rs;
-						mmfs.underProcessing.stream().filter(c -> c.unassigned).forEach( con -> {
-							con.limithelper += minProcessing;
-							final MaxMinFairSpreader counterpart = (MaxMinFairSpreader) mmfs.getCounterPart(con);
-							mmfs.currentUnProcessed -= minProcessing;
-							counterpart.currentUnProcessed -= minProcessing;
-							final double rlMin = Math.abs(con.getRealLimit() - minProcessing);
-							if (rlMin <= mpLowLimit) {
-								con.unassigned = false;
-								mmfs.unassignedNum--;
-								counterpart.unassignedNum--;
-							}
-						});
-						return mmfs.unassignedNum!=0;
-					}
-			).count()!=0;
-		} while (someConsumptionIsStillUnderUtilized);
-		// Phase 3: Determining the earliest completion time
-		return syncer.getProviderStream().flatMapToLong(
-				rs ->  rs.underProcessing.stream().mapToLong(con -> {
-					con.consumerLimit = con.providerLimit = con.limithelper;
+		if (rescheduling == null) {
+			rescheduling = new Rescheduling();
+		}
+		final Rescheduling work = rescheduling;
+		if (syncer.fullReschedule || !incrementalReschedule(syncer, work)) {
+			fullReschedule(syncer, work);
+		}
+		// The projections were rounded when they were made, while the remaining
+		// distances are rounded now. The two roundings differ by at most a tick,
+		// so the earliest completion is amongst the consumptions projected to
+		// complete within two ticks after the earliest projection. These
+		// candidates get their projections renewed from their current state.
+		final long now = Timed.getFireCount();
+		final long projected = syncer.completions.earliestCompletion();
+		if (projected != Long.MAX_VALUE) {
+			final ArrayList<ResourceConsumption> candidates = work.rescheduled;
+			syncer.completions.collectDue(projected > Long.MAX_VALUE - 2 ? Long.MAX_VALUE : projected + 2,
+					candidates);
+			for (int i = 0; i < candidates.size(); i++) {
+				final ResourceConsumption con = candidates.get(i);
+				if (!con.unassigned) {
 					con.updateRealLimit(true);
-					return con.getCompletionDistance();
-				})).min().orElse(Long.MAX_VALUE);
+				}
+				syncer.projectCompletion(con);
+			}
+			candidates.clear();
+		}
+		// Determining the earliest completion time
+		final long earliest = syncer.completions.earliestCompletion();
+		return earliest == Long.MAX_VALUE ? Long.MAX_VALUE : earliest - now;
+	}
+
+	/**
+	 * The working memory of the rescheduling of an influence group. It is kept
+	 * between reschedulings, so they do not need to allocate their temporary
+	 * lists.
+	 */
+	private static final class Rescheduling {
+		/**
+		 * The spreaders taking part in the rescheduling
+		 */
+		final ArrayList<MaxMinFairSpreader> spreaders = new ArrayList<>();
+		/**
+		 * The consumptions to receive new processing limits
+		 */
+		final ArrayList<ResourceConsumption> rescheduled = new ArrayList<>();
+		/**
+		 * The bottleneck spreaders whose consumptions must all be rescheduled
+		 */
+		final ArrayDeque<MaxMinFairSpreader> toExpand = new ArrayDeque<>();
+		/**
+		 * The spreaders that still have unassigned consumptions
+		 */
+		final SaturationOrder saturationOrder = new SaturationOrder();
+		/**
+		 * The rescheduled consumptions sorted by their processing limits, the
+		 * array is padded with null items
+		 */
+		private ResourceConsumption[] byLimit = new ResourceConsumption[16];
+
+		/**
+		 * Sorts the rescheduled consumptions by their processing limits. Small
+		 * ranges (see Arrays.sort) are sorted without any allocation.
+		 * 
+		 * @return the array holding the sorted consumptions in its first
+		 *         rescheduled.size() items
+		 */
+		ResourceConsumption[] sortRescheduled() {
+			final int count = rescheduled.size();
+			if (byLimit.length < count) {
+				byLimit = new ResourceConsumption[Math.max(count, byLimit.length * 2)];
+			}
+			for (int i = 0; i < count; i++) {
+				byLimit[i] = rescheduled.get(i);
+			}
+			Arrays.sort(byLimit, 0, count, processingLimitComparator);
+			return byLimit;
+		}
+
+		void clear() {
+			spreaders.clear();
+			rescheduled.clear();
+			toExpand.clear();
+		}
+	}
+
+	/**
+	 * Orders the spreaders of an ongoing rescheduling by their saturation levels
+	 * (see saturationComparator). The spreaders are kept in a binary heap where
+	 * every spreader remembers its position, so a spreader can be repositioned or
+	 * dropped in logarithmic time (see CompletionIndex for the same technique
+	 * applied on consumptions).
+	 */
+	private static final class SaturationOrder {
+		/**
+		 * The heap holding the ordered spreaders in [0,size[
+		 */
+		private MaxMinFairSpreader[] heap = new MaxMinFairSpreader[16];
+		/**
+		 * The number of ordered spreaders
+		 */
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		MaxMinFairSpreader first() {
+			return heap[0];
+		}
+
+		boolean contains(final MaxMinFairSpreader mmfs) {
+			final int i = mmfs.saturationSlot;
+			return i >= 0 && i < size && heap[i] == mmfs;
+		}
+
+		void add(final MaxMinFairSpreader mmfs) {
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+			}
+			siftUp(size++, mmfs);
+		}
+
+		/**
+		 * Restores the order after the saturation level of an ordered spreader has
+		 * changed.
+		 * 
+		 * @param mmfs the spreader with the new saturation level
+		 */
+		void reposition(final MaxMinFairSpreader mmfs) {
+			final int i = mmfs.saturationSlot;
+			siftDown(i, mmfs);
+			if (heap[i] == mmfs) {
+				siftUp(i, mmfs);
+			}
+		}
+
+		void remove(final MaxMinFairSpreader mmfs) {
+			final int i = mmfs.saturationSlot;
+			final int last = --size;
+			final MaxMinFairSpreader moved = heap[last];
+			heap[last] = null;
+			if (last != i) {
+				siftDown(i, moved);
+				if (heap[i] == moved) {
+					siftUp(i, moved);
+				}
+			}
+			mmfs.saturationSlot = -1;
+		}
+
+		private void siftUp(int k, final MaxMinFairSpreader mmfs) {
+			while (k > 0) {
+				final int parent = (k - 1) >>> 1;
+				final MaxMinFairSpreader p = heap[parent];
+				if (saturationComparator.compare(mmfs, p) >= 0) {
+					break;
+				}
+				heap[k] = p;
+				p.saturationSlot = k;
+				k = parent;
+			}
+			heap[k] = mmfs;
+			mmfs.saturationSlot = k;
+		}
+
+		private void siftDown(int k, final MaxMinFairSpreader mmfs) {
+			final int half = size >>> 1;
+			while (k < half) {
+				int child = 2 * k + 1;
+				MaxMinFairSpreader c = heap[child];
+				final int right = child + 1;
+				if (right < size && saturationComparator.compare(c, heap[right]) > 0) {
+					c = heap[child = right];
+				}
+				if (saturationComparator.compare(mmfs, c) <= 0) {
+					break;
+				}
+				heap[k] = c;
+				c.saturationSlot = k;
+				k = child;
+			}
+			heap[k] = mmfs;
+			mmfs.saturationSlot = k;
+		}
 	}
 
 	/**
@@ -50,6 +50,37 @@ public class MaxMinProvider extends MaxMinFairSpreader {
 		super(initialProcessing);
 	}
 
+	/**
+	 * Switches between the packed and the default storage of the processing
+	 * state of the consumptions offered by this provider. In packed mode, the
+	 * state is kept in parallel primitive arrays (see ConsumptionStore), which
+	 * allows a cache friendly processing loop for providers with thousands of
+	 * consumptions (e.g., a physical machine running many tasks).
+	 *
+	 * <i>NOTE:</i> in packed mode the provider processes its consumptions in
+	 * bulk, thus processSingleConsumption is not called by the provider.
+	 *
+	 * @param packed <i>true</i> if the state of the consumptions should be
+	 *               packed
+	 * @throws IllegalStateException if the provider is processing some
+	 *                               consumptions at the moment
+	 */
+	public void setPackedStorage(final boolean packed) {
+		if (isProcessing()) {
+			throw new IllegalStateException("Cannot change the storage of the consumptions under processing");
+		}
+		packedState = packed ? new ConsumptionStore() : null;
+	}
+
+	/**
+	 * Determines if the provider keeps the state of its consumptions packed.
+	 *
+	 * @return <i>true</i> if the packed storage is in use
+	 */
+	public boolean isPackedStorage() {
+		return packedState != null;
+	}
+
 	/**
 	 * Translates the consumption limit update request to actually changing a
 	 * field in the resource consumption that is related to providers.
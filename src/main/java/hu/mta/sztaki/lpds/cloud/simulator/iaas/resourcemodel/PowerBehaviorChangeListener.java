@@ -27,6 +27,8 @@ package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
 
+import java.io.Serializable;
+
 /**
  * This interface should be implemented in case one would like to observe the
  * power behavior changes of a resource spreader. This is expected to be used in
@@ -35,7 +37,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems, MTA SZTAKI (c) 2014-5"
  * 
  */
-public interface PowerBehaviorChangeListener {
+public interface PowerBehaviorChangeListener extends Serializable {
 	/**
 	 * Until subscribed, this function is called every time when a resource
 	 * spreader switches to a new power state.
@@ -0,0 +1,59 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2014, Gabor Kecskemeti (gkecskem@dps.uibk.ac.at,
+ *   									  kecskemeti.gabor@sztaki.mta.hu)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
+
+import java.io.Serializable;
+
+/**
+ * This interface should be implemented in case one would like to observe the
+ * points in time where the processing rate of a resource spreader might
+ * change. Between two such points the spreader processes its consumptions with
+ * a constant rate, thus its total processed value grows linearly. This is
+ * expected to be used by event driven energy meters.
+ * 
+ * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems, MTA SZTAKI (c) 2014-5"
+ * 
+ */
+public interface ProcessingRateChangeListener extends Serializable {
+	/**
+	 * Until subscribed, this function is called every time the influence group
+	 * of the resource spreader is about to reschedule its consumptions. At the
+	 * time of the call the spreader is already processed until the time instance
+	 * of the call, but its new processing rate is not yet known.
+	 * 
+	 * <i>Note:</i> the call is made during the processing of the influence
+	 * group, thus the listener should not register or cancel consumptions. The
+	 * total processed value of the spreader should be queried with
+	 * ResourceSpreader.getTotalProcessed(long) as that does not initiate any
+	 * processing.
+	 * 
+	 * @param onSpreader
+	 *            the resource spreader which might change its processing rate
+	 * @param when
+	 *            the time instance until which the spreader is processed
+	 */
+	void rateChanges(final ResourceSpreader onSpreader, final long when);
+}
@@ -26,8 +26,10 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.function.BooleanSupplier;
+import java.util.List;
 
 /**
  * This class is part of the unified resource consumption model of DISSECT-CF.
@@ -53,7 +55,7 @@ import java.util.function.BooleanSupplier;
  *         of Innsbruck (c) 2013"
  * 
  */
-public class ResourceConsumption {
+public class ResourceConsumption implements Serializable {
 
 	/**
 	 * This comparator class provides a simple comparison tool for two resource
@@ -61,8 +63,8 @@ public class ResourceConsumption {
 	 */
 	public static final Comparator<ResourceConsumption> limitComparator = (final ResourceConsumption o1,
 			final ResourceConsumption o2) -> {
-		final double upOth = o1.realLimit;
-		final double upThis = o2.realLimit;
+		final double upOth = o1.getRealLimit();
+		final double upThis = o2.getRealLimit();
 		return Double.compare(upOth, upThis);
 	};
 
@@ -82,7 +84,7 @@ public class ResourceConsumption {
 	 *         of Innsbruck (c) 2013"
 	 * 
 	 */
-	public interface ConsumptionEvent {
+	public interface ConsumptionEvent extends Serializable {
 		/**
 		 * This function is called when the resource consumption represented by the
 		 * ResourceConsumption object is fulfilled
@@ -178,13 +180,13 @@ public class ResourceConsumption {
 	 */
 	boolean unassigned;
 	/**
-	 * A helper field to show if the consumer/providerLimit fields are under update
-	 * by MaxMinFairSpreader.assignProcessingPower()
+	 * A helper field to show if the particular resource consumption is taking
+	 * part in the ongoing reassignment of processing limits.
 	 * 
 	 * <i>WARNING:</i> this is necessary for the internal behavior of
 	 * MaxMinFairSpreader
 	 */
-	boolean inassginmentprocess;
+	boolean underReschedule;
 
 	/**
 	 * Added for live migration memDirtyingRate: percentage of memory dirtied
@@ -226,10 +228,63 @@ public class ResourceConsumption {
 	 * mechanism.
 	 */
 	private boolean registered = false;
+	/**
+	 * The number of spreaders that currently list this consumption in their
+	 * toProcess arrays. Once it drops to 0, the consumption no longer connects
+	 * its provider and consumer in their influence group.
+	 */
+	int listedAt = 0;
+	/**
+	 * The position of this consumption in the toProcess or underAddition list
+	 * of its provider (-1 if it is in neither of them), see ResourceSpreader.
+	 */
+	int providerSlot = -1;
+	/**
+	 * The position of this consumption in the underRemoval list of its provider
+	 * (-1 if it is not scheduled for removal there).
+	 */
+	int providerRemovalSlot = -1;
+	/**
+	 * The position of this consumption in the toProcess or underAddition list
+	 * of its consumer (-1 if it is in neither of them).
+	 */
+	int consumerSlot = -1;
+	/**
+	 * The position of this consumption in the underRemoval list of its consumer
+	 * (-1 if it is not scheduled for removal there).
+	 */
+	int consumerRemovalSlot = -1;
+	/**
+	 * The time instance at which this consumption is expected to complete with
+	 * its current real limit, see CompletionIndex.
+	 */
+	long projectedCompletion;
+	/**
+	 * The position of this consumption in the completion index of its influence
+	 * group (-1 if it is not indexed).
+	 */
+	int completionIndex = -1;
+	/**
+	 * The packed storage holding the processing state (i.e., underProcessing,
+	 * toBeProcessed, realLimit, halfRealLimit and completionDistance) of this
+	 * consumption. If null, the state is kept in the fields of this object.
+	 */
+	ConsumptionStore store = null;
+	/**
+	 * The position of this consumption's state in its packed storage
+	 */
+	int slot;
 	/**
 	 * shows if the consumption event was already sent out to the listener
 	 */
 	private boolean eventNotFired = true;
+	/**
+	 * The number of identical consumptions this object stands for (see
+	 * CoalescedConsumption). The processing state and the limits of the object
+	 * always refer to a single member of the group, while the spreaders account
+	 * for the processing of all members.
+	 */
+	final int multiplicity;
 
 	/**
 	 * This constructor describes the basic properties of an individual resource
@@ -257,6 +312,25 @@ public class ResourceConsumption {
 	 */
 	public ResourceConsumption(final double total, final double limit, final ResourceSpreader consumer,
 			final ResourceSpreader provider, final ConsumptionEvent e) {
+		this(total, limit, consumer, provider, e, 1);
+	}
+
+	/**
+	 * Describes a consumption that stands for several identical resource
+	 * consumptions between the same consumer and provider (see
+	 * CoalescedConsumption).
+	 * 
+	 * @param total        The amount of processing to be done by each member of
+	 *                     the group
+	 * @param limit        the maximum amount of processing allowable for each
+	 *                     member
+	 * @param consumer     see the other constructor
+	 * @param provider     see the other constructor
+	 * @param e            the event to be fired when all members complete
+	 * @param multiplicity the number of members in the group
+	 */
+	protected ResourceConsumption(final double total, final double limit, final ResourceSpreader consumer,
+			final ResourceSpreader provider, final ConsumptionEvent e, final int multiplicity) {
 		underProcessing = 0;
 		toBeProcessed = total;
 		this.consumer = consumer;
@@ -265,9 +339,12 @@ public class ResourceConsumption {
 			throw new IllegalStateException("Cannot create a consumption without an event to be fired");
 		} else if (total < 0 || limit < 0) {
 			throw new IllegalArgumentException("Cannot create negative consumptions");
+		} else if (multiplicity < 1) {
+			throw new IllegalArgumentException("A consumption must stand for at least one consumption");
 		}
 		ev = e;
 		requestedLimit = limit;
+		this.multiplicity = multiplicity;
 	}
 
 	/**
@@ -324,6 +401,44 @@ public class ResourceConsumption {
 		return false;
 	}
 
+	/**
+	 * Registers several resource consumptions at once. The outcome for each
+	 * consumption is the same as if registerConsumption was called on it, but
+	 * the resource spreaders receive the consumptions in bulk and their
+	 * influence groups are nudged only once per provider/consumer pair. This
+	 * is useful when many consumptions start at the same time instance (e.g.,
+	 * several tasks of a VM).
+	 * 
+	 * @param consumptions the consumptions to be registered
+	 * @return for each consumption (in the order of the list) whether its
+	 *         registration was successful (see registerConsumption)
+	 */
+	public static boolean[] registerAll(final List<ResourceConsumption> consumptions) {
+		final boolean[] results = new boolean[consumptions.size()];
+		final ArrayList<ResourceConsumption> accepted = new ArrayList<>(consumptions.size());
+		int i = 0;
+		for (final ResourceConsumption con : consumptions) {
+			if (!con.registered) {
+				if (con.getUnProcessed() == 0) {
+					results[i] = con.fireCompleteEvent();
+				} else if (con.resumable && con.provider != null && con.consumer != null) {
+					con.updateHardLimit();
+					if (ResourceSpreader.isRegistrable(con)) {
+						// Marked early so duplicates in the list are not accepted twice
+						con.registered = true;
+						accepted.add(con);
+						results[i] = true;
+					}
+				}
+			}
+			i++;
+		}
+		if (!accepted.isEmpty()) {
+			ResourceSpreader.registerConsumptions(accepted);
+		}
+		return results;
+	}
+
 	/**
 	 * Returns the amount of processing still remaining in this resource
 	 * consumption.
@@ -331,6 +446,9 @@ public class ResourceConsumption {
 	 * @return the remaining processing
 	 */
 	public double getUnProcessed() {
+		if (store != null) {
+			return store.underProcessing[slot] + store.toBeProcessed[slot];
+		}
 		return underProcessing + toBeProcessed;
 	}
 
@@ -398,7 +516,11 @@ public class ResourceConsumption {
 	 * limit is updated or when the amount of unprocessed consumption changes.
 	 */
 	private void calcCompletionDistance() {
-		completionDistance = Math.round(getUnProcessed() / realLimit);
+		if (store != null) {
+			store.calcCompletionDistance(slot);
+		} else {
+			completionDistance = Math.round(getUnProcessed() / realLimit);
+		}
 	}
 
 	/**
@@ -424,6 +546,9 @@ public class ResourceConsumption {
 	 *         their absolute value still represent the amount of offered resources.
 	 */
 	double doProviderProcessing(final long ticksPassed) {
+		if (store != null) {
+			return store.doProviderProcessing(slot, ticksPassed);
+		}
 		double processed = 0;
 		if (toBeProcessed > 0) {
 			final double possiblePush = ticksPassed * realLimit;
@@ -464,6 +589,9 @@ public class ResourceConsumption {
 	 *         resources.
 	 */
 	double doConsumerProcessing(final long ticksPassed) {
+		if (store != null) {
+			return store.doConsumerProcessing(slot, ticksPassed);
+		}
 		double processed = 0;
 		if (underProcessing > 0) {
 			final double possibleProcessing = ticksPassed * realLimit;
@@ -480,6 +608,16 @@ public class ResourceConsumption {
 		return processed;
 	}
 
+	/**
+	 * Determines how many identical consumptions are represented by this object.
+	 * 
+	 * @return 1 for ordinary consumptions, the number of members for coalesced
+	 *         ones
+	 */
+	public int getMultiplicity() {
+		return multiplicity;
+	}
+
 	/**
 	 * Determines the amount of processing for which no resources were offered from
 	 * the provider so far.
@@ -487,7 +625,7 @@ public class ResourceConsumption {
 	 * @return the tobeprocessed value
 	 */
 	public double getToBeProcessed() {
-		return toBeProcessed;
+		return store == null ? toBeProcessed : store.toBeProcessed[slot];
 	}
 
 	/**
@@ -497,7 +635,7 @@ public class ResourceConsumption {
 	 * @return the underprocessing value
 	 */
 	public double getUnderProcessing() {
-		return underProcessing;
+		return store == null ? underProcessing : store.underProcessing[slot];
 	}
 
 	/**
@@ -514,7 +652,7 @@ public class ResourceConsumption {
 	 * the value last set by the scheduler)
 	 */
 	public double getRealLimit() {
-		return realLimit;
+		return store == null ? realLimit : store.realLimit[slot];
 	}
 
 	/**
@@ -524,7 +662,7 @@ public class ResourceConsumption {
 	 * the value that is derived from the real limit last set by the scheduler.
 	 */
 	public long getCompletionDistance() {
-		return completionDistance;
+		return store == null ? completionDistance : store.completionDistance[slot];
 	}
 
 	/**
@@ -555,8 +693,42 @@ public class ResourceConsumption {
 	 * @param rL the value to be set as real limit
 	 */
 	private void setRealLimit(final double rL) {
-		realLimit = rL;
-		halfRealLimit = rL / 2;
+		if (store != null) {
+			store.realLimit[slot] = rL;
+			store.halfRealLimit[slot] = rL / 2;
+		} else {
+			realLimit = rL;
+			halfRealLimit = rL / 2;
+		}
+	}
+
+	/**
+	 * Moves the processing state of this consumption to a packed storage.
+	 * 
+	 * @param into the storage that will hold the state from now on
+	 * @param at   the slot reserved for this consumption in the storage
+	 */
+	void pack(final ConsumptionStore into, final int at) {
+		into.underProcessing[at] = underProcessing;
+		into.toBeProcessed[at] = toBeProcessed;
+		into.realLimit[at] = realLimit;
+		into.halfRealLimit[at] = halfRealLimit;
+		into.completionDistance[at] = completionDistance;
+		store = into;
+		slot = at;
+	}
+
+	/**
+	 * Takes back the processing state of this consumption from its packed
+	 * storage.
+	 */
+	void unpack() {
+		underProcessing = store.underProcessing[slot];
+		toBeProcessed = store.toBeProcessed[slot];
+		realLimit = store.realLimit[slot];
+		halfRealLimit = store.halfRealLimit[slot];
+		completionDistance = store.completionDistance[slot];
+		store = null;
 	}
 
 	/**
@@ -587,7 +759,7 @@ public class ResourceConsumption {
 		if (updateCD) {
 			calcCompletionDistance();
 		}
-		return realLimit;
+		return rlTrial;
 	}
 
 	/**
@@ -646,7 +818,7 @@ public class ResourceConsumption {
 	 */
 	@Override
 	public String toString() {
-		return "RC(C:" + underProcessing + " T:" + toBeProcessed + " L:" + realLimit + ")";
+		return "RC(C:" + getUnderProcessing() + " T:" + getToBeProcessed() + " L:" + getRealLimit() + ")";
 	}
 
 	/**
@@ -685,7 +857,12 @@ public class ResourceConsumption {
 	 * @return false if the event was not sent
 	 */
 	boolean fireCompleteEvent() {
-		return fireEvent(() -> getUnProcessed()==0, ev::conComplete);
+		if (eventNotFired && getUnProcessed() == 0) {
+			eventNotFired = false;
+			ev.conComplete();
+			return true;
+		}
+		return false;
 	}
 
 	/**
@@ -694,20 +871,15 @@ public class ResourceConsumption {
 	 * @return false if the event was not sent
 	 */
 	void fireCancelEvent() {
-		fireEvent(() -> true, () -> ev.conCancelled(this));
-	}
-
-	private boolean fireEvent(BooleanSupplier condition, Runnable action) {
-		if (eventNotFired && condition.getAsBoolean()) {
+		if (eventNotFired) {
 			eventNotFired = false;
-			action.run();
-			return true;
+			ev.conCancelled(this);
 		}
-		return false;
 	}
 
 	void resetForFreqUpdate() {
 		limithelper=0;
 		unassigned=true;
+		underReschedule=true;
 	}
 }
@@ -25,18 +25,20 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.statenotifications.PowerStateChangeNotificationHandler;
 import hu.mta.sztaki.lpds.cloud.simulator.notifications.StateDependentEventHandler;
-import hu.mta.sztaki.lpds.cloud.simulator.util.ArrayHandler;
 
 /**
  * This class is part of the unified resource consumption model of DISSECT-CF.
@@ -56,7 +58,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.util.ArrayHandler;
  *         Distributed Systems, MTA SZTAKI (c) 2012"
  * 
  */
-public abstract class ResourceSpreader {
+public abstract class ResourceSpreader implements Serializable {
 
 	// These final variables define the base behavior of the class:
 	/**
@@ -73,6 +75,11 @@ public abstract class ResourceSpreader {
 	/**
 	 * The array of consumption objects that will share the processing power of this
 	 * spreader. The order is not guaranteed!
+	 * 
+	 * The consumptions remember their positions in this list, as well as in the
+	 * underAddition and underRemoval lists (see the slot fields of
+	 * ResourceConsumption). This allows their removal from any of the lists in
+	 * constant time.
 	 */
 	final ArrayList<ResourceConsumption> toProcess = new ArrayList<>();
 	/**
@@ -113,6 +120,12 @@ public abstract class ResourceSpreader {
 	 * related events.
 	 */
 	private StateDependentEventHandler<PowerBehaviorChangeListener, Pair<ResourceSpreader, PowerState>> powerBehaviorListenerManager;
+	/**
+	 * The listeners interested in the points in time where the processing rate
+	 * of this spreader might change. Null until the first subscription so
+	 * spreaders nobody observes do not pay for the notifications.
+	 */
+	private ArrayList<ProcessingRateChangeListener> rateListeners = null;
 
 	/**
 	 * The last time there were some processing operations done by this object. The
@@ -125,10 +138,40 @@ public abstract class ResourceSpreader {
 	 */
 	private double totalProcessed = 0;
 	/**
-	 * A helper field that allows the rapid discovery of influence groups by the
-	 * group's freq syncer object
+	 * The number of consumptions this spreader has already dropped from its
+	 * toProcess array while their counterparts still list them. Until it returns
+	 * to 0, the freq syncer cannot tell if the spreader is disconnected from the
+	 * rest of its influence group.
+	 */
+	int danglingConsumptions = 0;
+	/**
+	 * The position of this spreader in the member list of its influence group
+	 * (see FreqSyncer.myDepGroup), -1 if it is not listed in any group.
+	 */
+	int groupSlot = -1;
+	/**
+	 * The connectivity search that last visited this spreader and the round of
+	 * that search (see FreqSyncer.ComponentSearch). Only meaningful while the
+	 * influence group is checked for its disconnected parts.
+	 */
+	transient FreqSyncer.ComponentSearch searchedBy;
+	transient long searchRound;
+	/**
+	 * The packed storage of the processing state of the consumptions in the
+	 * toProcess array. If null, the consumptions keep their state themselves.
+	 * Only providers can pack the state of their consumptions (see
+	 * MaxMinProvider.setPackedStorage).
+	 */
+	ConsumptionStore packedState = null;
+	/**
+	 * The sum of the real limits of the consumptions processed by this spreader
+	 * (see getTotalProcessed(long)). It is valid as long as the spreader is in
+	 * the influence group of rateSyncer and that group had rateUpdate frequency
+	 * updates.
 	 */
-	boolean stillInDepGroup;
+	private transient double processingRate;
+	private transient FreqSyncer rateSyncer;
+	private transient long rateUpdate;
 
 	/**
 	 * This constructor just saves the processing power that can be spread in every
@@ -148,6 +191,10 @@ public abstract class ResourceSpreader {
 	 * @return the object representing this spreader's influence group.
 	 */
 	public final FreqSyncer getSyncer() {
+		if (mySyncer != null) {
+			// The group might have been merged into another one since we last looked
+			mySyncer = mySyncer.resolve();
+		}
 		return mySyncer;
 	}
 
@@ -170,13 +217,31 @@ public abstract class ResourceSpreader {
 	 */
 	protected final void removeTheseConsumptions(final Stream<ResourceConsumption> conList) {
 		var removalCount = conList.filter(rem -> {
-			if (!underRemoval.contains(rem)) {
-				underRemoval.add(rem);
-			}
-			ArrayHandler.removeAndReplaceWithLast(underAddition, rem);
+			scheduleRemoval(rem);
 			return true;
 		}).count();
-		if (removalCount > 0 && mySyncer != null) {
+		if (removalCount > 0) {
+			nudgeAfterRemovals();
+		}
+	}
+
+	/**
+	 * Lists a consumption in the underRemoval list unless it is already there.
+	 * The influence group must be nudged once all removals are scheduled (see
+	 * nudgeAfterRemovals).
+	 * 
+	 * @param rem the consumption that must be dropped
+	 */
+	private void scheduleRemoval(final ResourceConsumption rem) {
+		if (removalSlot(rem) < 0) {
+			setRemovalSlot(rem, underRemoval.size());
+			underRemoval.add(rem);
+		}
+		removeListed(underAddition, rem);
+	}
+
+	private void nudgeAfterRemovals() {
+		if (getSyncer() != null) {
 			mySyncer.nudge();
 		}
 	}
@@ -204,24 +269,173 @@ public abstract class ResourceSpreader {
 	static boolean registerConsumption(final ResourceConsumption con) {
 		var provider = con.getProvider();
 		var consumer = con.getConsumer();
-		if (con.isRegistered() || !(provider.isAcceptableConsumption(con) && consumer.isAcceptableConsumption(con))) {
+		if (!isRegistrable(con)) {
 			return false;
 		}
 		// ResourceConsumption synchronization
-		Stream.of(provider,consumer).forEach(rs -> {
-			ArrayHandler.removeAndReplaceWithLast(rs.underRemoval, con);
-			rs.underAddition.add(con);
-		});
+		provider.relist(con);
+		consumer.relist(con);
 		nudgeSyncers(provider,consumer);
 		return true;
 	}
 
+	/**
+	 * Determines if a consumption can be registered to its provider and consumer.
+	 * 
+	 * @param con the consumption to check
+	 * @return <i>true</i> if the consumption is not yet registered and both of
+	 *         its spreaders accept it
+	 */
+	static boolean isRegistrable(final ResourceConsumption con) {
+		return !con.isRegistered() && con.getProvider().isAcceptableConsumption(con)
+				&& con.getConsumer().isAcceptableConsumption(con);
+	}
+
+	/**
+	 * Registers several consumptions at once. The consumptions are grouped by
+	 * their provider/consumer pairs, every pair receives its consumptions in a
+	 * single step and the influence groups of the pair are only nudged once.
+	 * 
+	 * WARNING: This function should not be called by anyone else but the bulk
+	 * registration function of the resource consumption! The consumptions must
+	 * be checked with isRegistrable beforehand.
+	 * 
+	 * @param cons the consumptions to be registered
+	 */
+	static void registerConsumptions(final List<ResourceConsumption> cons) {
+		final var byPair = new LinkedHashMap<Pair<ResourceSpreader, ResourceSpreader>, ArrayList<ResourceConsumption>>();
+		cons.forEach(con -> byPair.computeIfAbsent(Pair.of(con.getProvider(), con.getConsumer()), pair -> new ArrayList<>())
+				.add(con));
+		byPair.forEach((pair, pairCons) -> {
+			for (final ResourceSpreader rs : new ResourceSpreader[] { pair.getLeft(), pair.getRight() }) {
+				rs.underAddition.ensureCapacity(rs.underAddition.size() + pairCons.size());
+				pairCons.forEach(rs::relist);
+			}
+			nudgeSyncers(pair.getLeft(), pair.getRight());
+		});
+	}
+
+	/**
+	 * Determines the position of a consumption in the toProcess or underAddition
+	 * list of this spreader.
+	 * 
+	 * @param con the consumption of this spreader
+	 * @return the position, or -1 if the consumption is in neither of the lists
+	 */
+	private int listSlot(final ResourceConsumption con) {
+		return spreaderType() == FreqSyncer.DepKind.PROVIDER ? con.providerSlot : con.consumerSlot;
+	}
+
+	private void setListSlot(final ResourceConsumption con, final int slot) {
+		if (spreaderType() == FreqSyncer.DepKind.PROVIDER) {
+			con.providerSlot = slot;
+		} else {
+			con.consumerSlot = slot;
+		}
+	}
+
+	/**
+	 * Determines the position of a consumption in the underRemoval list of this
+	 * spreader.
+	 * 
+	 * @param con the consumption of this spreader
+	 * @return the position, or -1 if the consumption is not under removal
+	 */
+	private int removalSlot(final ResourceConsumption con) {
+		return spreaderType() == FreqSyncer.DepKind.PROVIDER ? con.providerRemovalSlot : con.consumerRemovalSlot;
+	}
+
+	private void setRemovalSlot(final ResourceConsumption con, final int slot) {
+		if (spreaderType() == FreqSyncer.DepKind.PROVIDER) {
+			con.providerRemovalSlot = slot;
+		} else {
+			con.consumerRemovalSlot = slot;
+		}
+	}
+
+	/**
+	 * Appends a consumption to the toProcess or underAddition list of this
+	 * spreader and records its position.
+	 * 
+	 * @param list the list to append to
+	 * @param con  the consumption to be listed
+	 */
+	private void addListed(final ArrayList<ResourceConsumption> list, final ResourceConsumption con) {
+		setListSlot(con, list.size());
+		list.add(con);
+	}
+
+	/**
+	 * Removes a consumption from the toProcess or underAddition list of this
+	 * spreader in constant time. The last item of the list takes the place of the
+	 * removed consumption.
+	 * 
+	 * @param list the list to remove from
+	 * @param con  the consumption to be removed
+	 * @return <i>true</i> if the consumption was in the list
+	 */
+	private boolean removeListed(final ArrayList<ResourceConsumption> list, final ResourceConsumption con) {
+		if (!isListed(list, con)) {
+			return false;
+		}
+		final int slot = listSlot(con);
+		final ResourceConsumption last = list.remove(list.size() - 1);
+		if (last != con) {
+			list.set(slot, last);
+			setListSlot(last, slot);
+		}
+		setListSlot(con, -1);
+		return true;
+	}
+
+	/**
+	 * Checks in constant time if a consumption is in the toProcess or
+	 * underAddition list of this spreader.
+	 * 
+	 * @param list the list to check
+	 * @param con  the consumption to look for
+	 * @return <i>true</i> if the consumption is in the list
+	 */
+	private boolean isListed(final ArrayList<ResourceConsumption> list, final ResourceConsumption con) {
+		final int slot = listSlot(con);
+		return slot >= 0 && slot < list.size() && list.get(slot) == con;
+	}
+
+	/**
+	 * Lists a newly registered consumption for addition. If the consumption is
+	 * registered again in the same time instance it was suspended in, then it
+	 * is taken back from the underRemoval list instead, and if it is still
+	 * processed here, it is not added for a second time.
+	 * 
+	 * @param con the consumption just registered
+	 */
+	private void relist(final ResourceConsumption con) {
+		final int slot = removalSlot(con);
+		if (slot >= 0) {
+			final ResourceConsumption last = underRemoval.remove(underRemoval.size() - 1);
+			if (last != con) {
+				underRemoval.set(slot, last);
+				setRemovalSlot(last, slot);
+			}
+			setRemovalSlot(con, -1);
+			if (isListed(toProcess, con)) {
+				return;
+			}
+		}
+		addListed(underAddition, con);
+	}
+
 	private static void nudgeSyncers(ResourceSpreader provider, ResourceSpreader consumer) {
-		var nudgedCount = Stream.of(provider, consumer).filter(rs -> rs.mySyncer != null).mapToInt(rs -> {
-			rs.mySyncer.nudge();
-			return 1;
-		}).sum();
-		if (nudgedCount == 0) {
+		boolean nudged = false;
+		if (provider.getSyncer() != null) {
+			provider.mySyncer.nudge();
+			nudged = true;
+		}
+		if (consumer.getSyncer() != null) {
+			consumer.mySyncer.nudge();
+			nudged = true;
+		}
+		if (!nudged) {
 			// We just form our new influence group
 			new FreqSyncer(provider, consumer).nudge();
 		}
@@ -256,7 +470,10 @@ public abstract class ResourceSpreader {
 	 *            consumer/provider pair.
 	 */
 	static void cancelConsumption(final ResourceConsumption con) {
-		Stream.of(con.getProvider(), con.getConsumer()).forEach(rs -> rs.removeTheseConsumptions(Stream.of(con)));
+		for (final ResourceSpreader rs : new ResourceSpreader[] { con.getProvider(), con.getConsumer() }) {
+			rs.scheduleRemoval(con);
+			rs.nudgeAfterRemovals();
+		}
 	}
 
 	/**
@@ -275,16 +492,34 @@ public abstract class ResourceSpreader {
 	 *                         place.
 	 */
 	void doProcessing(final long currentFireCount) {
-		if (currentFireCount == lastNotifTime && mySyncer.isRegularFreqMode()) {
+		if (currentFireCount == lastNotifTime && getSyncer().isRegularFreqMode()) {
 			return;
 		}
 		var ticksPassed = currentFireCount - lastNotifTime;
-		removeTheseConsumptions(toProcess.stream().filter(con -> {
-					final double processed = processSingleConsumption(con, ticksPassed);
-					totalProcessed += Math.abs(processed);
-					return processed < 0;
+		boolean completions = false;
+		if (packedState == null) {
+			for (int i = 0; i < toProcess.size(); i++) {
+				final ResourceConsumption con = toProcess.get(i);
+				final double processed = processSingleConsumption(con, ticksPassed);
+				totalProcessed += Math.abs(processed) * con.multiplicity;
+				if (processed < 0) {
+					scheduleRemoval(con);
+					completions = true;
 				}
-		));
+			}
+		} else {
+			// The packed state is processed in a single pass over its arrays
+			final ArrayList<ResourceConsumption> completed = packedState.completed;
+			totalProcessed += packedState.doProviderProcessing(ticksPassed, completed);
+			for (int i = 0; i < completed.size(); i++) {
+				scheduleRemoval(completed.get(i));
+			}
+			completions = !completed.isEmpty();
+			completed.clear();
+		}
+		if (completions) {
+			nudgeAfterRemovals();
+		}
 		lastNotifTime = currentFireCount;
 	}
 
@@ -352,9 +587,11 @@ public abstract class ResourceSpreader {
 	 * present resource consumption objects) by this resource spreader object at the
 	 * time instance this call is made.
 	 * 
-	 * <i>WARNING:</i> this operation could be rather expensive to call as it first
-	 * has to ensure all consumption processing is done before the query to the
-	 * totalProcessed field can be actually accomplished.
+	 * Consumers first need all providers of their influence group to be processed.
+	 * The group is processed at most once per time instance (see
+	 * FreqSyncer.processGroup), thus when several members of the same group are
+	 * queried in a single time instance only the first query pays for the
+	 * processing of the group, the rest are answered in constant time.
 	 * 
 	 * @return the amount of processing done so far. The unit of the processed value
 	 *         is application specific here it is not relevant. For example if this
@@ -362,18 +599,53 @@ public abstract class ResourceSpreader {
 	 *         of instructions executed so far by the PM.
 	 */
 	public double getTotalProcessed() {
-		if (mySyncer != null) {
+		if (getSyncer() != null) {
 			var currTime = Timed.getFireCount();
 			if (isConsumer()) {
 				// We first have to make sure the providers provide the
 				// stuff that this consumer might need
-				mySyncer.getCompleteDGStream().forEach(c -> c.doProcessing(currTime));
+				mySyncer.processGroup(currTime);
 			}
 			doProcessing(currTime);
 		}
 		return totalProcessed;
 	}
 
+	/**
+	 * Estimates the total amount of resources processed by this resource spreader
+	 * until a particular time instance without processing any consumptions. The
+	 * estimate assumes that the consumptions of the spreader keep their current
+	 * real limits since the spreader was last processed. This holds until the
+	 * next event of the influence group, so for time instances before that event
+	 * the estimate only differs from getTotalProcessed by the rounding done when
+	 * a consumption completes.
+	 * 
+	 * The sum of the real limits is calculated once after every frequency update
+	 * of the influence group, the estimates are constant time afterwards.
+	 * 
+	 * @param time the time instance for which the processing is estimated, it is
+	 *             not expected to be earlier than the last processing of the
+	 *             spreader
+	 * @return the estimated amount of processing done until the time instance
+	 */
+	public double getTotalProcessed(final long time) {
+		final FreqSyncer syncer = getSyncer();
+		if (syncer == null) {
+			return totalProcessed;
+		}
+		if (rateSyncer != syncer || rateUpdate != syncer.frequencyUpdates) {
+			double rate = 0;
+			for (int i = 0; i < toProcess.size(); i++) {
+				final ResourceConsumption con = toProcess.get(i);
+				rate += con.getRealLimit() * con.multiplicity;
+			}
+			processingRate = rate;
+			rateSyncer = syncer;
+			rateUpdate = syncer.frequencyUpdates;
+		}
+		return totalProcessed + processingRate * (time - lastNotifTime);
+	}
+
 	/**
 	 * Determines the current processing power of this resource spreader
 	 * 
@@ -463,6 +735,51 @@ public abstract class ResourceSpreader {
 		powerBehaviorListenerManager.unsubscribeFromEvents(pbcl);
 	}
 
+	/**
+	 * allows interested parties to receive a notification every time the
+	 * processing rate of this spreader might change (see
+	 * ProcessingRateChangeListener).
+	 * 
+	 * @param prcl the new listener object
+	 */
+	public void subscribeProcessingRateChangeEvents(final ProcessingRateChangeListener prcl) {
+		if (rateListeners == null) {
+			rateListeners = new ArrayList<>();
+		}
+		rateListeners.add(prcl);
+	}
+
+	/**
+	 * cancels the reception of processing rate change notifications for a
+	 * listener object.
+	 * 
+	 * @param prcl the old listener object
+	 */
+	public void unsubscribeProcessingRateChangeEvents(final ProcessingRateChangeListener prcl) {
+		if (rateListeners != null) {
+			rateListeners.remove(prcl);
+			if (rateListeners.isEmpty()) {
+				rateListeners = null;
+			}
+		}
+	}
+
+	/**
+	 * Notifies the rate change listeners of this spreader. Called by the
+	 * influence group right before it reschedules its consumptions. The
+	 * listeners are notified in reverse order so they can unsubscribe
+	 * themselves during the notification.
+	 * 
+	 * @param when the time instance until which the spreader is processed
+	 */
+	void notifyRateChange(final long when) {
+		if (rateListeners != null) {
+			for (int i = rateListeners.size() - 1; i >= 0 && rateListeners != null; i--) {
+				rateListeners.get(i).rateChanges(this, when);
+			}
+		}
+	}
+
 	/**
 	 * Provides a nice formatted single line representation of the spreader. It
 	 * lists the currently processed resource consumptions and the power behavior as
@@ -474,32 +791,13 @@ public abstract class ResourceSpreader {
 				+ (currentPowerBehavior == null ? "-" : currentPowerBehavior.toString()) + ")";
 	}
 
-	/**
-	 * A continuously increasing simple hash value to be used by the next resource
-	 * spreader object created
-	 */
-	static int hashCounter = 0;
 	/**
 	 * The hashcode of the actual resource spreader to be used in java's built-in
-	 * hashCode function
+	 * hashCode function. Hash codes are handed out by the simulation context so
+	 * the iteration order of hash based collections is reproducible even if
+	 * several simulations run in parallel.
 	 */
-	private final int myHashCode = getHashandIncCounter();
-
-	/**
-	 * Manages the increment of the hashCounter and offers the latest hash code for
-	 * new objects
-	 * 
-	 * <i>WARNING:</i> as this function does not check if a hash value is already
-	 * given or not there might be hash collisions if there are so many resource
-	 * spreaders created that the hashcounter overflows.
-	 * 
-	 * @return the hash code to be used by the newest object
-	 */
-	static int getHashandIncCounter() {
-		// FIXME
-		// WARNING: some possible hash collisions!
-		return hashCounter++;
-	}
+	private final int myHashCode = SimulationContext.current().getHashAndIncCounter();
 
 	/**
 	 * Returns the constant hashcode that was generated for this object during its
@@ -517,27 +815,85 @@ public abstract class ResourceSpreader {
 	/**
 	 * Making sure we send out the necessary notifications on removing the consumptions from the spreader's
 	 * responsibility
+	 * @param detached collects the consumptions that are no longer listed by either of their spreaders
 	 * @return if there were any removals actually done
 	 */
-	boolean handleRemovals() {
+	boolean handleRemovals(final List<ResourceConsumption> detached) {
+		if (underRemoval.isEmpty()) {
+			return false;
+		}
 		// managing removals
-		underRemoval.forEach(con -> {
-			ArrayHandler.removeAndReplaceWithLast(toProcess, con);
+		for (int i = 0; i < underRemoval.size(); i++) {
+			final ResourceConsumption con = underRemoval.get(i);
+			setRemovalSlot(con, -1);
+			if (removeListed(toProcess, con)) {
+				if (--con.listedAt == 0) {
+					// The counterpart dropped it earlier
+					getCounterPart(con).danglingConsumptions--;
+					detached.add(con);
+				} else {
+					danglingConsumptions++;
+				}
+				if (spreaderType() == FreqSyncer.DepKind.PROVIDER) {
+					getSyncer().completions.remove(con);
+				}
+				if (packedState != null) {
+					packedState.detach(con);
+				}
+				consumptionDropped(con);
+			}
 			manageRemoval(con);
-		});
-		var didRemovals=underRemoval.size()!=0;
+		}
 		underRemoval.clear();
-		return didRemovals;
+		return true;
 	}
 
 	boolean handleAdditions(long fires) {
 		if (toProcess.size() == 0) {
 			lastNotifTime = fires;
 		}
-		var added = underAddition.stream().filter(con -> getSyncer().ensureDepGroupHasCounterPart(getCounterPart(con))).count();
-		toProcess.addAll(underAddition);
+		if (underAddition.isEmpty()) {
+			return false;
+		}
+		boolean added = false;
+		toProcess.ensureCapacity(toProcess.size() + underAddition.size());
+		for (int i = 0; i < underAddition.size(); i++) {
+			final ResourceConsumption con = underAddition.get(i);
+			added |= getSyncer().ensureDepGroupHasCounterPart(getCounterPart(con));
+			con.listedAt++;
+			if (packedState != null) {
+				packedState.attach(con);
+			}
+			if (spreaderType() == FreqSyncer.DepKind.PROVIDER) {
+				mySyncer.projectCompletion(con);
+			}
+			consumptionAdded(con);
+		}
+		for (int i = 0; i < underAddition.size(); i++) {
+			addListed(toProcess, underAddition.get(i));
+		}
 		underAddition.clear();
-		return added != 0;
+		return added;
+	}
+
+	/**
+	 * Allows the low level schedulers to follow the consumptions that start to be
+	 * processed by this spreader.
+	 * 
+	 * @param con the consumption just added to the toProcess array
+	 */
+	void consumptionAdded(final ResourceConsumption con) {
+		// No action by default
+	}
+
+	/**
+	 * Allows the low level schedulers to follow the consumptions that are no
+	 * longer processed by this spreader.
+	 * 
+	 * @param con the consumption just removed from the toProcess array
+	 */
+	void consumptionDropped(final ResourceConsumption con) {
+		// No action by default
 	}
 
 	public boolean isProcessing() {
@@ -73,7 +73,7 @@ public abstract class IM_PB_Consolidator extends PopulationBasedConsolidator<Inf
 		mutator = new RandomVMassigner() {
 			@Override
 			public boolean shouldUseDifferent() {
-				return PopulationBasedConsolidator.random.nextDoubleFast() < mutationProb;
+				return PopulationBasedConsolidator.random().nextDoubleFast() < mutationProb;
 			}
 		};
 	}
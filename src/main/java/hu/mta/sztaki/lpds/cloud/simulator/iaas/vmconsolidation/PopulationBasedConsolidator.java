@@ -27,6 +27,7 @@ import java.lang.reflect.Field;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmconsolidation.model.GenHelper;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmconsolidation.model.InfrastructureModel;
@@ -55,8 +56,6 @@ public abstract class PopulationBasedConsolidator<T extends InfrastructureModel>
 	/** Population for the GA, consisting of solutions=individuals */
 	protected T[] population;
 	private int popFillIndex;
-	/** For generating random numbers */
-	static public XoShiRo256PlusRandom random;
 	/**
 	 * Controls whether new solutions (created by mutation or recombination) should
 	 * be improved with a local search
@@ -114,13 +113,23 @@ public abstract class PopulationBasedConsolidator<T extends InfrastructureModel>
 		}
 	}
 
+	/**
+	 * For generating random numbers, the generator is kept in the current
+	 * simulation context so parallel simulations do not share it.
+	 * 
+	 * @return the random generator set up by the last processProps call
+	 */
+	public static XoShiRo256PlusRandom random() {
+		return SimulationContext.current().getConsolidationRnd();
+	}
+
 	protected int getPopFillIndex() {
 		return popFillIndex;
 	}
 
 	@Override
 	protected void processProps() {
-		random = new XoShiRo256PlusRandom(Long.parseLong(props.getProperty("seed")));
+		SimulationContext.current().setConsolidationRnd(new XoShiRo256PlusRandom(Long.parseLong(props.getProperty("seed"))));
 		String impClassName = props.getProperty("improver");
 		if (impClassName == null) {
 			if (Boolean.parseBoolean(props.getProperty("doLocalSearch1"))) {
@@ -39,6 +39,6 @@ public class RandomVMassigner implements GenHelper {
 
 	@Override
 	public int whatShouldWeUse(final InfrastructureModel im, final int vm) {
-		return PopulationBasedConsolidator.random.nextInt(im.bins.length);
+		return PopulationBasedConsolidator.random().nextInt(im.bins.length);
 	}
 }
\ No newline at end of file
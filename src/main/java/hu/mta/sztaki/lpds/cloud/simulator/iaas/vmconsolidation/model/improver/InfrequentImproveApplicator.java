@@ -42,7 +42,7 @@ public class InfrequentImproveApplicator extends InfrastructureModel implements
 
 	@Override
 	public void improve(final InfrastructureModel im) {
-		if (PopulationBasedConsolidator.random.nextDoubleFast()<.4) {
+		if (PopulationBasedConsolidator.random().nextDoubleFast()<.4) {
 			base.improve(im);
 		}
 	}
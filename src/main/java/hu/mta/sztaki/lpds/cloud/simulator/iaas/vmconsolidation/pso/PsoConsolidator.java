@@ -96,8 +96,8 @@ public class PsoConsolidator extends PopulationBasedConsolidator<Particle> {
 
 	private void updateSingleParticle(final int index, final int bestIndex) {
 		// step 3 - update velocity
-		population[index].updateVelocity(population[bestIndex], c1 * random.nextDoubleFast(),
-				c2 * random.nextDoubleFast());
+		population[index].updateVelocity(population[bestIndex], c1 * random().nextDoubleFast(),
+				c2 * random().nextDoubleFast());
 		// Logger.getGlobal().info("Particle: " + p.getNumber() + ", new Velocity: " +
 		// newVel);
 		// step 4 - update location
@@ -92,7 +92,7 @@ public class AbcConsolidator extends IM_PB_Consolidator {
 			int popidx;
 			int k;
 			do {
-				popidx = random.nextInt(population.length);
+				popidx = random().nextInt(population.length);
 				// Don't test against something we already tested with before.
 				for (k = 0; k < j && probTestIndexes[k] != popidx; k++)
 					;
@@ -144,7 +144,7 @@ public class AbcConsolidator extends IM_PB_Consolidator {
 		popIdxStream().forEach(this::mutateAndCheck);
 		// onlooker bees phase
 		determineProbabilities();
-		final double rnd = random.nextDoubleFast();
+		final double rnd = random().nextDoubleFast();
 		popIdxStream().filter(j -> rnd < probabilities[j]).forEach(this::mutateAndCheck);
 		// scout bee phase
 		popIdxStream().filter(j -> numTrials[j] >= limitTrials).findFirst().ifPresent(j -> population[j] = new InfrastructureModel(input, RandomVMassigner.globalRandomAssigner, localSearch));
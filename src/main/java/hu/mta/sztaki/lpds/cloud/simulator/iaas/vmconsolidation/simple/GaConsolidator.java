@@ -66,7 +66,7 @@ public class GaConsolidator extends IM_PB_Consolidator {
 	 * replaces that parent in the population, otherwise it is discarded.
 	 */
 	private void crossover() {
-		final long temp = Math.abs(random.nextLong());
+		final long temp = Math.abs(random().nextLong());
 		final int i1 = (int) (temp % population.length);
 		final int i2 = (int) ((temp >> 32) % population.length);
 		final InfrastructureModel s3 = new InfrastructureModel(population[i1], new GenHelper() {
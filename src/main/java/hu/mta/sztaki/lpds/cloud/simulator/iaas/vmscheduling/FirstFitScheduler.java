@@ -69,6 +69,13 @@ public class FirstFitScheduler extends Scheduler {
 	 * handling of the PMs.
 	 */
 	private final PMIterator it;
+	/**
+	 * the index of the free capacities of the running PMs, it allows finding
+	 * the first suitable PM without allocation attempts on all PMs. Only used
+	 * if the iterator follows the order of the running machines list (i.e.,
+	 * derivatives with custom iterators are not using it).
+	 */
+	private final FreeCapacityIndex capacityIndex;
 
 	/**
 	 * the constructor of the scheduler that passes on the parent IaaS service
@@ -79,6 +86,9 @@ public class FirstFitScheduler extends Scheduler {
 	public FirstFitScheduler(IaaSService parent) {
 		super(parent);
 		it = instantiateIterator();
+		// The index must be up to date by the time the scheduler reacts to PM changes
+		capacityIndex = it.getClass() == PMIterator.class ? setUpBeforeScheduler(() -> new FreeCapacityIndex(parent))
+				: null;
 	}
 
 	/**
@@ -118,44 +128,50 @@ public class FirstFitScheduler extends Scheduler {
 			boolean processableRequest = true;
 			while (queue.size() > 0 && processableRequest) {
 				request = queue.peek();
-				currIterator.restart(false);
 				int vmNum = 0;
-				do {
-					processableRequest = false;
+				if (capacityIndex == null) {
+					currIterator.restart(false);
 					do {
-						final PhysicalMachine pm = currIterator.next();
-						if (pm.localDisk.getFreeStorageCapacity() >= request.queuedVMs[vmNum].getVa().size) {
-							try {
-								final ResourceAllocation allocation = pm.allocateResources(request.queuedRC, false,
-										PhysicalMachine.defaultAllocLen);
-								if (allocation != null) {
-									if (allocation.allocated.compareTo(request.queuedRC) >= 0) {
-										// Successful allocation
-										if (pm.freeCapacities.getRequiredCPUs() == 0 && currIterator.hasNext()) {
-											currIterator.next();
-										}
-										currIterator.markLastCollected();
-										ras.add(allocation);
-										processableRequest = true;
-										break;
-									} else {
-										if (raBiggestNotSuitable == null) {
-											raBiggestNotSuitable = allocation;
-										} else if (allocation.allocated.compareTo(raBiggestNotSuitable.allocated) > 0) {
-											raBiggestNotSuitable.cancel();
-											raBiggestNotSuitable = allocation;
+						processableRequest = false;
+						do {
+							final PhysicalMachine pm = currIterator.next();
+							if (pm.localDisk.getFreeStorageCapacity() >= request.queuedVMs[vmNum].getVa().size) {
+								try {
+									final ResourceAllocation allocation = pm.allocateResources(request.queuedRC, false,
+											PhysicalMachine.defaultAllocLen);
+									if (allocation != null) {
+										if (allocation.allocated.compareTo(request.queuedRC) >= 0) {
+											// Successful allocation
+											collectAllocation(pm, allocation, currIterator);
+											processableRequest = true;
+											break;
 										} else {
-											allocation.cancel();
+											if (raBiggestNotSuitable == null) {
+												raBiggestNotSuitable = allocation;
+											} else if (allocation.allocated
+													.compareTo(raBiggestNotSuitable.allocated) > 0) {
+												raBiggestNotSuitable.cancel();
+												raBiggestNotSuitable = allocation;
+											} else {
+												allocation.cancel();
+											}
 										}
 									}
+								} catch (VMManagementException e) {
+									//ignore
 								}
-							} catch (VMManagementException e) {
-								//ignore
 							}
-						}
-					} while (currIterator.hasNext());
-					currIterator.restart(true);
-				} while (++vmNum < request.queuedVMs.length && processableRequest);
+						} while (currIterator.hasNext());
+						currIterator.restart(true);
+					} while (++vmNum < request.queuedVMs.length && processableRequest);
+				} else {
+					vmNum = placeWithIndex(request, currIterator);
+					processableRequest = vmNum == request.queuedVMs.length;
+					if (!processableRequest) {
+						// The complete search would have ended after the unplaceable VM
+						collectBiggestNotSuitable(request, vmNum++);
+					}
+				}
 				if (processableRequest) {
 					try {
 						for (int i = request.queuedVMs.length - 1; i >= 0; i--) {
@@ -189,4 +205,107 @@ public class FirstFitScheduler extends Scheduler {
 		}
 		return returner;
 	}
+
+	/**
+	 * Records a successful allocation for the current VM request and
+	 * positions the iterator for the next VM of the request.
+	 * 
+	 * @param pm
+	 *            the PM that offered the allocation
+	 * @param allocation
+	 *            the allocation for the VM
+	 * @param currIterator
+	 *            the iterator used for the current scheduling round
+	 */
+	private void collectAllocation(final PhysicalMachine pm, final ResourceAllocation allocation,
+			final PMIterator currIterator) {
+		if (pm.freeCapacities.getRequiredCPUs() == 0 && currIterator.hasNext()) {
+			currIterator.next();
+		}
+		currIterator.markLastCollected();
+		ras.add(allocation);
+	}
+
+	/**
+	 * Tries to find PMs for all VMs of a request with the help of the capacity
+	 * index. The PMs are tried in the same order as in the complete search,
+	 * but those PMs that cannot fit the request according to the index are
+	 * skipped. Thus if the request can be placed, the same PMs are chosen as
+	 * with the complete search.
+	 * 
+	 * @param request
+	 *            the request to place
+	 * @param currIterator
+	 *            the iterator used for the current scheduling round
+	 * @return the number of VMs that got their allocations (collected in ras),
+	 *         if this is smaller than the number of VMs in the request then the
+	 *         returned VM could not be placed
+	 */
+	private int placeWithIndex(final QueueingData request, final PMIterator currIterator) {
+		currIterator.restart(false);
+		for (int vmNum = 0; vmNum < request.queuedVMs.length; vmNum++) {
+			boolean placed = false;
+			int candidate = capacityIndex.firstFit(request.queuedRC, currIterator.getIndex());
+			while (!placed && candidate >= 0) {
+				currIterator.skipTo(candidate);
+				if (!currIterator.hasNext()) {
+					break;
+				}
+				final PhysicalMachine pm = currIterator.next();
+				if (pm.localDisk.getFreeStorageCapacity() >= request.queuedVMs[vmNum].getVa().size) {
+					try {
+						final ResourceAllocation allocation = pm.allocateResources(request.queuedRC, true,
+								PhysicalMachine.defaultAllocLen);
+						if (allocation != null) {
+							collectAllocation(pm, allocation, currIterator);
+							placed = true;
+						}
+					} catch (VMManagementException e) {
+						// ignore
+					}
+				}
+				if (!placed) {
+					candidate = capacityIndex.firstFit(request.queuedRC, candidate + 1);
+				}
+			}
+			if (!placed) {
+				return vmNum;
+			}
+			currIterator.restart(true);
+		}
+		return request.queuedVMs.length;
+	}
+
+	/**
+	 * Determines the largest unsuitable allocation for a VM that could not be
+	 * placed with the help of the capacity index. The complete search would
+	 * have tried all running PMs for the request (the PMs skipped by the
+	 * earlier VMs of the request did not change since), so the index is asked
+	 * for the PM offering the largest partial allocation and only that PM
+	 * receives an allocation attempt.
+	 * 
+	 * @param request
+	 *            the request that could not be placed
+	 * @param vmNum
+	 *            the VM of the request that did not get a PM
+	 */
+	private void collectBiggestNotSuitable(final QueueingData request, final int vmNum) {
+		final PhysicalMachine pm = capacityIndex.largestPartialFit(request.queuedRC,
+				request.queuedVMs[vmNum].getVa().size);
+		if (pm != null) {
+			try {
+				final ResourceAllocation allocation = pm.allocateResources(request.queuedRC, false,
+						PhysicalMachine.defaultAllocLen);
+				if (allocation != null) {
+					if (allocation.allocated.compareTo(request.queuedRC) < 0) {
+						raBiggestNotSuitable = allocation;
+					} else {
+						allocation.cancel();
+					}
+				}
+			} catch (VMManagementException e) {
+				// ignore
+			}
+		}
+	}
 }
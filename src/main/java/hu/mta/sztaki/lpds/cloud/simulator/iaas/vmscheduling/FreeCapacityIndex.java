@@ -0,0 +1,590 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ResourceConstraints;
+
+/**
+ * Indexes the free capacities of the running PMs of an IaaS service so
+ * schedulers can find the first PM that could fit a resource request without
+ * trying allocations on all PMs in between.
+ * 
+ * The index is a segment tree with the maximum free processing power, per core
+ * processing power and memory in every subtree. Its leaves are slots that are
+ * handed out to the PMs in the order they become running and are freed when
+ * they leave the running state. As the running machines list of the IaaS also
+ * appends the newly running PMs and keeps the order of the remaining ones, the
+ * occupied slots follow the order of the list. The number of occupied slots in
+ * every subtree allows translating between slots and list positions in
+ * logarithmic time. The free capacities are kept up to date by the PMs' capacity
+ * change events. The tree is only rebuilt from the running machines list if the
+ * list was reordered (e.g., after a host deregistration) or when it runs out of
+ * free slots (then it is compacted, this amortises to constant time per slot).
+ * 
+ * The index uses the available capacities of the PMs (i.e., it ignores the
+ * not yet used resource allocations). Thus the index never misses a PM that
+ * could fit a request, but it might offer PMs which do not have enough
+ * resources when the actual allocation is attempted.
+ * 
+ * @author "Gabor Kecskemeti, Department of Computer Science, Liverpool John
+ *         Moores University, (c) 2017"
+ */
+public class FreeCapacityIndex implements Serializable {
+	/**
+	 * the tolerance used to avoid excluding PMs because of rounding errors
+	 */
+	private static final double tolerance = 1e-9;
+
+	/**
+	 * the IaaS service whose running PMs are indexed
+	 */
+	private final IaaSService iaas;
+	/**
+	 * the list of PMs indexed (the running machines list of the IaaS)
+	 */
+	private final List<PhysicalMachine> indexed;
+	/**
+	 * the slots of the indexed PMs in the tree
+	 */
+	private final IdentityHashMap<PhysicalMachine, Integer> positions = new IdentityHashMap<>();
+	/**
+	 * the capacity change listeners subscribed to the individual PMs
+	 */
+	private final IdentityHashMap<PhysicalMachine, VMManager.CapacityChangeEvent<ResourceConstraints>> capacityListeners = new IdentityHashMap<>();
+	/**
+	 * the state change listener subscribed to all PMs, it occupies a slot for
+	 * the PMs that become running and frees the slot of the ones that leave
+	 * the running state
+	 */
+	private final PhysicalMachine.StateChangeListener stateListener = (pm, oldState, newState) -> {
+		if (PhysicalMachine.State.RUNNING.equals(newState)) {
+			if (!positions.containsKey(pm)) {
+				append(pm);
+			}
+		} else {
+			release(pm);
+		}
+	};
+	/**
+	 * the listener subscribed to the IaaS to follow the registration and
+	 * deregistration of its PMs
+	 */
+	private final VMManager.CapacityChangeEvent<PhysicalMachine> registrationListener;
+	/**
+	 * marks if the running machine list could have been reordered since the
+	 * last rebuild of the tree (while it is set, the tree is not maintained)
+	 */
+	private boolean dirty = true;
+	/**
+	 * the number of leaves (slots) in the tree (a power of two)
+	 */
+	private int leaves = 1;
+	/**
+	 * the slot to be given to the next PM that becomes running
+	 */
+	private int nextSlot = 0;
+	/**
+	 * the PMs occupying the slots (null for the free ones)
+	 */
+	private PhysicalMachine[] slotted = new PhysicalMachine[1];
+	/**
+	 * the free CPU cores of the PMs (indexed by their slot)
+	 */
+	private double[] freeCPUs = new double[1];
+	/**
+	 * the per core processing power of the PMs (indexed by their slot)
+	 */
+	private double[] perCoreProcessing = new double[1];
+	/**
+	 * the number of occupied slots in the subtrees (the root is at 1, the
+	 * leaves start at the index leaves)
+	 */
+	private int[] occupied = new int[2];
+	/**
+	 * the maximum free processing power (cores*per core processing) in the
+	 * subtrees
+	 */
+	private double[] maxFreeProcessing = new double[2];
+	/**
+	 * the maximum per core processing power in the subtrees
+	 */
+	private double[] maxPerCoreProcessing = new double[2];
+	/**
+	 * the maximum free memory in the subtrees
+	 */
+	private long[] maxFreeMemory = new long[2];
+
+	/**
+	 * Sets up the index for the running machines of an IaaS service. The index
+	 * follows the registration and deregistration of the PMs of the service
+	 * until it is disposed.
+	 * 
+	 * @param iaas
+	 *            the service whose running machines must be indexed
+	 */
+	public FreeCapacityIndex(final IaaSService iaas) {
+		this.iaas = iaas;
+		indexed = iaas.runningMachines;
+		iaas.machines.forEach(this::observe);
+		registrationListener = new VMManager.CapacityChangeEvent<>() {
+			@Override
+			public void capacityChanged(final ResourceConstraints newCapacity, final List<PhysicalMachine> alteredPMs) {
+				final boolean newRegistration = iaas.isRegisteredHost(alteredPMs.get(0));
+				for (final PhysicalMachine pm : alteredPMs) {
+					if (newRegistration) {
+						observe(pm);
+						if (pm.isRunning()) {
+							append(pm);
+						}
+					} else {
+						unobserve(pm);
+						// The running machines list is reordered on deregistration
+						dirty |= positions.containsKey(pm);
+					}
+				}
+			}
+		};
+		iaas.subscribeToCapacityChanges(registrationListener);
+	}
+
+	/**
+	 * Subscribes to the events of a newly registered PM
+	 * 
+	 * @param pm
+	 *            the PM to be observed
+	 */
+	private void observe(final PhysicalMachine pm) {
+		final VMManager.CapacityChangeEvent<ResourceConstraints> listener = (newCapacity, affected) -> update(pm);
+		capacityListeners.put(pm, listener);
+		pm.subscribeToIncreasingFreeapacityChanges(listener);
+		pm.subscribeToDecreasingFreeapacityChanges(listener);
+		pm.subscribeStateChangeEvents(stateListener);
+	}
+
+	/**
+	 * Cancels the subscriptions to the events of a PM
+	 * 
+	 * @param pm
+	 *            the PM no longer observed
+	 */
+	private void unobserve(final PhysicalMachine pm) {
+		pm.unsubscribeStateChangeEvents(stateListener);
+		final VMManager.CapacityChangeEvent<ResourceConstraints> listener = capacityListeners.remove(pm);
+		pm.unsubscribeFromIncreasingFreeCapacityChanges(listener);
+		pm.unsubscribeFromDecreasingFreeCapacityChanges(listener);
+	}
+
+	/**
+	 * Detaches the index from the IaaS service and its PMs. The index must not
+	 * be queried afterwards.
+	 */
+	public void dispose() {
+		iaas.unsubscribeFromCapacityChanges(registrationListener);
+		new ArrayList<>(capacityListeners.keySet()).forEach(this::unobserve);
+		positions.clear();
+		dirty = true;
+	}
+
+	/**
+	 * Updates the free capacities of a PM in the tree
+	 * 
+	 * @param pm
+	 *            the PM that has new free capacities
+	 */
+	private void update(final PhysicalMachine pm) {
+		if (dirty) {
+			return;
+		}
+		final Integer slot = positions.get(pm);
+		if (slot != null) {
+			setLeaf(slot, pm);
+			propagate(slot);
+		}
+	}
+
+	/**
+	 * Gives the next free slot to a PM that just became running. If there are
+	 * no free slots at the end of the tree then the tree is compacted first.
+	 * 
+	 * @param pm
+	 *            the PM that was appended to the running machines list
+	 */
+	private void append(final PhysicalMachine pm) {
+		if (dirty) {
+			return;
+		}
+		if (nextSlot == leaves) {
+			final ArrayList<PhysicalMachine> inOrder = new ArrayList<>(occupied[1] + 1);
+			for (final PhysicalMachine curr : slotted) {
+				if (curr != null) {
+					inOrder.add(curr);
+				}
+			}
+			build(inOrder);
+		}
+		final int slot = nextSlot++;
+		positions.put(pm, slot);
+		slotted[slot] = pm;
+		occupied[slot + leaves] = 1;
+		setLeaf(slot, pm);
+		propagate(slot);
+	}
+
+	/**
+	 * Frees the slot of a PM that is no longer running
+	 * 
+	 * @param pm
+	 *            the PM that was removed from the running machines list
+	 */
+	private void release(final PhysicalMachine pm) {
+		if (dirty) {
+			return;
+		}
+		final Integer slot = positions.remove(pm);
+		if (slot != null) {
+			slotted[slot] = null;
+			clearLeaf(slot);
+			propagate(slot);
+		}
+	}
+
+	/**
+	 * Builds the whole tree from a list of PMs, the PMs get their slots in the
+	 * order of the list and at least as many free slots remain as the number
+	 * of PMs in the list.
+	 * 
+	 * @param pms
+	 *            the running PMs in the order of the running machines list
+	 */
+	private void build(final List<PhysicalMachine> pms) {
+		final int size = pms.size();
+		leaves = Integer.highestOneBit(Math.max(1, size)) << 2;
+		if (slotted.length != leaves) {
+			slotted = new PhysicalMachine[leaves];
+			freeCPUs = new double[leaves];
+			perCoreProcessing = new double[leaves];
+			occupied = new int[2 * leaves];
+			maxFreeProcessing = new double[2 * leaves];
+			maxPerCoreProcessing = new double[2 * leaves];
+			maxFreeMemory = new long[2 * leaves];
+		}
+		positions.clear();
+		for (int i = 0; i < size; i++) {
+			final PhysicalMachine pm = pms.get(i);
+			positions.put(pm, i);
+			slotted[i] = pm;
+			occupied[i + leaves] = 1;
+			setLeaf(i, pm);
+		}
+		for (int i = size; i < leaves; i++) {
+			slotted[i] = null;
+			clearLeaf(i);
+		}
+		for (int node = leaves - 1; node > 0; node--) {
+			recalculate(node);
+		}
+		nextSlot = size;
+		dirty = false;
+	}
+
+	/**
+	 * Loads the current available capacities of a PM into its leaf
+	 * 
+	 * @param slot
+	 *            the slot of the PM
+	 * @param pm
+	 *            the PM to load
+	 */
+	private void setLeaf(final int slot, final PhysicalMachine pm) {
+		final ResourceConstraints available = pm.availableCapacities;
+		final int leaf = slot + leaves;
+		freeCPUs[slot] = available.getRequiredCPUs();
+		perCoreProcessing[slot] = pm.getCapacities().getRequiredProcessingPower();
+		maxFreeProcessing[leaf] = freeCPUs[slot] * perCoreProcessing[slot];
+		maxPerCoreProcessing[leaf] = perCoreProcessing[slot];
+		maxFreeMemory[leaf] = available.getRequiredMemory();
+	}
+
+	/**
+	 * Marks a slot free so it never fits any request
+	 * 
+	 * @param slot
+	 *            the slot to clear
+	 */
+	private void clearLeaf(final int slot) {
+		final int leaf = slot + leaves;
+		freeCPUs[slot] = 0;
+		occupied[leaf] = 0;
+		maxFreeProcessing[leaf] = -1;
+		maxPerCoreProcessing[leaf] = -1;
+		maxFreeMemory[leaf] = -1;
+	}
+
+	/**
+	 * Updates the ancestors of a leaf after the leaf has changed
+	 * 
+	 * @param slot
+	 *            the slot of the changed leaf
+	 */
+	private void propagate(final int slot) {
+		for (int node = (slot + leaves) >> 1; node > 0; node >>= 1) {
+			recalculate(node);
+		}
+	}
+
+	/**
+	 * Updates the maximums and the occupied slot count of an inner node from
+	 * its children
+	 * 
+	 * @param node
+	 *            the inner node to update
+	 */
+	private void recalculate(final int node) {
+		final int left = node << 1, right = left + 1;
+		occupied[node] = occupied[left] + occupied[right];
+		maxFreeProcessing[node] = Math.max(maxFreeProcessing[left], maxFreeProcessing[right]);
+		maxPerCoreProcessing[node] = Math.max(maxPerCoreProcessing[left], maxPerCoreProcessing[right]);
+		maxFreeMemory[node] = Math.max(maxFreeMemory[left], maxFreeMemory[right]);
+	}
+
+	/**
+	 * Rebuilds the tree from the running machines list if the slots no longer
+	 * follow the list
+	 */
+	private void ensureConsistent() {
+		if (dirty || occupied[1] != indexed.size()) {
+			build(indexed);
+		}
+	}
+
+	/**
+	 * Determines the slot of the PM at a given position of the running
+	 * machines list
+	 * 
+	 * @param pos
+	 *            the position in the list (must be smaller than its size)
+	 * @return the slot of the PM
+	 */
+	private int slotOf(int pos) {
+		int node = 1;
+		while (node < leaves) {
+			node <<= 1;
+			if (occupied[node] <= pos) {
+				pos -= occupied[node];
+				node++;
+			}
+		}
+		return node - leaves;
+	}
+
+	/**
+	 * Determines the position in the running machines list of the PM
+	 * occupying a slot
+	 * 
+	 * @param slot
+	 *            the occupied slot
+	 * @return the position of the PM in the list
+	 */
+	private int positionOf(final int slot) {
+		int pos = 0;
+		for (int node = slot + leaves; node > 1; node >>= 1) {
+			if ((node & 1) == 1) {
+				pos += occupied[node - 1];
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Finds the first running PM from a given position that might be able to
+	 * fit a resource request.
+	 * 
+	 * @param request
+	 *            the resources needed
+	 * @param from
+	 *            the first position in the running machines list to consider
+	 * @return the position of the PM in the running machines list of the IaaS,
+	 *         or -1 if there are no PMs that could fit the request
+	 */
+	public int firstFit(final ResourceConstraints request, final int from) {
+		ensureConsistent();
+		if (from >= occupied[1]) {
+			return -1;
+		}
+		final int slot = search(1, 0, leaves, slotOf(Math.max(0, from)), request);
+		return slot < 0 ? -1 : positionOf(slot);
+	}
+
+	/**
+	 * Finds the first running PM that might be able to fit a resource request.
+	 * 
+	 * @param request
+	 *            the resources needed
+	 * @return the PM or null if there are no PMs that could fit the request
+	 */
+	public PhysicalMachine firstFit(final ResourceConstraints request) {
+		ensureConsistent();
+		final int slot = search(1, 0, leaves, 0, request);
+		return slot < 0 ? null : slotted[slot];
+	}
+
+	/**
+	 * Finds the running PM that would offer the largest partial (i.e., non
+	 * strict) allocation for a resource request that does not fit any of the
+	 * PMs. The size of the allocations is compared as in
+	 * ResourceConstraints.compareTo and the first PM is returned from the
+	 * equally sized ones. The subtree maximums are only used to skip the
+	 * subtrees that cannot offer larger allocations than the best one so far,
+	 * the allocations are determined from the current free capacities of the
+	 * PMs.
+	 * 
+	 * @param request
+	 *            the resources needed
+	 * @param storage
+	 *            the free local storage the PM must have for the VM
+	 * @return the PM or null if no PM could offer a partial allocation
+	 */
+	public PhysicalMachine largestPartialFit(final ResourceConstraints request, final long storage) {
+		ensureConsistent();
+		final PartialFit best = new PartialFit();
+		searchPartial(1, request, storage, best);
+		return best.pm;
+	}
+
+	/**
+	 * The best partial allocation found so far
+	 */
+	private static class PartialFit {
+		/**
+		 * the PM offering the allocation
+		 */
+		PhysicalMachine pm = null;
+		/**
+		 * the size of the allocation (total processing power * memory)
+		 */
+		double size = -1;
+	}
+
+	/**
+	 * Searches the subtree of a node for a PM offering a larger partial
+	 * allocation than the best one so far
+	 * 
+	 * @param node
+	 *            the root of the subtree
+	 * @param request
+	 *            the resources needed
+	 * @param storage
+	 *            the free local storage the PM must have for the VM
+	 * @param best
+	 *            the best partial allocation found so far (updated if a
+	 *            larger one is found)
+	 */
+	private void searchPartial(final int node, final ResourceConstraints request, final long storage,
+			final PartialFit best) {
+		if (maxFreeMemory[node] <= 0 || maxPerCoreProcessing[node] < request.getRequiredProcessingPower()) {
+			return;
+		}
+		// Upper estimate of the allocated processing power in the subtree
+		final double processing = request.isRequiredProcessingIsMinimum()
+				? Math.max(maxFreeProcessing[node], request.getRequiredCPUs() * maxPerCoreProcessing[node])
+				: Math.min(maxFreeProcessing[node], request.getTotalProcessingPower());
+		if (processing * Math.min(maxFreeMemory[node], request.getRequiredMemory()) * (1 + tolerance) <= best.size) {
+			return;
+		}
+		if (node < leaves) {
+			searchPartial(node << 1, request, storage, best);
+			searchPartial((node << 1) + 1, request, storage, best);
+			return;
+		}
+		final PhysicalMachine pm = slotted[node - leaves];
+		final ResourceConstraints free = pm.freeCapacities;
+		// Same calculations as in PhysicalMachine.allocateResources
+		if (pm.localDisk.getFreeStorageCapacity() < storage || free.getRequiredCPUs() == 0
+				|| free.getRequiredMemory() == 0
+				|| request.getRequiredProcessingPower() > free.getRequiredProcessingPower()) {
+			return;
+		}
+		final double pmPerCore = pm.getCapacities().getRequiredProcessingPower();
+		final boolean cpuFits = 0 <= free.getRequiredCPUs()
+				- request.getRequiredCPUs() * request.getRequiredProcessingPower() / pmPerCore;
+		final boolean memoryFits = 0 <= free.getRequiredMemory() - request.getRequiredMemory();
+		if (cpuFits && memoryFits) {
+			// Not a partial allocation
+			return;
+		}
+		final double cpus = cpuFits ? request.getRequiredCPUs() : free.getRequiredCPUs();
+		final double perCore = request.isRequiredProcessingIsMinimum() ? pmPerCore
+				: request.getRequiredProcessingPower();
+		final long memory = memoryFits ? request.getRequiredMemory() : free.getRequiredMemory();
+		final double size = cpus * perCore * memory;
+		if (size > best.size) {
+			best.size = size;
+			best.pm = pm;
+		}
+	}
+
+	/**
+	 * Searches the subtree of a node for the first fitting PM
+	 * 
+	 * @param node
+	 *            the root of the subtree
+	 * @param lo
+	 *            the first slot covered by the subtree
+	 * @param hi
+	 *            the slot after the last covered by the subtree
+	 * @param from
+	 *            the first slot to consider
+	 * @param request
+	 *            the resources needed
+	 * @return the slot of the first fitting PM or -1 if there is none in the
+	 *         subtree
+	 */
+	private int search(final int node, final int lo, final int hi, final int from,
+			final ResourceConstraints request) {
+		if (hi <= from || maxFreeMemory[node] < request.getRequiredMemory()
+				|| maxPerCoreProcessing[node] < request.getRequiredProcessingPower()
+				|| maxFreeProcessing[node] * (1 + tolerance) < request.getTotalProcessingPower()) {
+			return -1;
+		}
+		if (node >= leaves) {
+			final int slot = node - leaves;
+			// Same conditions as in PhysicalMachine.allocateResources
+			return freeCPUs[slot] > 0 && maxFreeMemory[node] > 0 && freeCPUs[slot] * (1 + tolerance)
+					- request.getTotalProcessingPower() / perCoreProcessing[slot] >= 0 ? slot : -1;
+		}
+		final int mid = (lo + hi) >> 1;
+		final int found = search(node << 1, lo, mid, from, request);
+		return found >= 0 ? found : search((node << 1) + 1, mid, hi, from, request);
+	}
+}
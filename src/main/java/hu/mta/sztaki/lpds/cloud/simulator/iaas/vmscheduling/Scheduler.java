@@ -24,7 +24,9 @@
  */
 package hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling;
 
+import java.io.Serializable;
 import java.util.*;
+import java.util.function.Supplier;
 
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
@@ -37,7 +39,6 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.AlterableResourceCons
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ConstantConstraints;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ResourceConstraints;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.UnalterableConstraintsPropagator;
-import hu.mta.sztaki.lpds.cloud.simulator.iaas.helpers.PMComparators;
 import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
 import hu.mta.sztaki.lpds.cloud.simulator.notifications.StateDependentEventHandler;
 
@@ -49,7 +50,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.notifications.StateDependentEventHandl
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems,
  *         MTA SZTAKI (c) 2012"
  */
-public abstract class Scheduler {
+public abstract class Scheduler implements Serializable {
 
 	/**
 	 * Implementing this interface allows the implementor to receive events from the
@@ -60,7 +61,7 @@ public abstract class Scheduler {
 	 * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems,
 	 *         MTA SZTAKI (c) 2012"
 	 */
-	public interface QueueingEvent {
+	public interface QueueingEvent extends Serializable {
 
 		/**
 		 * This function is called when the VM scheduler believes the infrastructure
@@ -90,16 +91,32 @@ public abstract class Scheduler {
 	 */
 	protected final UnalterableConstraintsPropagator publicTQ = new UnalterableConstraintsPropagator(totalQueued);
 	/**
-	 * This field contains an automatically updated list of all machines in the
-	 * parent IaaS. The list is kept in the order of the PM's size to allow rapid
-	 * decisions on the possible fitting of VM requests.
+	 * A group of PMs that are indistinguishable when checking if they could host
+	 * a request (i.e., isHostableRequest gives the same answers for them).
 	 */
-	private final ArrayList<PhysicalMachine> orderedPMcache = new ArrayList<>();
+	private static class CapacityClass implements Serializable {
+		/**
+		 * the total capacities of one of the PMs in the class
+		 */
+		private final ResourceConstraints capacities;
+		/**
+		 * the number of PMs in the class
+		 */
+		private int machines = 0;
+
+		private CapacityClass(final ResourceConstraints capacities) {
+			this.capacities = capacities;
+		}
+	}
+
 	/**
-	 * current length of the pm cache, so we don't need to query its size all the
-	 * time
+	 * This field contains an automatically updated summary of all machines in
+	 * the parent IaaS. The PMs are grouped to capacity classes which are kept in
+	 * the order of their size to allow rapid decisions on the possible fitting
+	 * of VM requests. The key of a class is the same value as the one used by
+	 * the compareTo function of the resource constraints.
 	 */
-	private int pmCacheLen;
+	private final TreeMap<Double, CapacityClass> capacityClasses = new TreeMap<>(Comparator.reverseOrder());
 	/**
 	 * the manager of those objects who shown interest in receiving queuing related
 	 * event notifications
@@ -117,6 +134,11 @@ public abstract class Scheduler {
 	 * could be allowing a new scheduling run
 	 */
 	private final AlterableResourceConstraints freeResourcesSinceLastSchedule = AlterableResourceConstraints.getNoResources();
+	/**
+	 * the listener following the registration and deregistration of the PMs of
+	 * the parent IaaS, it subscribes the scheduler to the events of the PMs
+	 */
+	private final VMManager.CapacityChangeEvent<PhysicalMachine> hostChangeListener;
 
 	/**
 	 * This is the action that takes place when one of the PMs at the IaaS changes
@@ -166,7 +188,7 @@ public abstract class Scheduler {
 
 	/**
 	 * The main constructor of all schedulers. This constructor ensures that the
-	 * orderedPMcache is maintained, and it also connects the scheduler's free
+	 * summary of the PM capacities is maintained, and it also connects the scheduler's free
 	 * capacity and pm state listeners.
 	 * 
 	 * @param parent the IaaS service for which this scheduler is expected to act as
@@ -174,29 +196,63 @@ public abstract class Scheduler {
 	 */
 	public Scheduler(final IaaSService parent) {
 		this.parent = parent;
-		parent.subscribeToCapacityChanges(
-				(final ResourceConstraints newCapacity, final List<PhysicalMachine> alteredPMs) -> {
-					final boolean newRegistration = parent.isRegisteredHost(alteredPMs.get(0));
-					final int pmNum = alteredPMs.size();
-					if (newRegistration) {
-						// Increased pm count
-						orderedPMcache.addAll(alteredPMs);
-						orderedPMcache.sort(PMComparators.highestToLowestTotalCapacity);
-						pmCacheLen += pmNum;
-						for (final PhysicalMachine pm : alteredPMs) {
-							pm.subscribeStateChangeEvents(pmstateChanged);
-							pm.subscribeToIncreasingFreeapacityChanges(freeCapacity);
-						}
-					} else {
-						// Decreased pm count
-						for (final PhysicalMachine pm : alteredPMs) {
-							orderedPMcache.remove(pm);
-							pm.unsubscribeStateChangeEvents(pmstateChanged);
-							pm.unsubscribeFromIncreasingFreeCapacityChanges(freeCapacity);
+		hostChangeListener = new VMManager.CapacityChangeEvent<>() {
+			@Override
+			public void capacityChanged(final ResourceConstraints newCapacity, final List<PhysicalMachine> alteredPMs) {
+				final boolean newRegistration = parent.isRegisteredHost(alteredPMs.get(0));
+				if (newRegistration) {
+					// Increased pm count
+					for (final PhysicalMachine pm : alteredPMs) {
+						capacityClasses.computeIfAbsent(capacityClassKey(pm),
+								k -> new CapacityClass(pm.getCapacities())).machines++;
+						pm.subscribeStateChangeEvents(pmstateChanged);
+						pm.subscribeToIncreasingFreeapacityChanges(freeCapacity);
+					}
+				} else {
+					// Decreased pm count
+					for (final PhysicalMachine pm : alteredPMs) {
+						final Double key = capacityClassKey(pm);
+						if (--capacityClasses.get(key).machines == 0) {
+							capacityClasses.remove(key);
 						}
-						pmCacheLen -= pmNum;
+						pm.unsubscribeStateChangeEvents(pmstateChanged);
+						pm.unsubscribeFromIncreasingFreeCapacityChanges(freeCapacity);
 					}
-				});
+				}
+			}
+		};
+		parent.subscribeToCapacityChanges(hostChangeListener);
+	}
+
+	/**
+	 * Allows subclasses to set up helpers (e.g., indexes over the PMs) that
+	 * follow the events of the parent IaaS and its PMs. The helpers subscribe
+	 * to these events before the scheduler does, thus they are already up to
+	 * date when the scheduler reacts to the events of a PM. This is only
+	 * effective if it is called before any PM is registered (e.g., in the
+	 * constructor of the subclass).
+	 * 
+	 * @param setup the function creating the helper
+	 * @return the helper created by the setup function
+	 */
+	protected final <T> T setUpBeforeScheduler(final Supplier<T> setup) {
+		parent.unsubscribeFromCapacityChanges(hostChangeListener);
+		try {
+			return setup.get();
+		} finally {
+			parent.subscribeToCapacityChanges(hostChangeListener);
+		}
+	}
+
+	/**
+	 * Determines the capacity class of a PM
+	 * 
+	 * @param pm the PM to classify
+	 * @return the key of the PM's capacity class
+	 */
+	private static Double capacityClassKey(final PhysicalMachine pm) {
+		final ResourceConstraints caps = pm.getCapacities();
+		return caps.getTotalProcessingPower() * caps.getRequiredMemory();
 	}
 
 	/**
@@ -224,17 +280,17 @@ public abstract class Scheduler {
 		final long currentTime = Timed.getFireCount();
 		final QueueingData qd = new QueueingData(vms, rc, vaSource, schedulingConstraints, currentTime);
 
-		int hostableVMs = 0;
+		// The PMs of a class can host the same number of VMs, thus the check
+		// depends on the number of capacity classes only
+		long hostableVMs = 0;
 		boolean hostable = false;
-		for (int pmid = 0; pmid < pmCacheLen; pmid++) {
-			PhysicalMachine machine = orderedPMcache.get(pmid);
-			AlterableResourceConstraints biggestHostable = new AlterableResourceConstraints(rc);
-			for (int i = 1; i <= vms.length; i++, hostableVMs++) {
-				if (!machine.isHostableRequest(biggestHostable)) {
-					break;
-				}
+		for (final CapacityClass capacityClass : capacityClasses.values()) {
+			final AlterableResourceConstraints biggestHostable = new AlterableResourceConstraints(rc);
+			int fitting = 0;
+			for (; fitting < vms.length && biggestHostable.compareTo(capacityClass.capacities) <= 0; fitting++) {
 				biggestHostable.singleAdd(rc);
 			}
+			hostableVMs += (long) fitting * capacityClass.machines;
 			if (hostableVMs >= vms.length) {
 				hostable = true;
 				break;
@@ -25,6 +25,7 @@ package hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.pmiterators;
 
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
 
+import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
 
@@ -44,7 +45,7 @@ import java.util.List;
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems,
  *         MTA SZTAKI (c) 2015"
  */
-public class PMIterator implements Iterator<PhysicalMachine> {
+public class PMIterator implements Iterator<PhysicalMachine>, Serializable {
 
 	/**
 	 * Current index to be used when the next PM is asked for
@@ -106,6 +107,28 @@ public class PMIterator implements Iterator<PhysicalMachine> {
 		index = fromMarked ? marked : 0;
 	}
 
+	/**
+	 * Allows determining where the iterator is in the PM list
+	 * 
+	 * @return the index of the PM that will be offered by the next call to
+	 *         next()
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Moves the iterator to an arbitrary position in the PM list. The PMs in
+	 * between are not offered by the iterator. Useful when the next suitable
+	 * PM is known in advance (e.g., from a capacity index).
+	 * 
+	 * @param newIndex
+	 *            the index of the PM to be offered by the next call to next()
+	 */
+	public void skipTo(final int newIndex) {
+		index = newIndex;
+	}
+
 	/**
 	 * This call can mark the last PM that was offered by the iterator with its
 	 * previous next() call. The marked item then can be used with the restart
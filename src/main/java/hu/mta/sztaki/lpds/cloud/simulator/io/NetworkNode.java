@@ -26,6 +26,7 @@
 package hu.mta.sztaki.lpds.cloud.simulator.io;
 
 import java.io.Serial;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -47,7 +48,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.util.PowerTransitionGenerator;
  *         Distributed Systems, MTA SZTAKI (c) 2012,2014-"
  * 
  */
-public class NetworkNode {
+public class NetworkNode implements Serializable {
 
 	public static class NetworkException extends Exception {
 		@Serial
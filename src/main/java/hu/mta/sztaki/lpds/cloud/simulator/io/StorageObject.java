@@ -25,6 +25,7 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.io;
 
+import java.io.Serializable;
 import hu.mta.sztaki.lpds.cloud.simulator.util.SeedSyncer;
 
 /**
@@ -35,7 +36,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.util.SeedSyncer;
  *         of Innsbruck (c) 2013" "Gabor Kecskemeti, Laboratory of Parallel and
  *         Distributed Systems, MTA SZTAKI (c) 2012"
  */
-public class StorageObject {
+public class StorageObject implements Serializable {
 	// TODO: think about if it would make things easier if we would refer here
 	// the repository where this storage object is stored.
 
@@ -63,7 +64,7 @@ public class StorageObject {
 	 */
 	public StorageObject(final String myid) {
 		id = myid;
-		size = 500000000L + (long) (SeedSyncer.centralRnd.nextDouble() * 19500000000L);
+		size = 500000000L + (long) (SeedSyncer.getCentralRnd().nextDouble() * 19500000000L);
 	}
 
 	/**
@@ -85,7 +86,7 @@ public class StorageObject {
 			throw new IllegalArgumentException("Cannot create negative sized Storage Objects");
 		}
 		id = myid;
-		size = vary ? (1 + 2 * mysize - (long) (2 * SeedSyncer.centralRnd.nextDouble() * mysize)) : mysize;
+		size = vary ? (1 + 2 * mysize - (long) (2 * SeedSyncer.getCentralRnd().nextDouble() * mysize)) : mysize;
 	}
 
 	/**
@@ -25,6 +25,8 @@
 
 package hu.mta.sztaki.lpds.cloud.simulator.notifications;
 
+import java.io.Serializable;
+
 /**
  * the handler for a particular kind of notification. the implementer of this
  * interface should be prepared to notify the interested party (T) that a state
@@ -39,7 +41,7 @@ package hu.mta.sztaki.lpds.cloud.simulator.notifications;
  *            the kind of data to be passed on to the notified party
  * 
  */
-public interface SingleNotificationHandler<T, P> {
+public interface SingleNotificationHandler<T, P> extends Serializable {
 	/**
 	 * this function is called by the statedependenteventhandler class when a
 	 * notification is needed for a particular kind of event.
@@ -28,10 +28,13 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -44,8 +47,10 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.TabulatedConsumptionModel;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachineTemplate;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.PhysicalMachineController;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.Scheduler;
 import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
@@ -54,6 +59,19 @@ import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
  * This class offers a simple interface to prepare an IaaSService class based on
  * data loaded from an XML cloud configuration file.
  * 
+ * If a power element has a samples attribute, its consumption model is
+ * evaluated through a lookup table with the specified number of intervals (see
+ * TabulatedConsumptionModel). The lookup tables of identical power
+ * definitions are sampled only once and are shared amongst all hosts, while
+ * the hosts still get their own power states.
+ * 
+ * On request, machines with identical definitions (apart from their ids, disks
+ * and latencies) are created from a single PhysicalMachineTemplate, thus they
+ * share their power states and transitional tasks. This should only be
+ * requested if the power states of the loaded machines are not altered
+ * individually (e.g., for DVFS), as such alterations would affect all
+ * identical machines.
+ * 
  * @author "Gabor Kecskemeti, Laboratory of Parallel and Distributed Systems,
  *         MTA SZTAKI (c) 2012"
  */
@@ -76,6 +94,29 @@ public class CloudLoader {
 	 */
 	public static IaaSService loadNodes(String fileName)
 			throws IOException, SAXException, ParserConfigurationException {
+		return loadNodes(fileName, false);
+	}
+
+	/**
+	 * Offers the IaaSService creator functionality by defining the sax parser for
+	 * the XML cloud configuration.
+	 * 
+	 * @param fileName               the name of the xml file containing the
+	 *                               configuration of the cloud
+	 * @param shareIdenticalMachines if <i>true</i> the machines with identical
+	 *                               definitions share their power states and
+	 *                               transitional tasks, otherwise every machine
+	 *                               gets its own power states
+	 * @return the instantiated IaaSservice that complies with the configuration
+	 *         specified in the XML file received as the parameter
+	 * @throws IOException                  if there was some problem with
+	 *                                      finding/accessing the xml file
+	 * @throws SAXException                 if there was some problem parsing the
+	 *                                      configuration file
+	 * @throws ParserConfigurationException
+	 */
+	public static IaaSService loadNodes(String fileName, final boolean shareIdenticalMachines)
+			throws IOException, SAXException, ParserConfigurationException {
 		Calendar c = Calendar.getInstance();
 		System.out.println("Cloud Loader starts for: " + fileName + " at " + c.getTimeInMillis());
 		final ArrayList<IaaSService> returner = new ArrayList<>();
@@ -101,6 +142,9 @@ public class CloudLoader {
 			EnumMap<PowerTransitionGenerator.PowerStateKind, Map<String, PowerState>> powerTransitions = new EnumMap<>(
 					PowerTransitionGenerator.PowerStateKind.class);
 			PowerTransitionGenerator.PowerStateKind currentKind;
+			final HashMap<List<Object>, Supplier<TabulatedConsumptionModel>> tabulatedModels = new HashMap<>();
+			final HashMap<List<Object>, PhysicalMachineTemplate> machineTemplates = new HashMap<>();
+			ArrayList<Object> machineSpec;
 
 			@SuppressWarnings("unchecked")
 			@Override
@@ -126,10 +170,13 @@ public class CloudLoader {
 						processing = Double.parseDouble(attributes.getValue("processing"));
 						memory = Long.parseLong(attributes.getValue("memory"));
 						mid = attributes.getValue("id");
+						machineSpec = new ArrayList<>(List.of(cores, processing, memory));
 					}
 					if (inmachine && qName.equals("statedelays")) {
 						startuptime = Integer.parseInt(attributes.getValue("startup"));
 						shutdowntime = Integer.parseInt(attributes.getValue("shutdown"));
+						machineSpec.add(startuptime);
+						machineSpec.add(shutdowntime);
 					}
 					if (qName.equals("repository")) {
 						inrepo = true;
@@ -149,6 +196,11 @@ public class CloudLoader {
 					if (qName.equals("power") && currentKind != null) {
 						Map<String, PowerState> stateSet = powerTransitions.get(currentKind);
 						String currentStateString = attributes.getValue("inState");
+						if (inmachine) {
+							machineSpec.addAll(Arrays.asList(currentKind, currentStateString, attributes.getValue("model"),
+									attributes.getValue("idle"), attributes.getValue("max"),
+									attributes.getValue("samples")));
+						}
 						// Divider is needed so input and output spreaders are
 						// symmetrically consuming energy
 						int currentDivider = currentKind.equals(PowerTransitionGenerator.PowerStateKind.host) ? 1 : 2;
@@ -157,14 +209,24 @@ public class CloudLoader {
 							double maxCon = Double.parseDouble(attributes.getValue("max")) / currentDivider;
 							Class<? extends PowerState.ConsumptionModel> consumptionmodel= (Class<? extends PowerState.ConsumptionModel>) Class
 									.forName(attributes.getValue("model"));
-							stateSet.put(currentStateString,
-									new PowerState(idleCon, maxCon - idleCon, () -> {
-										try {
-											return consumptionmodel.getDeclaredConstructor().newInstance();
-										} catch (Exception e) {
-											throw new RuntimeException(e);
-										}
-									}));
+							// Only captures the model class, so power states remain serializable
+							final TabulatedConsumptionModel.Source modelSupplier = () -> {
+								try {
+									return consumptionmodel.getDeclaredConstructor().newInstance();
+								} catch (Exception e) {
+									throw new RuntimeException(e);
+								}
+							};
+							final String samples = attributes.getValue("samples");
+							if (samples == null) {
+								stateSet.put(currentStateString, new PowerState(idleCon, maxCon - idleCon, modelSupplier));
+							} else {
+								// Tabulated models with identical definitions share their tables
+								final int sampleCount = Integer.parseInt(samples);
+								stateSet.put(currentStateString, new PowerState(idleCon, maxCon - idleCon,
+										tabulatedModels.computeIfAbsent(List.of(consumptionmodel, sampleCount),
+												m -> TabulatedConsumptionModel.compile(modelSupplier, sampleCount))));
+							}
 						} catch (Exception e) {
 							throw new SAXException(
 									"Cannot instantiate PowerState because of a consumption model type designation",
@@ -191,13 +253,22 @@ public class CloudLoader {
 					}
 					if (qName.equals("machine")) {
 						inmachine = false;
-						returner.get(0)
-								.registerHost(new PhysicalMachine(cores, processing, memory,
-										new Repository(disksize, rid, inbw, outbw, diskbw, latencymap,
-												powerTransitions.get(PowerTransitionGenerator.PowerStateKind.storage),
-												powerTransitions.get(PowerTransitionGenerator.PowerStateKind.network)),
-										startuptime, shutdowntime,
-										powerTransitions.get(PowerTransitionGenerator.PowerStateKind.host)));
+						if (shareIdenticalMachines) {
+							// Machines with identical definitions share their power behavior
+							final PhysicalMachineTemplate template = machineTemplates.computeIfAbsent(machineSpec,
+									k -> new PhysicalMachineTemplate(cores, processing, memory, startuptime,
+											shutdowntime, powerTransitions));
+							returner.get(0).registerHost(template.createMachine(
+									template.createRepository(rid, disksize, inbw, outbw, diskbw, latencymap)));
+						} else {
+							returner.get(0)
+									.registerHost(new PhysicalMachine(cores, processing, memory,
+											new Repository(disksize, rid, inbw, outbw, diskbw, latencymap,
+													powerTransitions.get(PowerTransitionGenerator.PowerStateKind.storage),
+													powerTransitions.get(PowerTransitionGenerator.PowerStateKind.network)),
+											startuptime, shutdowntime,
+											powerTransitions.get(PowerTransitionGenerator.PowerStateKind.host)));
+						}
 						powerTransitions = new EnumMap<>(PowerTransitionGenerator.PowerStateKind.class);
 					}
 					if (qName.equals("powerstates")) {
@@ -27,6 +27,8 @@ package hu.mta.sztaki.lpds.cloud.simulator.util;
 
 import java.util.Random;
 
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
+
 /**
  * A class to manage the random generator to be used if reproducible but random
  * results are expected from the simulator
@@ -37,6 +39,9 @@ public class SeedSyncer {
 	/**
 	 * The random generator that will be used by the system components and that
 	 * is recommended to be used by simulations built on top of DISSECT-CF
+	 * 
+	 * <i>NOTE:</i> this is the generator of the default simulation context. If
+	 * your simulation runs in its own context, use getCentralRnd() instead.
 	 */
 	public static final Random centralRnd;
 	/**
@@ -58,10 +63,20 @@ public class SeedSyncer {
 		centralRnd = new Random(seed);
 	}
 
+	/**
+	 * Determines the random generator of the simulation that is current on the
+	 * calling thread.
+	 * 
+	 * @return the central random generator to be used by the system components
+	 */
+	public static Random getCentralRnd() {
+		return SimulationContext.current().getCentralRnd();
+	}
+
 	/**
 	 * To restart the simulator's random generator
 	 */
 	public static void resetCentral() {
-		centralRnd.setSeed(seed);
+		SimulationContext.current().resetCentralRnd();
 	}
 }
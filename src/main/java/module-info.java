@@ -8,6 +8,7 @@
 module hu.mta.sztaki.lpds.cloud.simulator.dissectcf {
 	exports hu.mta.sztaki.lpds.cloud.simulator.energy;
 	exports hu.mta.sztaki.lpds.cloud.simulator.energy.specialized;
+	exports hu.mta.sztaki.lpds.cloud.simulator.energy.recording;
 	exports hu.mta.sztaki.lpds.cloud.simulator.util;
 	exports hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling;
 	exports hu.mta.sztaki.lpds.cloud.simulator.notifications;
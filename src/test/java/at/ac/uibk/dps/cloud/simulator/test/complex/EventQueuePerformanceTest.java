@@ -0,0 +1,139 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package at.ac.uibk.dps.cloud.simulator.test.complex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import at.ac.uibk.dps.cloud.simulator.test.TestFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.CalendarEventQueue;
+import hu.mta.sztaki.lpds.cloud.simulator.EventQueue;
+import hu.mta.sztaki.lpds.cloud.simulator.HeapEventQueue;
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventQueuePerformanceTest extends TestFoundation {
+	static final int timedCount = 50000;
+	static final long simulatedTime = 2000;
+	static final int maxFreq = 100;
+
+	/**
+	 * An event dense workload: lots of timed objects with short and varying
+	 * frequencies that often reschedule each other.
+	 */
+	static class Workload {
+		final DenseEvent[] events = new DenseEvent[timedCount];
+		long totalFires = 0;
+		long checksum = 0;
+		int orderViolations = 0;
+		long currentTick = -1;
+		boolean backPreferredFired = false;
+
+		class DenseEvent extends Timed {
+			final int id;
+			final boolean back;
+
+			DenseEvent(final int id, final long freq, final boolean back) {
+				this.id = id;
+				this.back = back;
+				setBackPreference(back);
+				subscribe(freq);
+			}
+
+			void changeFreq(final long freq) {
+				updateFrequency(freq);
+			}
+
+			@Override
+			public void tick(final long fires) {
+				if (currentTick != fires) {
+					currentTick = fires;
+					backPreferredFired = false;
+				}
+				if (back) {
+					backPreferredFired = true;
+				} else if (backPreferredFired) {
+					orderViolations++;
+				}
+				totalFires++;
+				checksum += fires * (id + 1);
+				final long mix = (id * 31L + fires) % 11;
+				if (mix == 0 && back) {
+					// All regular events of this tick are already done, so the
+					// outcome of this reschedule does not depend on the order of
+					// the simultaneous events
+					final DenseEvent other = events[(int) ((id * 7919L + fires) % timedCount)];
+					if (!other.back) {
+						other.changeFreq(1 + (other.id + fires) % maxFreq);
+					}
+				} else if (mix == 1) {
+					updateFrequency(1 + (id * fires) % maxFreq);
+				}
+			}
+		}
+
+		long[] run() {
+			final Random rnd = new Random(1);
+			for (int i = 0; i < timedCount; i++) {
+				events[i] = new DenseEvent(i, 1 + rnd.nextInt(maxFreq), i % 5 == 0);
+			}
+			Timed.simulateUntil(simulatedTime);
+			return new long[] { totalFires, checksum, orderViolations };
+		}
+	}
+
+	private static long[] runWith(final EventQueue queue) {
+		return new SimulationContext(queue).call(() -> new Workload().run());
+	}
+
+	@Test
+	@Timeout(value = 10000, unit = TimeUnit.MILLISECONDS)
+	public void calendarMatchesHeap() {
+		final long[] heapResult = runWith(new HeapEventQueue());
+		final long[] calendarResult = runWith(new CalendarEventQueue());
+		assertEquals(0, heapResult[2], "Back preferred events should come last");
+		assertEquals(0, calendarResult[2], "Back preferred events should come last");
+		assertEquals(heapResult[0], calendarResult[0], "Both queues should deliver the same amount of events");
+		assertEquals(heapResult[1], calendarResult[1], "Both queues should deliver the same events");
+	}
+
+	@Test
+	@Timeout(value = 2000, unit = TimeUnit.MILLISECONDS)
+	public void heapPerformance() {
+		assertTrue(runWith(new HeapEventQueue())[0] > timedCount * simulatedTime / maxFreq);
+	}
+
+	@Test
+	@Timeout(value = 2000, unit = TimeUnit.MILLISECONDS)
+	public void calendarPerformance() {
+		assertTrue(runWith(new CalendarEventQueue())[0] > timedCount * simulatedTime / maxFreq);
+	}
+}
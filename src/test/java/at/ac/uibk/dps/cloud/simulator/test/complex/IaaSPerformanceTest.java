@@ -65,6 +65,7 @@ public class IaaSPerformanceTest extends IaaSRelatedFoundation {
 	static final double maxTaskLen = 50;
 	public int runningCounter = 0;
 	public int destroyCounter = 0;
+	public boolean bulkTasks = false;
 
 	@BeforeEach
 	public void resetSim() {
@@ -90,9 +91,19 @@ public class IaaSPerformanceTest extends IaaSRelatedFoundation {
 				runningCounter++;
 				myTaskCount = 1 + SeedSyncer.centralRnd.nextInt(maxTaskCount - 1);
 				try {
-					for (int j = 0; j < myTaskCount; j++) {
-						vm.newComputeTask(SeedSyncer.centralRnd.nextDouble() * maxTaskLen,
-								ResourceConsumption.unlimitedProcessing, this);
+					if (bulkTasks) {
+						final double[] totals = new double[myTaskCount];
+						final ConsumptionEvent[] events = new ConsumptionEvent[myTaskCount];
+						for (int j = 0; j < myTaskCount; j++) {
+							totals[j] = SeedSyncer.centralRnd.nextDouble() * maxTaskLen;
+							events[j] = this;
+						}
+						vm.newComputeTasks(totals, ResourceConsumption.unlimitedProcessing, events);
+					} else {
+						for (int j = 0; j < myTaskCount; j++) {
+							vm.newComputeTask(SeedSyncer.centralRnd.nextDouble() * maxTaskLen,
+									ResourceConsumption.unlimitedProcessing, this);
+						}
 					}
 				} catch (Exception e) {
 					throw new RuntimeException(e);
@@ -145,6 +156,14 @@ public class IaaSPerformanceTest extends IaaSRelatedFoundation {
 		assertEquals(0, basic.runningMachines.size(), "Should not have any running PMs");
 	}
 
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void bulkTaskPerformance() throws Exception {
+		bulkTasks = true;
+		genericPerformanceCheck(FirstFitScheduler.class, SchedulingDependentMachines.class);
+		assertEquals(0, basic.runningMachines.size(), "Should not have any running PMs");
+	}
+
 	@Test
 	@Timeout(value = 1500, unit = TimeUnit.MILLISECONDS)
 	public void roundRobinPerformance() throws Exception {
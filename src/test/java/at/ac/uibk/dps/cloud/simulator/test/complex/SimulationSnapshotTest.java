@@ -0,0 +1,225 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *
+ *  This file is part of DISSECT-CF.
+ *
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+
+package at.ac.uibk.dps.cloud.simulator.test.complex;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import at.ac.uibk.dps.cloud.simulator.test.IaaSRelatedFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.DeferredEvent;
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationSnapshot;
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.specialized.IaaSEnergyMeter;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager.VMManagementException;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.VirtualMachine;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ConstantConstraints;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.SchedulingDependentMachines;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ConsumptionEventAdapter;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.FirstFitScheduler;
+import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
+import hu.mta.sztaki.lpds.cloud.simulator.io.VirtualAppliance;
+
+public class SimulationSnapshotTest extends IaaSRelatedFoundation {
+	/**
+	 * Everything a fork needs to continue the simulation and to report on it.
+	 */
+	static class Scenario implements java.io.Serializable {
+		final IaaSService iaas;
+		final IaaSEnergyMeter meter;
+		final ArrayList<String> trace = new ArrayList<>();
+		int remainingJobs = 0;
+
+		Scenario(final IaaSService iaas) {
+			this.iaas = iaas;
+			meter = new IaaSEnergyMeter(iaas);
+			meter.startMeter(100, true);
+		}
+
+		void jobDone(final int id) {
+			trace.add(id + "@" + Timed.getFireCount());
+			if (--remainingJobs == 0) {
+				meter.stopMeter();
+			}
+		}
+
+		List<String> finish() {
+			Timed.simulateUntilLastEvent();
+			trace.add("end@" + Timed.getFireCount() + " " + meter.getTotalConsumption());
+			return trace;
+		}
+	}
+
+	/**
+	 * Requests a VM for a compute task of a given length.
+	 */
+	static class Job extends DeferredEvent {
+		final Scenario scenario;
+		final int id;
+		final double length;
+
+		Job(final Scenario scenario, final long delay, final int id, final double length) {
+			super(delay);
+			this.scenario = scenario;
+			this.id = id;
+			this.length = length;
+			scenario.remainingJobs++;
+		}
+
+		@Override
+		protected void eventAction() {
+			try {
+				final Repository repo = scenario.iaas.repositories.get(0);
+				final VirtualMachine vm = scenario.iaas.requestVM((VirtualAppliance) repo.contents().iterator().next(),
+						new ConstantConstraints(1, 1, 512), repo, 1)[0];
+				vm.subscribeStateChange(new JobStart(this));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Starts the task of the job once its VM runs.
+	 */
+	static class JobStart implements VirtualMachine.StateChange {
+		final Job job;
+
+		JobStart(final Job job) {
+			this.job = job;
+		}
+
+		@Override
+		public void stateChanged(final VirtualMachine vm, final VirtualMachine.State oldState,
+				final VirtualMachine.State newState) {
+			if (VirtualMachine.State.RUNNING.equals(newState)) {
+				try {
+					vm.newComputeTask(job.length, ResourceConsumption.unlimitedProcessing, new JobEnd(job, vm));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the completion of the job and releases its VM.
+	 */
+	static class JobEnd extends ConsumptionEventAdapter {
+		final Job job;
+		final VirtualMachine vm;
+
+		JobEnd(final Job job, final VirtualMachine vm) {
+			this.job = job;
+			this.vm = vm;
+		}
+
+		@Override
+		public void conComplete() {
+			super.conComplete();
+			job.scenario.jobDone(job.id);
+			try {
+				vm.destroy(false);
+			} catch (VMManagementException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private Scenario startScenario() throws Exception {
+		final Scenario sc = new Scenario(setupIaaS(FirstFitScheduler.class, SchedulingDependentMachines.class, 4, 2));
+		for (int i = 0; i < 40; i++) {
+			new Job(sc, 1 + i * 300, i, 1000 * (1 + i % 7));
+		}
+		Timed.simulateUntil(Timed.getFireCount() + 6000);
+		assertFalse(sc.trace.isEmpty(), "Some jobs should be complete at the snapshot");
+		assertTrue(sc.remainingJobs > 0, "Some jobs should still be in flight at the snapshot");
+		return sc;
+	}
+
+	@Test
+	@Timeout(value = 10, unit = TimeUnit.SECONDS)
+	public void forksContinueLikeTheOriginal() throws Exception {
+		final Scenario sc = startScenario();
+		final int completedAtSnapshot = sc.trace.size();
+		final SimulationSnapshot<Scenario> snap = SimulationSnapshot.take(sc);
+		final List<String> expected = sc.finish();
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			final ArrayList<Future<List<String>>> forks = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				forks.add(pool.submit(() -> snap.fork(copy -> {
+					assertEquals(completedAtSnapshot, copy.trace.size(), "The fork should start from the snapshot");
+					return copy.finish();
+				})));
+			}
+			for (final Future<List<String>> f : forks) {
+				assertEquals(expected, f.get(), "Forks should behave like the original simulation");
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	@Timeout(value = 10, unit = TimeUnit.SECONDS)
+	public void forksAreIndependent() throws Exception {
+		final Scenario sc = startScenario();
+		final SimulationSnapshot<Scenario> snap = SimulationSnapshot.take(sc);
+		final List<String> extended = snap.fork(copy -> {
+			new Job(copy, 100, 1000, 50000);
+			return copy.finish();
+		});
+		final List<String> plain = snap.fork(Scenario::finish);
+		assertEquals(plain.size() + 1, extended.size(), "Only the extended fork should see the extra job");
+		assertEquals(plain, sc.finish(), "The forks should not influence the original");
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void noSnapshotDuringEvents() {
+		final boolean[] rejected = { false };
+		DeferredEvent.deferAction(10, () -> {
+			try {
+				SimulationSnapshot.take(this);
+			} catch (IllegalStateException e) {
+				rejected[0] = true;
+			}
+		});
+		Timed.simulateUntilLastEvent();
+		assertTrue(rejected[0], "Snapshots should not be allowed while events are delivered");
+	}
+}
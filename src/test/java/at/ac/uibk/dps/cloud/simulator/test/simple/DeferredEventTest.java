@@ -160,5 +160,40 @@ public class DeferredEventTest extends TestFoundation {
 		assertFalse(arrival.get());
 	}
 
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	void peerCancellationDuringDispatch() {
+		final DeferredTester[] peers = new DeferredTester[3];
+		new DeferredEvent(5) {
+			@Override
+			protected void eventAction() {
+				peers[0].cancel();
+				cancel();
+			}
+		};
+		for (int i = 0; i < peers.length; i++) {
+			peers[i] = new DeferredTester(5);
+		}
+		Timed.simulateUntilLastEvent();
+		assertTrue(peers[0].isCancelled(), "The peer should be cancelled");
+		assertFalse(peers[0].eventFired, "Cancelled peer should not receive its event");
+		assertTrue(peers[1].eventFired && peers[2].eventFired, "Other peers should receive their events");
+	}
 
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	void reuseAfterDelivery() {
+		for (int round = 0; round < 10; round++) {
+			final DeferredTester skipped = new DeferredTester(3);
+			Timed.skipEventsTill(Timed.getFireCount() + 5);
+			assertTrue(skipped.isCancelled(), "Skipped events should be cancelled");
+			final DeferredTester delivered = new DeferredTester(3);
+			final DeferredTester sameTime = new DeferredTester(3);
+			final DeferredTester cancelled = new DeferredTester(7);
+			cancelled.cancel();
+			Timed.simulateUntilLastEvent();
+			assertTrue(delivered.eventFired && sameTime.eventFired, "Events should arrive with reused dispatchers");
+			assertFalse(skipped.eventFired || cancelled.eventFired, "Skipped or cancelled events should not arrive");
+		}
+	}
 }
@@ -0,0 +1,166 @@
+/*
+ *  ========================================================================
+ *  DIScrete event baSed Energy Consumption simulaTor 
+ *    					             for Clouds and Federations (DISSECT-CF)
+ *  ========================================================================
+ *  
+ *  This file is part of DISSECT-CF.
+ *  
+ *  DISSECT-CF is free software: you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or (at
+ *  your option) any later version.
+ *  
+ *  DISSECT-CF is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser
+ *  General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with DISSECT-CF.  If not, see <http://www.gnu.org/licenses/>.
+ *  
+ *  (C) Copyright 2017, Gabor Kecskemeti (g.kecskemeti@ljmu.ac.uk)
+ */
+
+package at.ac.uibk.dps.cloud.simulator.test.simple;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import at.ac.uibk.dps.cloud.simulator.test.ConsumptionEventAssert;
+import at.ac.uibk.dps.cloud.simulator.test.TestFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationSnapshot;
+import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.DirectEnergyMeter;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.LinearConsumptionModel;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.recording.TimeSeriesReader;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.recording.TimeSeriesRecorder;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.recording.TimeSeriesWriter;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinConsumer;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinProvider;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption;
+
+public class TimeSeriesTest extends TestFoundation {
+	@TempDir
+	Path tempDir;
+
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void writeAndReadBack() throws IOException {
+		final Path file = tempDir.resolve("series.bin");
+		final int count = 101;
+		final long[] stamps = new long[count];
+		long now = 1135130133000L;
+		try (TimeSeriesWriter w = new TimeSeriesWriter(file, Arrays.asList("a", "b"), 8, 2)) {
+			for (int i = 0; i < count; i++) {
+				// Irregular gaps, some of them close to the delta limit
+				now += i % 10 == 0 ? Integer.MAX_VALUE : i % 3;
+				stamps[i] = now;
+				w.append(now, new double[] { i, -i / 3.0 });
+			}
+		}
+		try (TimeSeriesReader r = new TimeSeriesReader(file)) {
+			assertEquals(Arrays.asList("a", "b"), r.getColumnNames());
+			assertEquals(count, r.getSampleCount());
+			// Backwards to ensure blocks are decoded out of order
+			for (int i = count - 1; i >= 0; i--) {
+				assertEquals(stamps[i], r.getTimestamp(i), "Timestamp mismatch at " + i);
+				assertEquals(i, r.getValue(0, i), 0);
+				assertEquals(-i / 3.0, r.getValue(1, i), 0);
+			}
+			assertThrows(IndexOutOfBoundsException.class, () -> r.getTimestamp(count));
+			assertThrows(IndexOutOfBoundsException.class, () -> r.getValue(2, 0));
+		}
+	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void rejectUnencodableTimestamps() throws IOException {
+		try (TimeSeriesWriter w = new TimeSeriesWriter(tempDir.resolve("bad.bin"), Arrays.asList("a"))) {
+			w.append(10, new double[] { 1 });
+			assertThrows(IllegalArgumentException.class, () -> w.append(9, new double[] { 1 }));
+			assertThrows(IllegalArgumentException.class,
+					() -> w.append(11 + Integer.MAX_VALUE, new double[] { 1 }));
+			assertThrows(IllegalArgumentException.class, () -> w.append(11, new double[] { 1, 2 }));
+		}
+		try (TimeSeriesReader r = new TimeSeriesReader(tempDir.resolve("bad.bin"))) {
+			assertEquals(1, r.getSampleCount());
+		}
+		try (TimeSeriesWriter w = new TimeSeriesWriter(tempDir.resolve("blocks.bin"), Arrays.asList("a"), 2, 2)) {
+			w.append(10, new double[] { 1 });
+			w.append(20, new double[] { 1 });
+			// The first sample of the next block should be ordered as well
+			assertThrows(IllegalArgumentException.class, () -> w.append(15, new double[] { 1 }));
+			w.append(20, new double[] { 1 });
+		}
+	}
+
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void recordMeter() throws IOException {
+		final MaxMinProvider provider = new MaxMinProvider(1);
+		provider.setCurrentPowerBehavior(new PowerState(10, 20, LinearConsumptionModel::new));
+		final DirectEnergyMeter meter = new DirectEnergyMeter(provider);
+		meter.startEventDrivenMeter(true);
+		new ResourceConsumption(5000, 0.5, new MaxMinConsumer(1), provider, new ConsumptionEventAssert())
+				.registerConsumption();
+		final TimeSeriesRecorder recorder = new TimeSeriesRecorder();
+		recorder.addSource("time", Timed::getFireCount);
+		recorder.addMeter("energy", meter);
+		final Path file = tempDir.resolve("meter.bin");
+		final long start = Timed.getFireCount();
+		recorder.startRecording(file, 100);
+		assertThrows(IllegalStateException.class, () -> recorder.addSource("late", () -> 0));
+		Timed.simulateUntil(start + 20000 + 50);
+		recorder.stopRecording();
+		assertFalse(recorder.isRecording());
+		final double total = meter.getTotalConsumption();
+		Timed.simulateUntilLastEvent();
+		try (TimeSeriesReader r = new TimeSeriesReader(file)) {
+			final long samples = r.getSampleCount();
+			// One at the start, one per interval and the last one at stopping
+			assertEquals(20000 / 100 + 2, samples);
+			for (long i = 0; i < samples; i++) {
+				assertEquals(r.getTimestamp(i), r.getValue(0, i), 0, "The sample should be collected at its time");
+				if (i > 0) {
+					assertTrue(r.getValue(1, i) > r.getValue(1, i - 1), "Energy should increase");
+				}
+			}
+			// Half load for 10000 ticks, idle afterwards
+			assertEquals(10000 * 20 + 10050 * 10, r.getValue(1, samples - 1), 0.0001);
+			assertEquals(total, r.getValue(1, samples - 1), 0.0001);
+		}
+	}
+
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void forkDuringRecording() throws IOException {
+		final TimeSeriesRecorder recorder = new TimeSeriesRecorder();
+		recorder.addSource("time", Timed::getFireCount);
+		final Path file = tempDir.resolve("forked.bin");
+		recorder.startRecording(file, 100);
+		Timed.simulateUntil(Timed.getFireCount() + 1050);
+		final SimulationSnapshot<TimeSeriesRecorder> snap = SimulationSnapshot.take(recorder);
+		final boolean[] copyStates = snap.fork(copy -> {
+			final boolean recordingAtFork = copy.isRecording();
+			Timed.simulateUntil(Timed.getFireCount() + 1000);
+			return new boolean[] { recordingAtFork, copy.isSubscribed() };
+		});
+		assertFalse(copyStates[0], "The fork should not continue the recording");
+		assertFalse(copyStates[1], "The fork should stop collecting samples");
+		Timed.simulateUntil(Timed.getFireCount() + 1000);
+		recorder.stopRecording();
+		try (TimeSeriesReader r = new TimeSeriesReader(file)) {
+			assertEquals(2050 / 100 + 2, r.getSampleCount(), "Only the original should record");
+		}
+	}
+}
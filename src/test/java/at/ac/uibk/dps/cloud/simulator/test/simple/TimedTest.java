@@ -25,9 +25,13 @@
 
 package at.ac.uibk.dps.cloud.simulator.test.simple;
 
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import at.ac.uibk.dps.cloud.simulator.test.TestFoundation;
@@ -341,4 +345,31 @@ public class TimedTest extends TestFoundation {
 		Timed.skipEventsTill(10);
 		assertEquals(100, Timed.getFireCount(), "Should not allow negative time jumps");
 	}
+
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void independentContexts() throws Exception {
+		final SingleFire defaultFire = new SingleFire();
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		final ArrayList<Future<Long>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final long offset = i;
+			results.add(pool.submit(() -> new SimulationContext().call(() -> {
+				Timed.jumpTime(offset);
+				final RepeatedFire fire = new RepeatedFire();
+				Timed.simulateUntilLastEvent();
+				assertEquals(expectedFires, fire.myfires, "Not enough timed events in the context");
+				return Timed.getFireCount();
+			})));
+		}
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i + expectedFires * setFrequency + 1, results.get(i).get(),
+					"Contexts should have their own clocks");
+		}
+		pool.shutdown();
+		assertEquals(0, Timed.getFireCount(), "The default context should not advance");
+		assertTrue(defaultFire.isSubscribed(), "The default context should keep its events");
+		Timed.simulateUntilLastEvent();
+		assertEquals(1, defaultFire.myfires, "Default context event did not arrive");
+	}
 }
@@ -24,6 +24,8 @@
  */
 package at.ac.uibk.dps.cloud.simulator.test.simple;
 
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationSnapshot;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.AlwaysOnMachines;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.FirstFitScheduler;
@@ -87,4 +89,73 @@ public class UtilTest extends TestFoundation {
 		temp.delete();
 	}
 
+	@Test
+	@Timeout(value = 600, unit = TimeUnit.MILLISECONDS)
+	public void cloudLoaderSharingTest() throws Exception {
+		final String machine = cloudDef.substring(cloudDef.indexOf("<machine"), cloudDef.indexOf("</machine>") + 10);
+		final String twoMachines = cloudDef.substring(0, cloudDef.indexOf("<machine")) + machine + machine
+				+ cloudDef.substring(cloudDef.indexOf("</machine>") + 10);
+		File temp = File.createTempFile("dissect-test", "cloudLoader");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		raf.writeBytes(twoMachines);
+		raf.close();
+		IaaSService separate = CloudLoader.loadNodes(temp.toString());
+		IaaSService shared = CloudLoader.loadNodes(temp.toString(), true);
+		temp.delete();
+		Assertions.assertNotSame(separate.machines.get(0).getCurrentPowerBehavior(),
+				separate.machines.get(1).getCurrentPowerBehavior(), "Power states should not be shared by default");
+		separate.machines.get(0).getCurrentPowerBehavior().setMinConsumption(100);
+		Assertions.assertEquals(296, separate.machines.get(1).getCurrentPowerBehavior().getMinConsumption(), 1e-9,
+				"Altering a machine's power state should not affect the others");
+		Assertions.assertSame(shared.machines.get(0).getCurrentPowerBehavior(),
+				shared.machines.get(1).getCurrentPowerBehavior(), "Identical machines should share on request");
+	}
+
+	@Test
+	@Timeout(value = 600, unit = TimeUnit.MILLISECONDS)
+	public void cloudLoaderTabulatedTest() throws Exception {
+		final String machine = cloudDef.substring(cloudDef.indexOf("<machine"), cloudDef.indexOf("</machine>") + 10)
+				.replace("\" />", "\" samples=\"10\" />");
+		final String twoMachines = cloudDef.substring(0, cloudDef.indexOf("<machine")) + machine + machine
+				+ cloudDef.substring(cloudDef.indexOf("</machine>") + 10);
+		File temp = File.createTempFile("dissect-test", "cloudLoader");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		raf.writeBytes(twoMachines);
+		raf.close();
+		IaaSService cloud = CloudLoader.loadNodes(temp.toString());
+		temp.delete();
+		Assertions.assertEquals(2, cloud.machines.size(), "Both PMs should be loaded");
+		// AlwaysOnMachines switches on the PMs, so they use their default host state
+		final PowerState hostState = cloud.machines.get(0).getCurrentPowerBehavior();
+		final PowerState otherState = cloud.machines.get(1).getCurrentPowerBehavior();
+		Assertions.assertNotSame(hostState, otherState, "Tabulated power states should not be shared");
+		Assertions.assertEquals(394.5, hostState.getCurrentPower(0.5), 1e-9,
+				"Tabulated power states should report the power draw of their model");
+		hostState.setMinConsumption(100);
+		Assertions.assertEquals(394.5, otherState.getCurrentPower(0.5), 1e-9,
+				"Altering a tabulated power state should not affect the others");
+	}
+
+	@Test
+	@Timeout(value = 600, unit = TimeUnit.MILLISECONDS)
+	public void cloudLoaderTabulatedSnapshotTest() throws Exception {
+		File temp = File.createTempFile("dissect-test", "cloudLoader");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		raf.writeBytes(cloudDef.replace("\" />", "\" samples=\"10\" />"));
+		raf.close();
+		IaaSService cloud = CloudLoader.loadNodes(temp.toString());
+		temp.delete();
+		final SimulationSnapshot<IaaSService> snap = SimulationSnapshot.take(cloud);
+		final double forkedPower = snap.fork(forked -> {
+			final PowerState forkedState = forked.machines.get(0).getCurrentPowerBehavior();
+			// New characteristics need the sampled model of the restored state
+			forkedState.setMinConsumption(100);
+			return forkedState.getCurrentPower(0.5);
+		});
+		final PowerState hostState = cloud.machines.get(0).getCurrentPowerBehavior();
+		hostState.setMinConsumption(100);
+		Assertions.assertEquals(hostState.getCurrentPower(0.5), forkedPower, 1e-9,
+				"Restored tabulated power states should sample their model like the original");
+	}
+
 }
@@ -26,16 +26,20 @@
 package at.ac.uibk.dps.cloud.simulator.test.simple.cloud;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import at.ac.uibk.dps.cloud.simulator.test.ConsumptionEventAssert;
 import at.ac.uibk.dps.cloud.simulator.test.IaaSRelatedFoundation;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine.ResourceAllocation;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine.State;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachineTemplate;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager.VMManagementException;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VirtualMachine;
@@ -47,6 +51,7 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption
 import hu.mta.sztaki.lpds.cloud.simulator.io.NetworkNode.NetworkException;
 import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
 import hu.mta.sztaki.lpds.cloud.simulator.io.VirtualAppliance;
+import hu.mta.sztaki.lpds.cloud.simulator.util.PowerTransitionGenerator.PowerStateKind;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
@@ -719,4 +724,38 @@ public class PMTest extends IaaSRelatedFoundation {
 			otherPM.migrateVM(vm, firstPM);
 		});
 	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void templateSharingTest() {
+		final EnumMap<PowerStateKind, Map<String, PowerState>> transitions = new EnumMap<>(PowerStateKind.class);
+		transitions.put(PowerStateKind.host, defaultHostTransitions);
+		transitions.put(PowerStateKind.storage, defaultStorageTransitions);
+		transitions.put(PowerStateKind.network, defaultNetworkTransitions);
+		final PhysicalMachineTemplate template = new PhysicalMachineTemplate(reqcores, reqProcessing, reqmem, reqond,
+				reqoffd, transitions);
+		final PhysicalMachine first = template
+				.createMachine(template.createRepository("first", 123, 456, 789, 12, new HashMap<>()));
+		final PhysicalMachine second = template
+				.createMachine(template.createRepository("second", 123, 456, 789, 12, new HashMap<>()));
+		final PhysicalMachine priv = template
+				.createPrivateMachine(template.createRepository("private", 123, 456, 789, 12, new HashMap<>()));
+		assertSame(first.getCurrentPowerBehavior(), second.getCurrentPowerBehavior(),
+				"Machines of a template should share their power states");
+		assertNotSame(first.getCurrentPowerBehavior(), priv.getCurrentPowerBehavior(),
+				"Private machines should have their own power states");
+		priv.getCurrentPowerBehavior().setMinConsumption(0);
+		assertEquals(minpower, first.getCurrentPowerBehavior().getMinConsumption(), 0.0001,
+				"Private power states should not alter the shared ones");
+		assertThrows(UnsupportedOperationException.class,
+				() -> template.getPowerBehavior(PowerStateKind.host).put("new", first.getCurrentPowerBehavior()));
+		for (PhysicalMachine machine : List.of(first, second, priv)) {
+			assertEquals(reqond, machine.getCurrentOnOffDelay(), "On delay mismatch");
+			machine.turnon();
+		}
+		Timed.simulateUntilLastEvent();
+		for (PhysicalMachine machine : List.of(first, second, priv)) {
+			assertTrue(machine.isRunning(), "Machines created from templates should be able to turn on");
+		}
+	}
 }
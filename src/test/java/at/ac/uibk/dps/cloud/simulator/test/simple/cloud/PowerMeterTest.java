@@ -27,11 +27,16 @@ package at.ac.uibk.dps.cloud.simulator.test.simple.cloud;
 
 import hu.mta.sztaki.lpds.cloud.simulator.DeferredEvent;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.DirectEnergyMeter;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.EnergyMeter;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.MonitorConsumption;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.WindowedConsumptionMonitor;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.ConstantConsumptionModel;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.LinearConsumptionModel;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.NoIdleConsumptionModel;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.PowerState;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.powermodelling.TabulatedConsumptionModel;
+import hu.mta.sztaki.lpds.cloud.simulator.energy.specialized.ColumnarIaaSEnergyMeter;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.specialized.IaaSEnergyMeter;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.specialized.PhysicalMachineEnergyMeter;
 import hu.mta.sztaki.lpds.cloud.simulator.energy.specialized.SimpleVMEnergyMeter;
@@ -43,7 +48,10 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ResourceConstraints;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VirtualMachine;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.AlwaysOnMachines;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.SchedulingDependentMachines;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinConsumer;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinProvider;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.FirstFitScheduler;
 import hu.mta.sztaki.lpds.cloud.simulator.io.NetworkNode.NetworkException;
 import hu.mta.sztaki.lpds.cloud.simulator.io.NetworkNode;
@@ -124,6 +132,48 @@ public class PowerMeterTest extends IaaSRelatedFoundation {
 				psConstant.getCurrentPower(0.5), 0.001, "Constant consumption model is not behaving as expected");
 	}
 
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void eventDrivenMeasurementTest() {
+		final double pp = 1;
+		final MaxMinProvider provider = new MaxMinProvider(pp);
+		provider.setCurrentPowerBehavior(new PowerState(idlepower, maxpower - idlepower, LinearConsumptionModel::new));
+		final MaxMinConsumer consumer = new MaxMinConsumer(pp);
+		final DirectEnergyMeter periodic = new DirectEnergyMeter(provider);
+		final DirectEnergyMeter eventDriven = new DirectEnergyMeter(provider);
+		assertTrue(periodic.startMeter(aSecond / 10, true));
+		assertTrue(eventDriven.startEventDrivenMeter(true));
+		assertFalse(eventDriven.startMeter(aSecond, false), "Should not start a second session");
+		DeferredEvent.deferAction(37, () -> new ResourceConsumption(pp * aSecond, pp / 3, consumer, provider,
+				new ConsumptionEventAssert()).registerConsumption());
+		DeferredEvent.deferAction(1234, () -> new ResourceConsumption(pp * aSecond / 2, pp / 2, consumer, provider,
+				new ConsumptionEventAssert()).registerConsumption());
+		DeferredEvent.deferAction(2511, () -> new ResourceConsumption(pp * aSecond / 4,
+				ResourceConsumption.unlimitedProcessing, consumer, provider, new ConsumptionEventAssert())
+				.registerConsumption());
+		for (int i = 1; i <= 10; i++) {
+			Timed.simulateUntil(Timed.getFireCount() + aSecond / 3);
+			// Stopping collects the reading of the periodic meter for the current time
+			periodic.stopMeter();
+			assertEquals(periodic.getTotalConsumption(), eventDriven.getTotalConsumption(), 0.0001,
+					"Event driven metering should report the same totals as periodic metering");
+			periodic.startMeter(aSecond / 10, false);
+		}
+		// All consumptions complete by then
+		Timed.simulateUntil(5 * aSecond);
+		periodic.stopMeter();
+		final long before = Timed.getFireCount();
+		Timed.simulateUntilLastEvent();
+		assertEquals(before, Timed.getFireCount(), "Event driven meters should not add events");
+		assertTrue(eventDriven.isMetering());
+		eventDriven.stopMeter();
+		assertFalse(eventDriven.isMetering());
+		assertEquals(periodic.getTotalConsumption(), eventDriven.getTotalConsumption(), 0.0001,
+				"Event driven metering should report the same totals as periodic metering");
+		assertTrue(periodic.getTotalConsumption() > idlepower * before,
+				"The consumptions should increase the consumption above idle");
+	}
+
 	static class MeterManager extends Timed {
 		IaaSService iaas;
 		int expectedVMnum;
@@ -298,6 +348,69 @@ public class PowerMeterTest extends IaaSRelatedFoundation {
 		assertEquals(meteredResults[1] - meteredResults[0], meteredResults[2], 0.01, "The energy consumption should be increasing with the two new machine's consumption");
 	}
 
+	@Test
+	@Timeout(value = 300, unit = TimeUnit.MILLISECONDS)
+	public void columnarIaaStest() throws Exception {
+		final int machineCount = 2;
+		final int coreCount = 16;
+		final IaaSService iaas = setupIaaS(FirstFitScheduler.class, SchedulingDependentMachines.class, machineCount,
+				coreCount);
+		final ColumnarIaaSEnergyMeter columnar = new ColumnarIaaSEnergyMeter(iaas);
+		assertEquals(machineCount, columnar.getMeteredMachineCount());
+		final ArrayList<DirectEnergyMeter> reference = new ArrayList<>();
+		for (PhysicalMachine pm : iaas.machines) {
+			for (ResourceSpreader rs : Arrays.asList(pm, pm.localDisk.diskinbws, pm.localDisk.diskoutbws,
+					pm.localDisk.inbws, pm.localDisk.outbws)) {
+				final DirectEnergyMeter dem = new DirectEnergyMeter(rs);
+				dem.startEventDrivenMeter(true);
+				reference.add(dem);
+			}
+		}
+		columnar.startMeter(500, true);
+		fireVMat(iaas, 100, 400, 4);
+		fireVMat(iaas, 1700, 200, 20);
+		Timed.simulateUntil(Timed.getFireCount() + 20 * aSecond);
+		columnar.stopMeter();
+		double referenceTotal = 0;
+		for (DirectEnergyMeter dem : reference) {
+			dem.stopMeter();
+			referenceTotal += dem.getTotalConsumption();
+		}
+		final double total = columnar.getTotalConsumption();
+		assertEquals(referenceTotal, total, total * 1e-9,
+				"The columnar meter should report the same consumption as the event driven ones");
+		double viewTotal = 0;
+		for (PhysicalMachine pm : iaas.machines) {
+			viewTotal += columnar.getView(pm).getTotalConsumption();
+		}
+		assertEquals(total, viewTotal, total * 1e-9, "The views should report all consumption of the IaaS");
+		Timed.simulateUntilLastEvent();
+		columnar.startMeter(500, false);
+		iaas.bulkHostRegistration(Arrays.asList(
+				dummyPMsCreator(machineCount, coreCount, IaaSServiceTest.dummyPMPerCorePP, IaaSServiceTest.dummyPMMemory)));
+		assertEquals(machineCount * 2, columnar.getMeteredMachineCount());
+		final PhysicalMachine removed = iaas.machines.get(0);
+		final ColumnarIaaSEnergyMeter.PMView removedView = columnar.getView(removed);
+		Timed.simulateUntil(Timed.getFireCount() + aSecond);
+		final double removedTotal = removedView.getTotalConsumption();
+		assertTrue(removedTotal > 0, "The removed machine should have consumed before its removal");
+		iaas.deregisterHost(removed);
+		assertNull(columnar.getView(removed));
+		assertEquals(0, removedView.getTotalConsumption());
+		assertEquals(machineCount * 2 - 1, columnar.getMeteredMachineCount());
+		double remainingTotal = 0;
+		for (PhysicalMachine pm : iaas.machines) {
+			assertSame(pm, columnar.getView(pm).getObserved());
+			remainingTotal += columnar.getView(pm).getTotalConsumption();
+		}
+		// The removal also collects the machine's readings since the last
+		// metering event
+		final double retained = columnar.getTotalConsumption() - remainingTotal;
+		assertTrue(retained >= removedTotal * (1 - 1e-9), "Removed machines should keep their past consumption");
+		columnar.stopMeter();
+		assertFalse(columnar.isSubscribed());
+	}
+
 	@Test
 	@Timeout(value = 400, unit = TimeUnit.MILLISECONDS)
 	public void simpleConsumptionMonitoring() {
@@ -321,4 +434,73 @@ public class PowerMeterTest extends IaaSRelatedFoundation {
 		assertTrue(mon.getSubDayProcessing() >= mon.getSubHourProcessing()
 						&& mon.getSubHourProcessing() >= mon.getSubSecondProcessing(), "Should report consumption with day>hour>sec");
 	}
+
+	@Test
+	@Timeout(value = 2000, unit = TimeUnit.MILLISECONDS)
+	public void windowedConsumptionMonitoring() {
+		final MaxMinProvider early = new MaxMinProvider(1);
+		final MaxMinProvider late = new MaxMinProvider(1);
+		final ResourceConsumption earlyCon = new ResourceConsumption(aSecond * 200000, 1,
+				new MaxMinConsumer(1), early, new ConsumptionEventAssert());
+		earlyCon.registerConsumption();
+		final ResourceConsumption lateCon = new ResourceConsumption(aSecond * 200000, 1,
+				new MaxMinConsumer(1), late, new ConsumptionEventAssert());
+		lateCon.registerConsumption();
+		final WindowedConsumptionMonitor monitor = new WindowedConsumptionMonitor(aSecond);
+		final WindowedConsumptionMonitor.Handle earlyReports = monitor.monitor(early);
+		Timed.simulateUntil(Timed.getFireCount() + 90 * aSecond + 1);
+		final WindowedConsumptionMonitor.Handle lateReports = monitor.monitor(late);
+		assertEquals(aSecond, earlyReports.getProcessing(WindowedConsumptionMonitor.Window.SECOND), 0.0001,
+				"Should report the processing of the last second");
+		assertEquals(60 * aSecond, earlyReports.getProcessing(WindowedConsumptionMonitor.Window.MINUTE), 0.0001,
+				"Should report the processing of the last minute");
+		assertEquals(90 * aSecond, earlyReports.getProcessing(WindowedConsumptionMonitor.Window.DAY), 0.0001,
+				"Should report the processing since the start of monitoring");
+		assertEquals(0, lateReports.getProcessing(WindowedConsumptionMonitor.Window.DAY), 0.0001,
+				"Should not report processing before the monitoring started");
+		Timed.simulateUntil(Timed.getFireCount() + 100000 * aSecond);
+		assertEquals(60 * aSecond, lateReports.getProcessing(WindowedConsumptionMonitor.Window.MINUTE), 0.0001,
+				"Should report the processing of the last minute");
+		for (WindowedConsumptionMonitor.Handle h : Arrays.asList(earlyReports, lateReports)) {
+			final double hour = h.getProcessing(WindowedConsumptionMonitor.Window.HOUR);
+			assertTrue(hour >= 3600 * aSecond && hour <= 3660 * aSecond,
+					"The hour window should be at most a minute longer than an hour");
+			final double day = h.getProcessing(WindowedConsumptionMonitor.Window.DAY);
+			assertTrue(day >= 86400 * aSecond && day <= 90000 * aSecond,
+					"The day window should be at most an hour longer than a day");
+		}
+		monitor.stopMonitoring(earlyReports);
+		assertEquals(1, monitor.getMonitoredCount());
+		assertEquals(0, earlyReports.getProcessing(WindowedConsumptionMonitor.Window.SECOND), 0.0001,
+				"Removed spreaders should not have reports");
+		assertSame(late, lateReports.getMonitored());
+		assertEquals(60 * aSecond, lateReports.getProcessing(WindowedConsumptionMonitor.Window.MINUTE), 0.0001,
+				"Remaining spreaders should keep their reports");
+		monitor.cancelMonitoring();
+		earlyCon.cancel();
+		lateCon.cancel();
+	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void tabulatedConsumptionModels() {
+		final PowerState linear = new PowerState(idlepower, maxpower - idlepower, LinearConsumptionModel::new);
+		final PowerState tabulatedLinear = new PowerState(idlepower, maxpower - idlepower,
+				TabulatedConsumptionModel.compile(LinearConsumptionModel::new, 7));
+		final PowerState noIdle = new PowerState(idlepower, maxpower - idlepower, NoIdleConsumptionModel::new);
+		final PowerState tabulatedNoIdle = new PowerState(idlepower, maxpower - idlepower,
+				TabulatedConsumptionModel.compile(NoIdleConsumptionModel::new));
+		for (int i = 0; i <= 1000; i++) {
+			final double load = i / 1000.0;
+			assertEquals(linear.getCurrentPower(load), tabulatedLinear.getCurrentPower(load), 1e-9,
+					"Linear models should be interpolated exactly");
+		}
+		assertEquals(0, tabulatedNoIdle.getCurrentPower(0), 0, "Samples should be reported exactly");
+		assertEquals(noIdle.getCurrentPower(0.37), tabulatedNoIdle.getCurrentPower(0.37), 1e-9,
+				"Linear sections should be interpolated exactly");
+		tabulatedLinear.setMinConsumption(idlepower / 2);
+		linear.setMinConsumption(idlepower / 2);
+		assertEquals(linear.getCurrentPower(0.5), tabulatedLinear.getCurrentPower(0.5), 1e-9,
+				"Changed power characteristics should be reflected in the lookups");
+	}
 }
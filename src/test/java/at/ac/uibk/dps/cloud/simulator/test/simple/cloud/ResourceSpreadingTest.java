@@ -25,18 +25,28 @@
 
 package at.ac.uibk.dps.cloud.simulator.test.simple.cloud;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
+import com.sun.management.ThreadMXBean;
+
 import at.ac.uibk.dps.cloud.simulator.test.ConsumptionEventAssert;
 import at.ac.uibk.dps.cloud.simulator.test.ConsumptionEventFoundation;
+import hu.mta.sztaki.lpds.cloud.simulator.DeferredEvent;
+import hu.mta.sztaki.lpds.cloud.simulator.SimulationContext;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.CoalescedConsumption;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ConsumptionEventAdapter;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinConsumer;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.MaxMinProvider;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceConsumption;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.resourcemodel.ResourceSpreader;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -279,4 +289,648 @@ public class ResourceSpreadingTest extends ConsumptionEventFoundation {
 				.registerConsumption();
 		Timed.simulateUntilLastEvent();
 	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void largeGroupSplitAndMerge() {
+		final int chainLength = 50;
+		final int half = chainLength / 2;
+		final MaxMinProvider[] providers = new MaxMinProvider[chainLength];
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[chainLength];
+		for (int i = 0; i < chainLength; i++) {
+			providers[i] = new MaxMinProvider(1);
+			consumers[i] = new MaxMinConsumer(1);
+		}
+		// A single chain of spreaders, the middle link is a short consumption
+		for (int i = 0; i < chainLength; i++) {
+			new ResourceConsumption(1000, 1, consumers[i], providers[i], new ConsumptionEventAssert())
+					.registerConsumption();
+			if (i + 1 < chainLength) {
+				new ResourceConsumption(i + 1 == half ? 10 : 1000, 1, consumers[i], providers[i + 1],
+						new ConsumptionEventAssert()).registerConsumption();
+			}
+		}
+		Timed.fire();
+		assertSame(providers[0].getSyncer(), providers[chainLength - 1].getSyncer(),
+				"The chain should form a single influence group");
+		Timed.simulateUntil(100);
+		assertNotSame(providers[0].getSyncer(), providers[chainLength - 1].getSyncer(),
+				"The chain should be split once its middle link completes");
+		assertSame(providers[0].getSyncer(), consumers[half - 1].getSyncer(),
+				"The first half should remain a single group");
+		assertSame(providers[half].getSyncer(), consumers[chainLength - 1].getSyncer(),
+				"The second half should remain a single group");
+		new ResourceConsumption(1000, 1, consumers[0], providers[chainLength - 1], new ConsumptionEventAssert())
+				.registerConsumption();
+		Timed.fire();
+		assertSame(providers[0].getSyncer(), providers[half].getSyncer(),
+				"The two halves should be merged by the new consumption");
+		assertSame(consumers[half - 1].getSyncer(), consumers[chainLength - 1].getSyncer(),
+				"All members of the merged groups should know their new group");
+		Timed.simulateUntilLastEvent();
+		assertNull(providers[0].getSyncer(), "No group should remain after all consumptions complete");
+	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void groupSplitByLeavingSpreader() {
+		final MaxMinProvider[] providers = { new MaxMinProvider(1), new MaxMinProvider(1) };
+		for (final MaxMinProvider provider : providers) {
+			new ResourceConsumption(100, 0.5, new MaxMinConsumer(1), provider, new ConsumptionEventAssert())
+					.registerConsumption();
+		}
+		// The only spreader connecting the two providers
+		final MaxMinConsumer linker = new MaxMinConsumer(1);
+		for (final MaxMinProvider provider : providers) {
+			new ResourceConsumption(5, 0.5, linker, provider, new ConsumptionEventAssert(10)).registerConsumption();
+		}
+		Timed.fire();
+		assertSame(providers[0].getSyncer(), providers[1].getSyncer(), "The linker should join the two providers");
+		Timed.simulateUntil(20);
+		assertNull(linker.getSyncer(), "The linker should leave the group once it has nothing to process");
+		assertNotSame(providers[0].getSyncer(), providers[1].getSyncer(),
+				"The providers should be in separate groups after the linker left");
+		Timed.simulateUntilLastEvent();
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void completionsInMergedAndSplitGroups() {
+		final int groupSize = 100;
+		final MaxMinProvider[] providers = { new MaxMinProvider(1000), new MaxMinProvider(1000) };
+		for (int i = 0; i < 2 * groupSize; i++) {
+			final long duration = 10 * (i + 1);
+			new ResourceConsumption(duration, ResourceConsumption.unlimitedProcessing, new MaxMinConsumer(1),
+					providers[i / groupSize], new ConsumptionEventAssert(duration)).registerConsumption();
+		}
+		Timed.fire();
+		assertNotSame(providers[0].getSyncer(), providers[1].getSyncer(),
+				"The providers should start in independent groups");
+		Timed.simulateUntil(5);
+		// A consumer connecting the two groups, sharing its capacity equally
+		final MaxMinConsumer linker = new MaxMinConsumer(1);
+		for (final MaxMinProvider provider : providers) {
+			new ResourceConsumption(10, ResourceConsumption.unlimitedProcessing, linker, provider,
+					new ConsumptionEventAssert(25)).registerConsumption();
+		}
+		Timed.fire();
+		assertSame(providers[0].getSyncer(), providers[1].getSyncer(), "The groups should be merged by the linker");
+		Timed.simulateUntil(30);
+		assertNotSame(providers[0].getSyncer(), providers[1].getSyncer(),
+				"The groups should be split once the linker completes");
+		Timed.simulateUntilLastEvent();
+		assertEquals(2 * groupSize + 2, ConsumptionEventAssert.hits.size(),
+				"All consumptions should complete at their expected times");
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void packedStorageProcessing() {
+		final int conCount = 50;
+		final MaxMinProvider packed = new MaxMinProvider(10);
+		packed.setPackedStorage(true);
+		assertTrue(packed.isPackedStorage(), "The provider should use the packed storage");
+		final MaxMinProvider[] providers = { new MaxMinProvider(10), packed };
+		final ResourceConsumption[][] cons = new ResourceConsumption[2][conCount];
+		final ConsumptionEventAssert[][] events = new ConsumptionEventAssert[2][conCount];
+		for (int p = 0; p < 2; p++) {
+			for (int i = 0; i < conCount; i++) {
+				events[p][i] = new ConsumptionEventAssert();
+				cons[p][i] = new ResourceConsumption(100 + 37 * i, 0.1 + i % 7 * 0.3, new MaxMinConsumer(1 + i % 3),
+						providers[p], events[p][i]);
+				cons[p][i].registerConsumption();
+			}
+		}
+		Timed.simulateUntil(100);
+		assertThrows(IllegalStateException.class, () -> packed.setPackedStorage(false),
+				"The storage should not be changed during processing");
+		for (int p = 0; p < 2; p++) {
+			cons[p][3].suspend();
+		}
+		Timed.simulateUntil(200);
+		assertEquals(cons[0][3].getUnProcessed(), cons[1][3].getUnProcessed(),
+				"Suspended consumptions should keep their state");
+		for (int p = 0; p < 2; p++) {
+			cons[p][3].registerConsumption();
+		}
+		Timed.simulateUntilLastEvent();
+		for (int i = 0; i < conCount; i++) {
+			assertTrue(events[1][i].isCompleted(), "All packed consumptions should complete");
+			assertEquals(events[0][i].getArrivedAt(), events[1][i].getArrivedAt(),
+					"Packed consumptions should complete as the default ones");
+		}
+		assertEquals(providers[0].getTotalProcessed(), packed.getTotalProcessed(), 1e-6,
+				"The packed provider should process the same amount");
+	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void coalescedConsumptions() {
+		final int members = 5;
+		final MaxMinProvider[] providers = { new MaxMinProvider(10), new MaxMinProvider(10) };
+		final MaxMinConsumer[] consumers = { new MaxMinConsumer(10), new MaxMinConsumer(10) };
+		// The first pair processes the members one by one
+		final ConsumptionEventAssert[] individual = new ConsumptionEventAssert[members];
+		for (int i = 0; i < members; i++) {
+			individual[i] = new ConsumptionEventAssert();
+			new ResourceConsumption(100, 1.5, consumers[0], providers[0], individual[i]).registerConsumption();
+		}
+		// The second pair processes them as a single consumption
+		final ConsumptionEventAssert[] coalesced = new ConsumptionEventAssert[members];
+		for (int i = 0; i < members; i++) {
+			coalesced[i] = new ConsumptionEventAssert();
+		}
+		final CoalescedConsumption group = new CoalescedConsumption(100, 1.5, consumers[1], providers[1], coalesced);
+		assertEquals(members, group.getMultiplicity(), "The group should stand for all its members");
+		assertTrue(group.registerConsumption(), "The group should be registered");
+		final ConsumptionEventAssert[] others = new ConsumptionEventAssert[2];
+		for (int p = 0; p < 2; p++) {
+			others[p] = new ConsumptionEventAssert();
+			new ResourceConsumption(200, ResourceConsumption.unlimitedProcessing, consumers[p], providers[p], others[p])
+					.registerConsumption();
+		}
+		Timed.fire();
+		assertEquals(2, providers[1].underProcessing.size(), "The members should be processed as one entry");
+		Timed.simulateUntilLastEvent();
+		for (int i = 0; i < members; i++) {
+			assertTrue(coalesced[i].isCompleted(), "All members should be notified");
+			assertEquals(individual[i].getArrivedAt(), coalesced[i].getArrivedAt(),
+					"Members should complete as individual consumptions");
+		}
+		assertEquals(others[0].getArrivedAt(), others[1].getArrivedAt(),
+				"The fair share of other consumptions should not change");
+		assertEquals(providers[0].getTotalProcessed(), providers[1].getTotalProcessed(), 1e-6,
+				"The members' processing should be accounted");
+		assertThrows(IllegalArgumentException.class, () -> new CoalescedConsumption(1, 1, consumers[0], providers[0],
+				new ResourceConsumption.ConsumptionEvent[0]));
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void removalOfManyConsumptions() {
+		final MaxMinProvider provider = new MaxMinProvider(100);
+		final MaxMinConsumer consumer = new MaxMinConsumer(100);
+		final int count = 5000;
+		final ConsumptionEventAssert[] events = new ConsumptionEventAssert[count];
+		final ResourceConsumption[] cons = new ResourceConsumption[count];
+		for (int i = 0; i < count; i++) {
+			events[i] = new ConsumptionEventAssert();
+			cons[i] = new ResourceConsumption(1 + i % 100, ResourceConsumption.unlimitedProcessing, consumer,
+					provider, events[i]);
+			cons[i].registerConsumption();
+		}
+		Timed.fire();
+		// Suspending and resuming in the same time instance keeps the consumption
+		assertTrue(cons[0].suspend(), "The consumption should be suspendable");
+		assertEquals(1, provider.toBeRemoved.size(), "The suspended consumption should be under removal");
+		assertTrue(cons[0].registerConsumption(), "The consumption should be registered again");
+		assertTrue(provider.toBeRemoved.isEmpty(), "The consumption should not be removed any more");
+		// Cancelling before the consumption is processed
+		final ResourceConsumption cancelled = new ResourceConsumption(10, ResourceConsumption.unlimitedProcessing,
+				consumer, provider, new ConsumptionEventAdapter());
+		cancelled.registerConsumption();
+		cancelled.cancel();
+		assertFalse(provider.toBeAdded.contains(cancelled), "A cancelled consumption should not be added");
+		Timed.simulateUntilLastEvent();
+		for (int i = 0; i < count; i++) {
+			assertTrue(events[i].isCompleted(), "All consumptions should complete");
+		}
+		assertFalse(provider.isProcessing(), "No consumption should be left behind");
+		assertFalse(consumer.isProcessing(), "No consumption should be left behind");
+		assertEquals(count * 50.5, provider.getTotalProcessed(), 1e-6, "All consumptions should be processed");
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void maxMinFairAllocation() {
+		final Random rnd = new Random(7);
+		final MaxMinProvider[] providers = new MaxMinProvider[20];
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[20];
+		for (int i = 0; i < providers.length; i++) {
+			providers[i] = new MaxMinProvider(1 + rnd.nextInt(10));
+			consumers[i] = new MaxMinConsumer(1 + rnd.nextInt(10));
+		}
+		final ResourceConsumption[] cons = new ResourceConsumption[200];
+		for (int i = 0; i < cons.length; i++) {
+			cons[i] = new ResourceConsumption(1000000,
+					rnd.nextBoolean() ? ResourceConsumption.unlimitedProcessing : 0.01 + rnd.nextDouble(),
+					consumers[rnd.nextInt(consumers.length)], providers[rnd.nextInt(providers.length)],
+					new ConsumptionEventAssert());
+			cons[i].registerConsumption();
+		}
+		Timed.fire();
+		assertMaxMinFair(Arrays.asList(cons));
+	}
+
+	@Test
+	@Timeout(value = 2, unit = TimeUnit.SECONDS)
+	public void maxMinFairAllocationUnderChanges() {
+		final Random rnd = new Random(11);
+		final MaxMinProvider[] providers = new MaxMinProvider[5];
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[10];
+		for (int i = 0; i < providers.length; i++) {
+			providers[i] = new MaxMinProvider(5 + rnd.nextInt(10));
+		}
+		for (int i = 0; i < consumers.length; i++) {
+			consumers[i] = new MaxMinConsumer(1 + rnd.nextInt(3));
+		}
+		final ArrayList<ResourceConsumption> active = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			startRandomConsumption(providers, consumers, rnd, active, 5);
+		}
+		for (int i = 1; i <= 30; i++) {
+			Timed.simulateUntil(i * 25L);
+			// Consumptions already dropped by one of their spreaders are completing
+			final List<ResourceConsumption> processed = active.stream().filter(
+					con -> con.getProvider().underProcessing.contains(con) && con.getConsumer().underProcessing.contains(con))
+					.toList();
+			assertMaxMinFair(processed);
+		}
+		Timed.simulateUntilLastEvent();
+	}
+
+	/**
+	 * Registers a consumption between a random provider-consumer pair. Once it
+	 * completes, further consumptions are started (until followups run out).
+	 */
+	private static void startRandomConsumption(final MaxMinProvider[] providers, final MaxMinConsumer[] consumers,
+			final Random rnd, final List<ResourceConsumption> active, final int followups) {
+		final ResourceConsumption[] con = new ResourceConsumption[1];
+		con[0] = new ResourceConsumption(50 + rnd.nextInt(500),
+				rnd.nextBoolean() ? ResourceConsumption.unlimitedProcessing : 0.1 + rnd.nextDouble(),
+				consumers[rnd.nextInt(consumers.length)], providers[rnd.nextInt(providers.length)],
+				new ConsumptionEventAssert() {
+					@Override
+					public void conComplete() {
+						super.conComplete();
+						active.remove(con[0]);
+						if (followups > 0) {
+							for (int i = rnd.nextInt(3); i > 0; i--) {
+								startRandomConsumption(providers, consumers, rnd, active, followups - 1);
+							}
+						}
+					}
+				});
+		con[0].registerConsumption();
+		active.add(con[0]);
+	}
+
+	/**
+	 * Checks the real limits of the consumptions against a reference
+	 * progressive filling that raises all unfixed consumptions together to the
+	 * next bottleneck.
+	 */
+	private static void assertMaxMinFair(final List<ResourceConsumption> consumptions) {
+		final ResourceConsumption[] cons = consumptions.toArray(new ResourceConsumption[0]);
+		final double[] fixed = new double[cons.length];
+		final boolean[] done = new boolean[cons.length];
+		int remaining = cons.length;
+		while (remaining > 0) {
+			double level = Double.MAX_VALUE;
+			for (int i = 0; i < cons.length; i++) {
+				if (!done[i]) {
+					level = Math.min(level, Math.min(cons[i].getProcessingLimit(),
+							Math.min(referenceShare(cons, fixed, done, cons[i].getProvider()),
+									referenceShare(cons, fixed, done, cons[i].getConsumer()))));
+				}
+			}
+			final double tolerance = level * 1e-9;
+			final boolean[] saturating = new boolean[cons.length];
+			for (int i = 0; i < cons.length; i++) {
+				saturating[i] = !done[i] && (cons[i].getProcessingLimit() <= level + tolerance
+						|| referenceShare(cons, fixed, done, cons[i].getProvider()) <= level + tolerance
+						|| referenceShare(cons, fixed, done, cons[i].getConsumer()) <= level + tolerance);
+			}
+			for (int i = 0; i < cons.length; i++) {
+				if (saturating[i]) {
+					fixed[i] = level;
+					done[i] = true;
+					remaining--;
+				}
+			}
+		}
+		for (int i = 0; i < cons.length; i++) {
+			assertEquals(fixed[i], cons[i].getRealLimit(), cons[i].getProvider().getPerTickProcessingPower() / 1000000000,
+					"The allocation should be max-min fair for " + cons[i]);
+		}
+	}
+
+	/**
+	 * The processing a spreader could offer for each of its unfixed consumptions
+	 * in the reference allocation.
+	 */
+	private static double referenceShare(final ResourceConsumption[] cons, final double[] fixed,
+			final boolean[] done, final ResourceSpreader rs) {
+		double free = rs.getPerTickProcessingPower();
+		int unfixed = 0;
+		for (int i = 0; i < cons.length; i++) {
+			if (cons[i].getProvider() == rs || cons[i].getConsumer() == rs) {
+				if (done[i]) {
+					free -= fixed[i];
+				} else {
+					unfixed++;
+				}
+			}
+		}
+		return unfixed == 0 ? Double.MAX_VALUE : free / unfixed;
+	}
+
+	/**
+	 * Starts a consumption that records its completion in the trace. Once
+	 * complete, it starts a follow-up consumption (until followups run out) either
+	 * in its own influence group or occasionally between neighbouring groups
+	 * (thus merging them).
+	 */
+	private static void startTracedConsumption(final MaxMinProvider[] providers, final MaxMinConsumer[] consumers,
+			final int group, final int target, final double limit, final int followups, final Random rnd,
+			final List<String> trace) {
+		new ResourceConsumption(100 * (1 + rnd.nextInt(4)), limit, consumers[target], providers[group],
+				new ConsumptionEventAssert() {
+					@Override
+					public void conComplete() {
+						super.conComplete();
+						trace.add(group + "@" + Timed.getFireCount());
+						if (followups > 0) {
+							startTracedConsumption(providers, consumers, group,
+									rnd.nextInt(5) == 0 ? (group + 1) % providers.length : group,
+									ResourceConsumption.unlimitedProcessing, followups - 1, rnd, trace);
+						}
+					}
+				}).registerConsumption();
+	}
+
+	/**
+	 * Runs several influence groups that often complete their consumptions at
+	 * the same time instance.
+	 * 
+	 * @return the trace of the completion events and the final processed
+	 *         amounts of the spreaders
+	 */
+	private static List<String> runIndependentGroups(final ForkJoinPool pool) {
+		SimulationContext.current().setParallelPool(pool);
+		final int groupCount = 64;
+		final Random rnd = new Random(42);
+		final MaxMinProvider[] providers = new MaxMinProvider[groupCount];
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[groupCount];
+		final ArrayList<String> trace = new ArrayList<>();
+		for (int i = 0; i < groupCount; i++) {
+			providers[i] = new MaxMinProvider(1 + i % 3);
+			consumers[i] = new MaxMinConsumer(2);
+		}
+		for (int i = 0; i < groupCount; i++) {
+			for (int j = 0; j < 4; j++) {
+				startTracedConsumption(providers, consumers, i, i,
+						j == 0 ? 0.5 : ResourceConsumption.unlimitedProcessing, 3, rnd, trace);
+			}
+		}
+		Timed.simulateUntilLastEvent();
+		for (int i = 0; i < groupCount; i++) {
+			trace.add(providers[i].getTotalProcessed() + "/" + consumers[i].getTotalProcessed());
+		}
+		return trace;
+	}
+
+	@Test
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	public void parallelPreparation() {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			final List<String> sequential = new SimulationContext().call(() -> runIndependentGroups(null));
+			final List<String> parallel = new SimulationContext().call(() -> runIndependentGroups(pool));
+			assertTrue(sequential.size() > 64 * 4, "Not all consumptions completed");
+			assertEquals(sequential, parallel, "Parallel preparation should not change the simulation");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs four independent influence groups, each with a set of slightly
+	 * different consumptions completing close to each other.
+	 * 
+	 * @return the completion times of all consumptions followed by the number
+	 *         of time instances with events and the total processing done
+	 */
+	private static long[] runNearSimultaneousCompletions(final long absolute, final double relative) {
+		SimulationContext.current().setTimingTolerance(absolute, relative);
+		final int groupCount = 4;
+		final int perGroup = 50;
+		final long[] results = new long[groupCount * perGroup + 2];
+		double totalProcessed = 0;
+		final MaxMinProvider[] providers = new MaxMinProvider[groupCount];
+		for (int i = 0; i < groupCount; i++) {
+			providers[i] = new MaxMinProvider(1);
+			final MaxMinConsumer consumer = new MaxMinConsumer(1);
+			for (int j = 0; j < perGroup; j++) {
+				final int idx = i * perGroup + j;
+				new ResourceConsumption(1000 * (i + 1) + j, ResourceConsumption.unlimitedProcessing, consumer,
+						providers[i], new ConsumptionEventAdapter() {
+							@Override
+							public void conComplete() {
+								results[idx] = Timed.getFireCount();
+							}
+						}).registerConsumption();
+			}
+		}
+		Timed.simulateUntilLastEvent();
+		for (final MaxMinProvider p : providers) {
+			totalProcessed += p.getTotalProcessed();
+		}
+		results[groupCount * perGroup] = SimulationContext.current().getFiredInstants();
+		results[groupCount * perGroup + 1] = Math.round(totalProcessed);
+		return results;
+	}
+
+	@Test
+	@Timeout(value = 1, unit = TimeUnit.SECONDS)
+	public void approximateTiming() {
+		final long tolerance = 64;
+		final long[] exact = new SimulationContext().call(() -> runNearSimultaneousCompletions(0, 0));
+		final long[] approx = new SimulationContext().call(() -> runNearSimultaneousCompletions(tolerance, 0));
+		final int cons = exact.length - 2;
+		for (int i = 0; i < cons; i++) {
+			assertTrue(exact[i] > 0 && approx[i] > 0, "All consumptions should complete");
+			assertTrue(approx[i] >= exact[i], "Completions should never be observed early");
+			assertEquals(0, approx[i] % tolerance, "Completions should be snapped on the time grid");
+			assertTrue(approx[i] - exact[i] <= tolerance * (i % 50 + 1),
+					"Completions should only be delayed by the tolerance for each earlier one in their group");
+		}
+		assertEquals(exact[cons + 1], approx[cons + 1], "The tolerance should not change the processing done");
+		final double ratio = (double) approx[cons] / exact[cons];
+		assertTrue(ratio < 0.5, "Too few event instances spared: " + approx[cons] + "/" + exact[cons]);
+		assertEquals(0, new SimulationContext().quantizeJump(0), "Exact timing should not change jumps");
+		assertThrows(IllegalArgumentException.class, () -> new SimulationContext().setTimingTolerance(-1, 0));
+	}
+
+	@Test
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	public void allocationFreeSteadyState() {
+		final int chainLength = 6000;
+		final int warmup = 2000;
+		final MaxMinProvider provider = new MaxMinProvider(10);
+		final MaxMinConsumer consumer = new MaxMinConsumer(10);
+		// The consumptions are prepared in advance, every completed one starts
+		// the next, so the influence group keeps its members and its size
+		final ResourceConsumption[] chain = new ResourceConsumption[chainLength];
+		final int[] completed = { 0 };
+		for (int i = chainLength - 1; i >= 0; i--) {
+			final ResourceConsumption next = i + 1 < chainLength ? chain[i + 1] : null;
+			chain[i] = new ResourceConsumption(100, ResourceConsumption.unlimitedProcessing, consumer, provider,
+					new ConsumptionEventAdapter() {
+						@Override
+						public void conComplete() {
+							super.conComplete();
+							completed[0]++;
+							if (next != null) {
+								next.registerConsumption();
+							}
+						}
+					});
+		}
+		new ResourceConsumption(Double.MAX_VALUE / 4, 1, consumer, provider, new ConsumptionEventAdapter())
+				.registerConsumption();
+		chain[0].registerConsumption();
+		while (completed[0] < warmup) {
+			Timed.jumpTime(Long.MAX_VALUE);
+			Timed.fire();
+		}
+		final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		// The first query initialises the measurement itself
+		threads.getThreadAllocatedBytes(threadId);
+		final long before = threads.getThreadAllocatedBytes(threadId);
+		while (completed[0] < chainLength - 1) {
+			Timed.jumpTime(Long.MAX_VALUE);
+			Timed.fire();
+		}
+		final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		// Even the smallest object allocated in every tick would show up here,
+		// while the occasional allocations of the JVM itself remain below
+		assertEquals(0, allocated / (completed[0] - warmup), "Steady state ticks should not allocate");
+		assertTrue(chain[chainLength - 1].isRegistered(), "The chain should be still processed");
+	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void totalProcessedEstimates() {
+		final MaxMinProvider provider = new MaxMinProvider(9);
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[3];
+		for (int i = 0; i < consumers.length; i++) {
+			consumers[i] = new MaxMinConsumer(10);
+			new ResourceConsumption(1000 * (i + 1), ResourceConsumption.unlimitedProcessing, consumers[i], provider,
+					new ConsumptionEventAssert()).registerConsumption();
+		}
+		final long from = Timed.getFireCount();
+		Timed.fire();
+		assertEquals(90, provider.getTotalProcessed(from + 10), 1e-6,
+				"The estimate should count from the start of the processing");
+		Timed.jumpTime(50);
+		final double estimated = provider.getTotalProcessed(Timed.getFireCount() + 100);
+		assertEquals(9 * (Timed.getFireCount() - from + 100), estimated, 1e-6,
+				"The estimate should follow the current real limits");
+		final double[] consumed = new double[consumers.length];
+		for (int i = 0; i < consumers.length; i++) {
+			consumed[i] = consumers[i].getTotalProcessed();
+			assertEquals(consumed[i], consumers[i].getTotalProcessed(), 0,
+					"Repeated queries should not process again");
+			assertEquals(consumed[i], consumers[i].getTotalProcessed(Timed.getFireCount()), 1e-6,
+					"The estimate should match the processing done");
+		}
+		assertEquals(provider.getTotalProcessed(), Arrays.stream(consumed).sum(), 1e-6,
+				"The group should be processed at once");
+		Timed.jumpTime(100);
+		assertEquals(estimated, provider.getTotalProcessed(), 1e-6, "The estimate should be exact until the next event");
+		Timed.simulateUntilLastEvent();
+		assertEquals(6000, provider.getTotalProcessed(Timed.getFireCount() + 100), 1e-6,
+				"Spreaders without consumptions should not estimate further processing");
+	}
+
+	/**
+	 * A provider that determines the next event of its influence group by
+	 * visiting all the consumptions of the group and recalculating their
+	 * completion distances from their current states.
+	 */
+	private static class FullScanProvider extends MaxMinProvider {
+		private final List<MaxMinProvider> all;
+
+		FullScanProvider(final double initialProcessing, final List<MaxMinProvider> all) {
+			super(initialProcessing);
+			this.all = all;
+		}
+
+		@Override
+		protected long singleGroupwiseFreqUpdater() {
+			super.singleGroupwiseFreqUpdater();
+			long earliest = Long.MAX_VALUE;
+			for (final MaxMinProvider p : all) {
+				if (p.getSyncer() == getSyncer()) {
+					for (final ResourceConsumption con : p.underProcessing) {
+						earliest = Math.min(earliest, Math.round(con.getUnProcessed() / con.getRealLimit()));
+					}
+				}
+			}
+			return earliest;
+		}
+	}
+
+	/**
+	 * Runs random consumptions (some of them cancelled before completion) and
+	 * records when they complete.
+	 * 
+	 * @return the completion times of the consumptions in their order of
+	 *         creation, -1 for the cancelled ones
+	 */
+	private static List<Long> runRandomCompletions(final long seed, final boolean fullScan) {
+		final Random rnd = new Random(seed);
+		final ArrayList<MaxMinProvider> providers = new ArrayList<>();
+		final MaxMinConsumer[] consumers = new MaxMinConsumer[1 + rnd.nextInt(10)];
+		for (int i = 1 + rnd.nextInt(10); i > 0; i--) {
+			final double processing = 1 + rnd.nextInt(10);
+			providers.add(fullScan ? new FullScanProvider(processing, providers) : new MaxMinProvider(processing));
+		}
+		for (int i = 0; i < consumers.length; i++) {
+			consumers[i] = new MaxMinConsumer(1 + rnd.nextInt(10));
+		}
+		final ArrayList<Long> completions = new ArrayList<>();
+		for (int i = 30 + rnd.nextInt(270); i > 0; i--) {
+			final int idx = completions.size();
+			completions.add(-1L);
+			final ResourceConsumption con = new ResourceConsumption(10 + rnd.nextInt(1000),
+					rnd.nextBoolean() ? ResourceConsumption.unlimitedProcessing : 0.5 * (1 + rnd.nextInt(4)),
+					consumers[rnd.nextInt(consumers.length)], providers.get(rnd.nextInt(providers.size())),
+					new ConsumptionEventAdapter() {
+						@Override
+						public void conComplete() {
+							completions.set(idx, Timed.getFireCount());
+						}
+					});
+			new DeferredEvent(rnd.nextInt(500)) {
+				@Override
+				protected void eventAction() {
+					con.registerConsumption();
+				}
+			};
+			if (rnd.nextInt(10) == 0) {
+				new DeferredEvent(500 + rnd.nextInt(500)) {
+					@Override
+					protected void eventAction() {
+						con.cancel();
+					}
+				};
+			}
+		}
+		Timed.simulateUntilLastEvent();
+		return completions;
+	}
+
+	@Test
+	@Timeout(value = 5, unit = TimeUnit.SECONDS)
+	public void indexedCompletionsMatchFullScan() {
+		for (long seed = 430; seed < 460; seed++) {
+			final long s = seed;
+			final List<Long> fullScan = new SimulationContext().call(() -> runRandomCompletions(s, true));
+			final List<Long> indexed = new SimulationContext().call(() -> runRandomCompletions(s, false));
+			assertEquals(fullScan, indexed, "The completion index should not shift completions with seed " + seed);
+		}
+	}
 }
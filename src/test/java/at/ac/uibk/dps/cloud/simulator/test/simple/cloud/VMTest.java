@@ -312,6 +312,46 @@ public class VMTest extends IaaSRelatedFoundation {
 		assertEquals( 0, con.getUnProcessed(),0, "Unprocessed consumption mismatch");
 	}
 
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void bulkComputeTasks() throws VMManagementException, NetworkException {
+		final double[] single = { 1 };
+		assertNull(centralVM.newComputeTasks(single, 1, new ConsumptionEventAssert[] { new ConsumptionEventAssert() }),
+				"VM should not accept consumptions while destroyed");
+		switchOnVMwithMaxCapacity(centralVM, false);
+		assertArrayEquals(new ResourceConsumption[] { null },
+				centralVM.newComputeTasks(single, 1, new ConsumptionEventAssert[] { new ConsumptionEventAssert() }),
+				"VM should not accept consumptions in initial transfer phase");
+		Timed.simulateUntilLastEvent();
+		final double[] totals = { 0, aSecond, 2 * aSecond, 3 * aSecond };
+		final ConsumptionEventAssert[] events = new ConsumptionEventAssert[totals.length];
+		for (int i = 0; i < totals.length; i++) {
+			events[i] = new ConsumptionEventAssert();
+		}
+		final long before = Timed.getFireCount();
+		final ResourceConsumption[] tasks = centralVM.newComputeTasks(totals, ResourceConsumption.unlimitedProcessing,
+				events);
+		assertEquals(totals.length, tasks.length, "Every task should have its consumption");
+		assertTrue(events[0].isCompleted(), "The empty task should complete immediately");
+		for (int i = 1; i < totals.length; i++) {
+			assertTrue(tasks[i].isRegistered(), "The tasks should be registered");
+		}
+		Timed.simulateUntilLastEvent();
+		final ConsumptionEventAssert reference = new ConsumptionEventAssert();
+		final long refStart = Timed.getFireCount();
+		centralVM.newComputeTask(3 * aSecond, ResourceConsumption.unlimitedProcessing, reference);
+		Timed.simulateUntilLastEvent();
+		for (int i = 1; i < totals.length; i++) {
+			assertTrue(events[i].isCompleted(), "All tasks should complete");
+		}
+		assertTrue(events[1].getArrivedAt() < events[2].getArrivedAt()
+				&& events[2].getArrivedAt() < events[3].getArrivedAt(), "Shorter tasks should complete earlier");
+		assertTrue(reference.getArrivedAt() - refStart < events[3].getArrivedAt() - before,
+				"The tasks should share the VM's processing");
+		assertThrows(IllegalArgumentException.class,
+				() -> centralVM.newComputeTasks(totals, 1, new ConsumptionEventAssert[1]));
+	}
+
 	@Test
 	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
 	public void newConsumptionRejectionTest() throws VMManagementException, NetworkException {
@@ -34,6 +34,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import at.ac.uibk.dps.cloud.simulator.test.IaaSRelatedFoundation;
 import hu.mta.sztaki.lpds.cloud.simulator.Timed;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.IaaSService;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.PhysicalMachine;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VMManager.VMManagementException;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.VirtualMachine;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.AlterableResourceConstraints;
@@ -138,4 +139,25 @@ public class BasicSchedulingTest extends IaaSRelatedFoundation {
 			s.requestVM(va, s.getCapacities(), s.repositories.get(0), 1);
 		});
 	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void hostabilityWithMixedCapacities() throws Exception {
+		IaaSService s = setupIaaS(FirstFitScheduler.class, AlwaysOnMachines.class, 2, 1);
+		Repository r = s.repositories.get(0);
+		VirtualAppliance va = (VirtualAppliance) r.contents().iterator().next();
+		ResourceConstraints pmSize = s.machines.get(0).getCapacities();
+		assertThrows(VMManagementException.class, () -> s.requestVM(va, pmSize, r, 3),
+				"Two PMs should not host three PM sized VMs");
+		// Fits two PM sized VMs
+		PhysicalMachine big = dummyPMsCreator(1, dummyPMCoreCount * 2, dummyPMPerCorePP, dummyPMMemory * 2)[0];
+		s.registerHost(big);
+		assertThrows(VMManagementException.class, () -> s.requestVM(va, pmSize, r, 5),
+				"The PMs should not host five PM sized VMs");
+		s.deregisterHost(big);
+		assertThrows(VMManagementException.class, () -> s.requestVM(va, pmSize, r, 3),
+				"Deregistered PMs should not count");
+		s.registerHost(big);
+		assertEquals(4, s.requestVM(va, pmSize, r, 4).length, "The PMs should be able to host four VMs");
+	}
 }
@@ -37,6 +37,8 @@ import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ConstantConstraints;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.constraints.ResourceConstraints;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.pmscheduling.AlwaysOnMachines;
 import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.FirstFitScheduler;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.FreeCapacityIndex;
+import hu.mta.sztaki.lpds.cloud.simulator.iaas.vmscheduling.pmiterators.PMIterator;
 import hu.mta.sztaki.lpds.cloud.simulator.io.Repository;
 import hu.mta.sztaki.lpds.cloud.simulator.io.VirtualAppliance;
 
@@ -92,4 +94,106 @@ public class FirstFitSchedulerTest extends IaaSRelatedFoundation {
 			vm.destroy(false);
 		}
 	}
+
+	@Test
+	@Timeout(value = 100, unit = TimeUnit.MILLISECONDS)
+	public void capacityIndexTest() throws Exception {
+		IaaSService s = setupIaaS(FirstFitScheduler.class, AlwaysOnMachines.class, 4, 2);
+		final FreeCapacityIndex index = new FreeCapacityIndex(s);
+		Repository vaStore = s.repositories.get(0);
+		VirtualAppliance va = (VirtualAppliance) vaStore.contents().iterator().next();
+		ResourceConstraints fitsOnePM = s.machines.get(0).getCapacities();
+		assertNull(index.firstFit(fitsOnePM), "No PMs should be offered before they are running");
+		Timed.simulateUntilLastEvent();
+		assertSame(s.runningMachines.get(0), index.firstFit(fitsOnePM), "The first PM should be offered");
+		VirtualMachine[] vms = s.requestVM(va, fitsOnePM, vaStore, 3);
+		Timed.simulateUntilLastEvent();
+		assertSame(s.runningMachines.get(3), index.firstFit(fitsOnePM), "Only the last PM should remain free");
+		assertEquals(-1, index.firstFit(fitsOnePM, 4), "There should be no PMs after the last one");
+		vms[0].destroy(false);
+		Timed.simulateUntilLastEvent();
+		final PhysicalMachine freed = index.firstFit(fitsOnePM);
+		assertTrue(freed.publicVms.isEmpty(), "The offered PM should be free");
+		assertTrue(s.runningMachines.indexOf(freed) < 3, "The freed PM should be offered first");
+		final AlterableResourceConstraints tooBig = new AlterableResourceConstraints(fitsOnePM);
+		tooBig.multiply(2);
+		assertNull(index.firstFit(tooBig), "Requests larger than any PM should not be offered a PM");
+		final PhysicalMachine lastFree = s.runningMachines.get(3);
+		freed.switchoff(null);
+		assertSame(lastFree, index.firstFit(fitsOnePM), "Switched off PMs should not be offered");
+		assertEquals(2, index.firstFit(fitsOnePM, 0), "The positions should follow the shrunk list");
+		freed.turnon();
+		Timed.simulateUntilLastEvent();
+		assertSame(lastFree, index.firstFit(fitsOnePM), "The order of the running machines should be kept");
+		assertSame(freed, s.runningMachines.get(index.firstFit(fitsOnePM, 3)),
+				"The PM should be offered again at the end of the list once it is running");
+		index.dispose();
+	}
+
+	public static class RecordingFirstFit extends FirstFitScheduler {
+		public ConstantConstraints lastRequirement;
+
+		public RecordingFirstFit(IaaSService parent) {
+			super(parent);
+		}
+
+		@Override
+		protected ConstantConstraints scheduleQueued() {
+			return lastRequirement = super.scheduleQueued();
+		}
+	}
+
+	public static class IndexlessFirstFit extends RecordingFirstFit {
+		public IndexlessFirstFit(IaaSService parent) {
+			super(parent);
+		}
+
+		@Override
+		protected PMIterator instantiateIterator() {
+			// A custom iterator class disables the capacity index
+			return new PMIterator(parent.runningMachines) {
+			};
+		}
+	}
+
+	private ConstantConstraints unfitRequirement(Class<? extends RecordingFirstFit> scheduler,
+			ResourceConstraints unfit, int count) throws Exception {
+		IaaSService s = setupIaaS(scheduler, AlwaysOnMachines.class, 4, 2);
+		Repository vaStore = s.repositories.get(0);
+		VirtualAppliance va = (VirtualAppliance) vaStore.contents().iterator().next();
+		Timed.simulateUntilLastEvent();
+		final long mem = dummyPMMemory;
+		// Leaves PMs with different free CPU and memory combinations
+		final double[][] fillers = { { 1.5, mem / 2 }, { 1, mem * 3 / 4 }, { 0.5, mem / 8 }, { 1.8, mem / 4 },
+				{ 1.2, mem / 3 } };
+		for (double[] filler : fillers) {
+			s.requestVM(va, new ConstantConstraints(filler[0], dummyPMPerCorePP, (long) filler[1]), vaStore, 1);
+			Timed.simulateUntilLastEvent();
+		}
+		s.requestVM(va, unfit, vaStore, count);
+		Timed.simulateUntilLastEvent();
+		assertEquals(count, s.sched.getQueuedVMs().size(), "The request should not fit");
+		return ((RecordingFirstFit) s.sched).lastRequirement;
+	}
+
+	@Test
+	@Timeout(value = 1000, unit = TimeUnit.MILLISECONDS)
+	public void indexedRequirementTest() throws Exception {
+		final ResourceConstraints[] unfits = {
+				new ConstantConstraints(1.5, dummyPMPerCorePP, dummyPMMemory / 2),
+				new ConstantConstraints(1.1, dummyPMPerCorePP, dummyPMMemory / 8),
+				new ConstantConstraints(1.5, dummyPMPerCorePP, dummyPMMemory / 2),
+				new ConstantConstraints(0.8, dummyPMPerCorePP, dummyPMMemory / 2) };
+		final int[] counts = { 1, 1, 2, 2 };
+		for (int i = 0; i < unfits.length; i++) {
+			final ConstantConstraints linear = unfitRequirement(IndexlessFirstFit.class, unfits[i], counts[i]);
+			final ConstantConstraints indexed = unfitRequirement(RecordingFirstFit.class, unfits[i], counts[i]);
+			assertTrue(linear.compareTo(unfits[i]) < 0,
+					"The largest unsuitable allocation should reduce the requirement");
+			assertEquals(linear.getRequiredCPUs(), indexed.getRequiredCPUs(), 1e-9,
+					"The index should offer the same CPU requirement as the complete search");
+			assertEquals(linear.getRequiredMemory(), indexed.getRequiredMemory(),
+					"The index should offer the same memory requirement as the complete search");
+		}
+	}
 }
@@ -12,4 +12,5 @@ module hu.mta.sztaki.lpds.cloud.simulator.dissectcf.test {
     requires org.junit.jupiter.api;
     requires java.logging;
     requires org.apache.commons.lang3;
+    requires jdk.management;
 }
\ No newline at end of file